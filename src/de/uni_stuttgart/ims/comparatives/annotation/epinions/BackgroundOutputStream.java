@@ -0,0 +1,175 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * Output stream that collects bytes in a buffer and writes full buffers
+ * to the underlying stream on another thread (e.g., compression and disk),
+ * so the thread that writes does not wait for it.
+ *
+ * There are two buffers: one is filled while the other is written.
+ * write() only blocks if both are waiting to be written.
+ * flush() and close() wait until everything has been written.
+ *
+ * An error on the writer thread is thrown by the next call of
+ * write(), flush() or close(). write() and flush() after close() throw an IOException.
+ */
+public class BackgroundOutputStream extends OutputStream {
+
+   private OutputStream out;
+   private ExecutorService writer;
+
+   private BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<byte[]>(2);
+   private byte[] buffer;
+   private int length = 0;
+
+   private volatile IOException failure = null;
+   private boolean closed = false;
+
+
+   /**
+    * @param out stream to write to, only used on the writer thread
+    * @param writer single thread that does the writing, may be shared
+    *    by several streams (the tasks of one stream are done in order)
+    * @param bufferSize size of each of the two buffers in bytes
+    */
+   public BackgroundOutputStream (OutputStream out, ExecutorService writer, int bufferSize) {
+      this.out = out;
+      this.writer = writer;
+      this.buffer = new byte[bufferSize];
+      this.freeBuffers.add(new byte[bufferSize]);
+   }
+
+
+   @Override
+   public void write (int b) throws IOException {
+      checkOpen();
+      if (length == buffer.length) {
+         handOver();
+      }
+      buffer[length++] = (byte) b;
+   }
+
+
+   @Override
+   public void write (byte[] b, int off, int len) throws IOException {
+      checkOpen();
+      while (len > 0) {
+         if (length == buffer.length) {
+            handOver();
+         }
+         int n = Math.min(len, buffer.length - length);
+         System.arraycopy(b, off, buffer, length, n);
+         length += n;
+         off += n;
+         len -= n;
+      }
+   }
+
+
+   /**
+    * Write everything to the underlying stream and flush it.
+    */
+   @Override
+   public void flush () throws IOException {
+      checkOpen();
+      handOver();
+      waitFor(new Callable<Void>() {
+         public Void call() throws IOException {
+            out.flush();
+            return null;
+         }
+      });
+   }
+
+
+   /**
+    * Write everything and close the underlying stream.
+    */
+   @Override
+   public void close () throws IOException {
+      if (closed)
+         return;
+      closed = true;
+      handOver();
+      waitFor(new Callable<Void>() {
+         public Void call() throws IOException {
+            out.close();
+            return null;
+         }
+      });
+   }
+
+
+   /**
+    * Give the current buffer to the writer thread, continue with the other one.
+    */
+   private void handOver () throws IOException {
+      checkFailure();
+      if (length == 0)
+         return;
+      final byte[] full = buffer;
+      final int fullLength = length;
+      writer.execute(new Runnable() {
+         public void run() {
+            try {
+               if (failure == null) {
+                  out.write(full, 0, fullLength);
+               }
+            } catch (IOException e) {
+               failure = e;
+            } finally {
+               freeBuffers.add(full);
+            }
+         }
+      });
+      try {
+         buffer = freeBuffers.take();
+      } catch (InterruptedException e) {
+         throw new InterruptedIOException("Interrupted while waiting for output");
+      }
+      length = 0;
+   }
+
+
+   private void waitFor (Callable<Void> task) throws IOException {
+      Future<Void> result = writer.submit(task);
+      try {
+         result.get();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException)
+            throw (IOException) e.getCause();
+         throw new IOException(e.getCause());
+      } catch (InterruptedException e) {
+         throw new InterruptedIOException("Interrupted while waiting for output");
+      }
+      checkFailure();
+   }
+
+
+   private void checkOpen () throws IOException {
+      if (closed)
+         throw new IOException("Stream closed");
+   }
+
+
+   private void checkFailure () throws IOException {
+      if (failure != null)
+         throw failure;
+   }
+
+}
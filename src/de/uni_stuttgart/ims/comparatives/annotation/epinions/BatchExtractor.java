@@ -0,0 +1,544 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.ExtractSentencesFromXML.EpinionsReviewHandler;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterFactory;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterPool;
+import de.uni_stuttgart.ims.comparatives.nlp.ThrottledSentenceSplitter;
+
+
+/**
+ * Clean and extract the sentences of many epinions files
+ * (e.g., one file per product category), see EpinionsCleaner
+ * and ExtractSentencesFromXML.
+ *
+ * Input is a directory (all files ending with .xml) or a manifest file
+ * (one file name per line, relative to the manifest, # for comments).
+ * For each input file <name>.xml the output directory gets:
+ * - <name>_new.xml: cleaned XML (not with --cleaned)
+ * - <name>.allsentences.txt: sentences
+ * - <name>.texts.txt: texts (only with --texts)
+ * and summary.txt with the counts of each file and the total.
+ * Nothing is processed if two input files have the same name
+ * (e.g., in different directories), as their output would be overwritten.
+ *
+ * Each file is cleaned and extracted by one task, the tasks run on
+ * a pool of --threads threads. Largest files are started first,
+ * and each file is reported when it is done, so a slow file only takes
+ * one thread and does not hold back the others. An error in one file
+ * does not stop the others.
+ * Sentence splitters are taken from one SentenceSplitterPool shared by all
+ * tasks, so at most one splitter per thread is created.
+ * With --virtual, every file gets a thread of its own (virtual threads
+ * if the JVM has them, see VirtualThreads), so waiting for the disk
+ * does not hold back other files, and only --threads of them split
+ * at the same time (see ThrottledSentenceSplitter). At most
+ * FILES_PER_THREAD * --threads files are in progress, the next file is started
+ * when one is done.
+ * The output of each file is the same as with ExtractSentencesFromXML.
+ */
+public class BatchExtractor {
+
+   private static final String XML_SUFFIX = ".xml";
+   private static final String CLEANED_SUFFIX = "_new.xml";
+   private static final String SENTENCES_SUFFIX = ".allsentences.txt";
+   private static final String TEXTS_SUFFIX = ".texts.txt";
+   private static final String SUMMARY_FILE = "summary.txt";
+
+   // With virtual threads: files in progress per thread that splits,
+   // the others can wait for the disk in the meantime
+   private static final int FILES_PER_THREAD = 2;
+
+   private File outputDirectory;
+   private boolean cleaned;
+   private boolean writeTexts;
+   private boolean virtualThreads = false;
+   // With virtual threads: splitter shared by all tasks (null otherwise)
+   private SentenceSplitter sharedSplitter = null;
+   private ReviewIgnoreIndex ignoreIndex;
+   private SentenceSplitterPool splitterPool;
+   private OutputFiles outputFiles = new OutputFiles(1024 * 1024, false);
+
+
+   /**
+    * Counts of one input file.
+    */
+   static class FileResult {
+      String name;
+      int numberReviews;
+      int numberSentences;
+      int numberReviewsIgnored;
+      double seconds;
+      // null if successful
+      String error = null;
+   }
+
+
+
+   /**
+    * @param args [--threads n] [--virtual] [--splitter name] [--cleaned] [--texts] [--ignore file]*
+    *    input directory or manifest file, output directory
+    */
+   public static void main (String[] args) {
+      int numberThreads = Runtime.getRuntime().availableProcessors();
+      String splitterName = SentenceSplitterFactory.STANFORD;
+      boolean cleaned = false;
+      boolean writeTexts = false;
+      boolean virtualThreads = false;
+      ArrayList<String> ignoreFiles = new ArrayList<String>();
+      ArrayList<String> fileNames = new ArrayList<String>();
+      for (int i=0; i<args.length; i++) {
+         if (args[i].equals("--threads") && i+1 < args.length) {
+            i++;
+            try {
+               numberThreads = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+               numberThreads = 0;
+            }
+            if (numberThreads < 1) {
+               System.err.println("Error, number of threads must be a positive number: " + args[i]);
+               System.exit(1);
+            }
+         } else if (args[i].equals("--virtual")) {
+            virtualThreads = true;
+         } else if (args[i].equals("--splitter") && i+1 < args.length) {
+            i++;
+            splitterName = args[i];
+            if (!Arrays.asList(SentenceSplitterFactory.NAMES).contains(splitterName)) {
+               System.err.println("Error, unknown sentence splitter: " + splitterName
+                     + ", use one of " + Arrays.toString(SentenceSplitterFactory.NAMES));
+               System.exit(1);
+            }
+         } else if (args[i].equals("--cleaned")) {
+            cleaned = true;
+         } else if (args[i].equals("--texts")) {
+            writeTexts = true;
+         } else if (args[i].equals("--ignore") && i+1 < args.length) {
+            i++;
+            ignoreFiles.add(args[i]);
+         } else {
+            fileNames.add(args[i]);
+         }
+      }
+      if (fileNames.size() != 2) {
+         System.err.println("Usage: BatchExtractor [--threads <n>] [--virtual] [--splitter <name>] [--cleaned] [--texts] "
+               + "[--ignore <file>]* <input directory or manifest file> <output directory>");
+         System.exit(1);
+      }
+
+      System.out.println("Processing...");
+      ArrayList<File> inputs;
+      try {
+         inputs = findInputs(new File(fileNames.get(0)));
+      } catch (IOException e) {
+         System.out.println("Error while reading list of input files: " + e.getMessage());
+         System.out.println("Abort.");
+         return;
+      }
+      try {
+         checkOutputNames(inputs);
+      } catch (IOException e) {
+         System.out.println("Error in list of input files: " + e.getMessage());
+         System.out.println("Abort.");
+         return;
+      }
+      File outputDirectory = new File(fileNames.get(1));
+      if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+         System.out.println("Error when creating output directory: " + outputDirectory);
+         System.out.println("Abort.");
+         return;
+      }
+
+      ReviewIgnoreIndex ignoreIndex = new ReviewIgnoreIndex();
+      for (String idIgnoreFile : ignoreFiles) {
+         try {
+            ignoreIndex.load(idIgnoreFile);
+         } catch (IOException e) {
+            System.out.println("Error while reading file with ids to ignore: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         }
+      }
+      System.out.println(inputs.size() + " input files, " + numberThreads + " threads, split sentences with "
+            + splitterName + ", ignore reviews with " + ignoreIndex);
+      if (virtualThreads) {
+         System.out.println("Each file on its own thread with " + VirtualThreads.describe()
+               + ", " + numberThreads + " splitting at the same time");
+      }
+
+      BatchExtractor batch = new BatchExtractor(outputDirectory, cleaned, writeTexts, ignoreIndex,
+            new SentenceSplitterPool(splitterName, null));
+      batch.setVirtualThreads(virtualThreads);
+      long start = System.nanoTime();
+      FileResult[] results = batch.run(inputs, numberThreads);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      try {
+         batch.writeSummary(results, seconds, new File(outputDirectory, SUMMARY_FILE));
+      } catch (IOException e) {
+         System.out.println("Error when writing summary: " + e.getMessage());
+      }
+      batch.close();
+      System.out.println("...done.");
+   }
+
+
+
+   /**
+    * @param outputDirectory directory for all output files
+    * @param cleaned input files are cleaned already
+    * @param writeTexts also write the texts files
+    * @param ignoreIndex reviews to ignore in all files (is not changed)
+    * @param splitterPool splitters shared by all tasks
+    */
+   public BatchExtractor (File outputDirectory, boolean cleaned, boolean writeTexts, ReviewIgnoreIndex ignoreIndex,
+         SentenceSplitterPool splitterPool) {
+      this.outputDirectory = outputDirectory;
+      this.cleaned = cleaned;
+      this.writeTexts = writeTexts;
+      this.ignoreIndex = ignoreIndex;
+      this.splitterPool = splitterPool;
+   }
+
+
+   /**
+    * Process each file on a thread of its own (virtual threads if the JVM
+    * has them), the number of threads given to run() limits only the splitting.
+    */
+   public void setVirtualThreads (boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+   }
+
+
+   /**
+    * Files to process: all .xml files of a directory (sorted by name, without
+    * cleaned files written by this class), or the files listed in a manifest.
+    */
+   static ArrayList<File> findInputs (File input) throws IOException {
+      ArrayList<File> inputs = new ArrayList<File>();
+      if (input.isDirectory()) {
+         File[] files = input.listFiles();
+         if (files == null)
+            throw new IOException("Cannot list directory " + input);
+         Arrays.sort(files);
+         for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(XML_SUFFIX) && !file.getName().endsWith(CLEANED_SUFFIX)) {
+               inputs.add(file);
+            }
+         }
+      } else {
+         BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(input), OutputFiles.ENCODING));
+         try {
+            String line;
+            while ((line = in.readLine()) != null) {
+               line = line.trim();
+               if (line.isEmpty() || line.startsWith("#"))
+                  continue;
+               File file = new File(line);
+               if (!file.isAbsolute()) {
+                  file = new File(input.getAbsoluteFile().getParentFile(), line);
+               }
+               inputs.add(file);
+            }
+         } finally {
+            in.close();
+         }
+      }
+      return inputs;
+   }
+
+
+   /**
+    * Check that no two input files have the same output files
+    * (e.g., files with the same name in different directories of a manifest).
+    * Names that differ only in case are the same on some file systems.
+    * @throws IOException naming both files if there are such files
+    */
+   static void checkOutputNames (ArrayList<File> inputs) throws IOException {
+      HashMap<String,File> names = new HashMap<String,File>();
+      for (File input : inputs) {
+         File other = names.put(outputName(input).toLowerCase(Locale.ENGLISH), input);
+         if (other != null)
+            throw new IOException("Output files of " + other + " and " + input + " have the same name, rename one of them");
+      }
+   }
+
+
+   /**
+    * Start of the names of the output files of an input file
+    * (the name of the file without .xml).
+    */
+   static String outputName (File input) {
+      String name = input.getName();
+      if (name.endsWith(XML_SUFFIX)) {
+         name = name.substring(0, name.length() - XML_SUFFIX.length());
+      }
+      return name;
+   }
+
+
+   /**
+    * Process all files on a pool of threads.
+    * Each file is reported when it is done.
+    * @param numberThreads number of threads, with virtual threads
+    *    the number of files that are split at the same time
+    *    (and FILES_PER_THREAD times as many files are in progress)
+    * @return result of each file, in the order of the inputs
+    */
+   public FileResult[] run (final ArrayList<File> inputs, int numberThreads) {
+      ExecutorService workers;
+      if (virtualThreads) {
+         sharedSplitter = new ThrottledSentenceSplitter(splitterPool, new Semaphore(numberThreads));
+         workers = VirtualThreads.newThreadPerTaskExecutor("batch");
+      } else {
+         workers = Executors.newFixedThreadPool(numberThreads, new DaemonThreadFactory("batch"));
+      }
+      CompletionService<FileResult> completed = new ExecutorCompletionService<FileResult>(workers);
+      FileResult[] results = new FileResult[inputs.size()];
+      try {
+         // Largest files first, so a large file does not start last
+         Integer[] order = new Integer[inputs.size()];
+         for (int i=0; i<order.length; i++) {
+            order[i] = i;
+         }
+         Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+               return Long.compare(inputs.get(b).length(), inputs.get(a).length());
+            }
+         });
+         // A file is submitted when another one is done, so only a bounded number
+         // of files are in progress (each has open output files with their buffers)
+         int maxInProgress = virtualThreads ? numberThreads * FILES_PER_THREAD : numberThreads;
+         int next = 0;
+         while (next < order.length && next < maxInProgress) {
+            submit(completed, inputs, order[next++], results);
+         }
+         for (int n=1; n<=inputs.size(); n++) {
+            FileResult result = completed.take().get();
+            System.out.println("[" + n + "/" + inputs.size() + "] " + format(result));
+            if (next < order.length) {
+               submit(completed, inputs, order[next++], results);
+            }
+         }
+      } catch (InterruptedException e) {
+         System.out.println("Interrupted, not all files have been processed.");
+      } catch (ExecutionException e) {
+         // process() catches all errors of a file
+         System.out.println("Error: " + e.getCause().getMessage());
+      } finally {
+         workers.shutdownNow();
+      }
+      return results;
+   }
+
+
+   private void submit (CompletionService<FileResult> completed, final ArrayList<File> inputs, final int i,
+         final FileResult[] results) {
+      completed.submit(new Callable<FileResult>() {
+         public FileResult call() {
+            FileResult result = process(inputs.get(i));
+            results[i] = result;
+            return result;
+         }
+      });
+   }
+
+
+   /**
+    * Clean and extract one file (task on a pool thread).
+    */
+   FileResult process (File input) {
+      FileResult result = new FileResult();
+      String name = outputName(input);
+      result.name = input.getPath();
+      long start = System.nanoTime();
+      try {
+         File xmlFile = input;
+         if (!cleaned) {
+            xmlFile = new File(outputDirectory, name + CLEANED_SUFFIX);
+            clean(input, xmlFile);
+         }
+         extract(xmlFile, name, result);
+      } catch (FileNotFoundException e) {
+         result.error = "file not found: " + e.getMessage();
+      } catch (IOException e) {
+         result.error = e.getMessage();
+      } catch (SAXException e) {
+         result.error = e.getMessage();
+      } catch (RuntimeException e) {
+         result.error = e.toString();
+      }
+      result.seconds = (System.nanoTime() - start) / 1e9;
+      return result;
+   }
+
+
+   private static void clean (File input, File output) throws IOException {
+      FileInputStream in = new FileInputStream(input);
+      try {
+         FileOutputStream out = new FileOutputStream(output);
+         try {
+            EpinionsCleaner.clean(in.getChannel(), out.getChannel());
+         } finally {
+            out.close();
+         }
+      } finally {
+         in.close();
+      }
+   }
+
+
+   /**
+    * Extract the sentences of a cleaned file with a splitter of the pool.
+    */
+   private void extract (File xmlFile, String name, FileResult result) throws IOException, SAXException {
+      BufferedWriter outSentences = outputFiles.open(new File(outputDirectory, name + SENTENCES_SUFFIX).getPath(), false);
+      BufferedWriter outText = null;
+      SentenceSplitter splitter = (sharedSplitter != null) ? sharedSplitter : splitterPool.acquire();
+      InputStreamReader in = null;
+      try {
+         if (writeTexts) {
+            outText = outputFiles.open(new File(outputDirectory, name + TEXTS_SUFFIX).getPath(), false);
+         }
+         EpinionsReviewHandler handler = new EpinionsReviewHandler(splitter);
+         handler.setOutputSentences(outSentences);
+         handler.setOutputTexts(outText);
+         handler.setIgnoreIndex(ignoreIndex);
+         handler.setPrintCounts(false);
+         XMLReader xr = newXMLReader();
+         xr.setContentHandler(handler);
+         xr.setErrorHandler(handler);
+         in = new InputStreamReader(new FileInputStream(xmlFile), OutputFiles.ENCODING);
+         xr.parse(new InputSource(in));
+         result.numberReviews = handler.getNumberReviews();
+         result.numberSentences = handler.getNumberSentences();
+         result.numberReviewsIgnored = handler.getNumberReviewsIgnored();
+      } finally {
+         if (splitter != sharedSplitter) {
+            splitterPool.release(splitter);
+         }
+         if (in != null) {
+            in.close();
+         }
+         outSentences.close();
+         if (outText != null) {
+            outText.close();
+         }
+      }
+   }
+
+
+   /**
+    * New SAX reader, one per file, as the tasks run at the same time.
+    * Namespace aware, so the handler gets the local names of the elements.
+    */
+   private static XMLReader newXMLReader () throws SAXException {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      try {
+         return factory.newSAXParser().getXMLReader();
+      } catch (ParserConfigurationException e) {
+         throw new SAXException("Cannot create XML reader: " + e.getMessage(), e);
+      }
+   }
+
+
+   private static String format (FileResult result) {
+      if (result.error != null) {
+         return result.name + ": Error, " + result.error;
+      }
+      return String.format(Locale.ENGLISH, "%s: Processed %d reviews with %d sentences. Ignored %d reviews. (%.1f s)",
+            result.name, result.numberReviews, result.numberSentences, result.numberReviewsIgnored, result.seconds);
+   }
+
+
+   /**
+    * Print the total and write the summary file:
+    * file \t reviews \t sentences \t ignored \t seconds \t error (empty if none),
+    * one line per file in the order of the inputs and a line with the total.
+    */
+   public void writeSummary (FileResult[] results, double seconds, File summaryFile) throws IOException {
+      int reviews = 0;
+      int sentences = 0;
+      int ignored = 0;
+      int failed = 0;
+      int succeeded = 0;
+      BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(summaryFile), OutputFiles.ENCODING));
+      try {
+         out.write("file\treviews\tsentences\tignored\tseconds\terror");
+         out.newLine();
+         for (FileResult result : results) {
+            if (result == null)
+               continue;
+            out.write(result.name + "\t" + result.numberReviews + "\t" + result.numberSentences + "\t"
+                  + result.numberReviewsIgnored + "\t" + String.format(Locale.ENGLISH, "%.1f", result.seconds) + "\t"
+                  + (result.error == null ? "" : result.error));
+            out.newLine();
+            if (result.error != null) {
+               failed++;
+            } else {
+               succeeded++;
+               reviews += result.numberReviews;
+               sentences += result.numberSentences;
+               ignored += result.numberReviewsIgnored;
+            }
+         }
+         out.write("total\t" + reviews + "\t" + sentences + "\t" + ignored + "\t"
+               + String.format(Locale.ENGLISH, "%.1f", seconds) + "\t" + (failed > 0 ? failed + " files failed" : ""));
+         out.newLine();
+      } finally {
+         out.close();
+      }
+      System.out.println(String.format(Locale.ENGLISH,
+            "Processed %d reviews with %d sentences in %d files. Ignored %d reviews. (%.1f s)",
+            reviews, sentences, succeeded, ignored, seconds));
+      if (failed > 0) {
+         System.out.println("Errors in " + failed + " files, see " + summaryFile);
+      }
+      System.out.println("Summary in " + summaryFile);
+   }
+
+
+   public void close () {
+      try {
+         splitterPool.close();
+      } catch (IOException e) {
+      }
+      outputFiles.close();
+   }
+
+}
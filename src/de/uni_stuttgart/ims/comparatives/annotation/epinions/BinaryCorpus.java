@@ -0,0 +1,345 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+
+/**
+ * Read a binary corpus file written by BinaryCorpusWriter.
+ *
+ * The file is memory-mapped, nothing is loaded when it is opened.
+ * The tokens of any review or sentence are found in constant time,
+ * a review can be found by its id (hash table).
+ * Token Strings are created when they are first asked for and then kept.
+ *
+ * Reviews, sentences, tokens and types are numbered from 0.
+ * Each section of the file must be smaller than 2 GB.
+ *
+ * Can be used from several threads.
+ */
+public class BinaryCorpus implements Closeable {
+
+   private RandomAccessFile file;
+
+   private int numberReviews;
+   private int numberSentences;
+   private int numberTokens;
+   private int numberTypes;
+
+   private ByteBuffer tokenIds;
+   private ByteBuffer sentenceStarts;
+   private ByteBuffer reviewStarts;
+   private ByteBuffer reviewIdOffsets;
+   private ByteBuffer reviewIdData;
+   private ByteBuffer typeOffsets;
+   private ByteBuffer typeData;
+   private ByteBuffer idTable;
+   private int idTableSize;
+
+   // Types that have been decoded
+   private String[] types;
+
+
+   /**
+    * Open a binary corpus file.
+    * @param fileName
+    * @throws IOException if the file cannot be read or is not a binary corpus file
+    */
+   public BinaryCorpus (String fileName) throws IOException {
+      file = new RandomAccessFile(fileName, "r");
+      try {
+         if (file.length() < BinaryCorpusWriter.HEADER_LENGTH || file.readInt() != BinaryCorpusWriter.MAGIC) {
+            throw new IOException("Not a binary corpus file: " + fileName);
+         }
+         if (file.readInt() != BinaryCorpusWriter.VERSION) {
+            throw new IOException("Unknown version of binary corpus file: " + fileName);
+         }
+         numberReviews = file.readInt();
+         numberSentences = file.readInt();
+         numberTokens = file.readInt();
+         numberTypes = file.readInt();
+         long[] sections = new long[BinaryCorpusWriter.NUMBER_SECTIONS + 1];
+         for (int i=0; i<BinaryCorpusWriter.NUMBER_SECTIONS; i++) {
+            sections[i] = file.readLong();
+         }
+         sections[BinaryCorpusWriter.NUMBER_SECTIONS] = file.length();
+
+         FileChannel channel = file.getChannel();
+         tokenIds = map(channel, sections, 0);
+         sentenceStarts = map(channel, sections, 1);
+         reviewStarts = map(channel, sections, 2);
+         reviewIdOffsets = map(channel, sections, 3);
+         reviewIdData = map(channel, sections, 4);
+         typeOffsets = map(channel, sections, 5);
+         typeData = map(channel, sections, 6);
+         idTable = map(channel, sections, 7);
+         idTableSize = idTable.getInt(0);
+      } catch (IOException e) {
+         file.close();
+         throw e;
+      }
+      types = new String[numberTypes];
+   }
+
+
+   private static MappedByteBuffer map (FileChannel channel, long[] sections, int section) throws IOException {
+      long size = sections[section+1] - sections[section];
+      if (size < 0 || size > Integer.MAX_VALUE) {
+         throw new IOException("Invalid section in binary corpus file: " + section);
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, sections[section], size);
+   }
+
+
+   // Sizes
+
+
+   public int getNumberReviews () {
+      return numberReviews;
+   }
+
+   public int getNumberSentences () {
+      return numberSentences;
+   }
+
+   public int getNumberTokens () {
+      return numberTokens;
+   }
+
+   /**
+    * Number of distinct tokens.
+    */
+   public int getNumberTypes () {
+      return numberTypes;
+   }
+
+
+   // Reviews
+
+
+   public String getReviewId (int review) {
+      return decode(reviewIdOffsets, reviewIdData, review);
+   }
+
+
+   /**
+    * Find a review by its id.
+    * @return the first review with this id, -1 if there is none
+    */
+   public int findReview (String id) {
+      int slot = slot(id, idTableSize);
+      while (true) {
+         int review = idTable.getInt(4 + 4 * slot) - 1;
+         if (review < 0 || getReviewId(review).equals(id)) {
+            return review;
+         }
+         slot = (slot + 1) & (idTableSize - 1);
+      }
+   }
+
+
+   /**
+    * Slot of an id in the review id table of this size.
+    */
+   static int slot (String id, int tableSize) {
+      int h = id.hashCode();
+      h ^= (h >>> 16);
+      h *= 0x85ebca6b;
+      h ^= (h >>> 13);
+      return h & (tableSize - 1);
+   }
+
+
+   /**
+    * Review id table as written by BinaryCorpusWriter and ReviewFieldsWriter:
+    * size is a power of 2, at least twice the number of reviews,
+    * each slot is review + 1 or 0 if empty (open addressing with slot()).
+    * If several reviews have the same id, the first one is in the table.
+    * @param reviewIds id of each review
+    * @return table, its length is the size
+    */
+   static int[] idTable (List<String> reviewIds) {
+      int size = 1;
+      while (size < 2 * reviewIds.size()) {
+         size *= 2;
+      }
+      int[] table = new int[size];
+      for (int review=0; review<reviewIds.size(); review++) {
+         int slot = slot(reviewIds.get(review), size);
+         while (table[slot] != 0) {
+            // Keep the first review with this id
+            if (reviewIds.get(table[slot] - 1).equals(reviewIds.get(review)))
+               break;
+            slot = (slot + 1) & (size - 1);
+         }
+         if (table[slot] == 0) {
+            table[slot] = review + 1;
+         }
+      }
+      return table;
+   }
+
+
+   public int getFirstSentence (int review) {
+      return reviewStarts.getInt(4 * review);
+   }
+
+   public int getNumberSentences (int review) {
+      return reviewStarts.getInt(4 * (review+1)) - reviewStarts.getInt(4 * review);
+   }
+
+
+   /**
+    * Review that contains this sentence (binary search).
+    */
+   public int getReview (int sentence) {
+      int low = 0;
+      int high = numberReviews - 1;
+      while (low < high) {
+         int middle = (low + high + 1) >>> 1;
+         if (getFirstSentence(middle) <= sentence) {
+            low = middle;
+         } else {
+            high = middle - 1;
+         }
+      }
+      return low;
+   }
+
+
+   // Sentences
+
+
+   /**
+    * Number of tokens in the sentence.
+    */
+   public int getSentenceLength (int sentence) {
+      return sentenceStarts.getInt(4 * (sentence+1)) - sentenceStarts.getInt(4 * sentence);
+   }
+
+
+   /**
+    * Id of a token of a sentence (see getType()).
+    * @param sentence
+    * @param position position of the token in the sentence, starting with 0
+    */
+   public int getTokenId (int sentence, int position) {
+      return tokenIds.getInt(4 * (sentenceStarts.getInt(4 * sentence) + position));
+   }
+
+
+   /**
+    * Tokens of a sentence.
+    */
+   public String[] getTokens (int sentence) {
+      int first = sentenceStarts.getInt(4 * sentence);
+      String[] tokens = new String[getSentenceLength(sentence)];
+      for (int i=0; i<tokens.length; i++) {
+         tokens[i] = getType(tokenIds.getInt(4 * (first + i)));
+      }
+      return tokens;
+   }
+
+
+   /**
+    * Tokenized sentence, each token followed by a space
+    * (as in the sentences and texts files).
+    */
+   public String getTokenizedSentence (int sentence) {
+      StringBuilder sb = new StringBuilder();
+      for (String token : getTokens(sentence)) {
+         sb.append(token).append(' ');
+      }
+      return sb.toString();
+   }
+
+
+   /**
+    * Token text of a type id.
+    */
+   public String getType (int type) {
+      String token = types[type];
+      if (token == null) {
+         token = decode(typeOffsets, typeData, type);
+         types[type] = token;
+      }
+      return token;
+   }
+
+
+   private static String decode (ByteBuffer offsets, ByteBuffer data, int index) {
+      int begin = offsets.getInt(4 * index);
+      int end = offsets.getInt(4 * (index+1));
+      byte[] bytes = new byte[end - begin];
+      for (int i=0; i<bytes.length; i++) {
+         bytes[i] = data.get(begin + i);
+      }
+      return new String(bytes, BinaryCorpusWriter.UTF8);
+   }
+
+
+   public void close () throws IOException {
+      file.close();
+   }
+
+
+
+   /**
+    * Print reviews of a binary corpus file in the format of the
+    * sentences file (id-n \t sentence tokenized).
+    * @param args [1] binary corpus file
+    *    [2..] (optional) ids of the reviews to print, all reviews if none is given
+    */
+   public static void main (String[] args) throws IOException {
+      if (args.length < 1) {
+         System.err.println("Usage: BinaryCorpus <binary corpus file> [<review id>]*");
+         System.exit(1);
+      }
+      BinaryCorpus corpus = new BinaryCorpus(args[0]);
+      BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, OutputFiles.ENCODING));
+      if (args.length == 1) {
+         for (int review=0; review<corpus.getNumberReviews(); review++) {
+            corpus.print(review, out);
+         }
+      } else {
+         for (int i=1; i<args.length; i++) {
+            int review = corpus.findReview(args[i]);
+            if (review < 0) {
+               out.flush();
+               System.err.println("Review not found: " + args[i]);
+            } else {
+               corpus.print(review, out);
+            }
+         }
+      }
+      out.flush();
+      corpus.close();
+   }
+
+
+   private void print (int review, BufferedWriter out) throws IOException {
+      String id = getReviewId(review);
+      int first = getFirstSentence(review);
+      for (int s=0; s<getNumberSentences(review); s++) {
+         out.write(id);
+         out.write('-');
+         out.write(Integer.toString(s+1));
+         out.write('\t');
+         out.write(getTokenizedSentence(first + s));
+         out.newLine();
+      }
+   }
+
+}
@@ -0,0 +1,209 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
+
+
+/**
+ * Write the sentences of all reviews to a binary corpus file
+ * that can be read with random access (see BinaryCorpus).
+ *
+ * Every distinct token is stored once in a string table,
+ * sentences are stored as sequences of int token ids.
+ * Token ids are written to the file as the reviews come in,
+ * the tables are kept in memory and written by close().
+ *
+ * File format (all numbers big endian):
+ * header:
+ *    int magic, int version,
+ *    int number of reviews, int number of sentences,
+ *    int number of tokens, int number of types (distinct tokens),
+ *    long offset of each section (in the order below)
+ * sections:
+ *    token ids: int per token, all sentences one after the other
+ *    sentence starts: int per sentence + 1, index of the first token
+ *    review starts: int per review + 1, index of the first sentence
+ *    review id offsets: int per review + 1, position in the review id data
+ *    review id data: UTF-8
+ *    type offsets: int per type + 1, position in the type data
+ *    type data: UTF-8
+ *    review id table: int table size (power of 2), then int per slot,
+ *       review + 1 or 0 if empty (open addressing, see BinaryCorpus.idTable())
+ *
+ * Not thread-safe, all reviews must be written from the same thread.
+ */
+public class BinaryCorpusWriter implements Closeable {
+
+   static final int MAGIC = 0x45504943;
+   static final int VERSION = 1;
+   static final int NUMBER_SECTIONS = 8;
+   static final int HEADER_LENGTH = 6 * 4 + NUMBER_SECTIONS * 8;
+   static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private String fileName;
+   private DataOutputStream out;
+   private long position;
+
+   // Token types
+   private HashMap<String, Integer> typeIds = new HashMap<String, Integer>();
+   private ArrayList<String> types = new ArrayList<String>();
+
+   // Index of the first token of each sentence, first sentence of each review
+   private int[] sentenceStarts = new int[1024];
+   private int numberSentences = 0;
+   private int[] reviewStarts = new int[256];
+   private ArrayList<String> reviewIds = new ArrayList<String>();
+   private int numberTokens = 0;
+
+
+   /**
+    * Create the file, an existing file is overwritten.
+    * @param fileName
+    * @throws IOException
+    */
+   public BinaryCorpusWriter (String fileName) throws IOException {
+      this.fileName = fileName;
+      this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+      // Header is written at the end
+      this.out.write(new byte[HEADER_LENGTH]);
+      this.position = HEADER_LENGTH;
+   }
+
+
+   /**
+    * Add the sentences of a review.
+    * @param id review id
+    * @param sentences sentences and tokens of the review
+    * @throws IOException
+    */
+   public void write (String id, SentenceBoundaries sentences) throws IOException {
+      int numberReviews = reviewIds.size();
+      if (numberReviews + 1 == reviewStarts.length) {
+         reviewStarts = Arrays.copyOf(reviewStarts, reviewStarts.length * 2);
+      }
+      reviewStarts[numberReviews] = numberSentences;
+      reviewIds.add(id);
+
+      for (int s=0; s<sentences.getNumberSentences(); s++) {
+         if (numberSentences + 1 == sentenceStarts.length) {
+            sentenceStarts = Arrays.copyOf(sentenceStarts, sentenceStarts.length * 2);
+         }
+         sentenceStarts[numberSentences] = numberTokens;
+         numberSentences += 1;
+         for (int i=sentences.getFirstToken(s); i<sentences.getFirstToken(s+1); i++) {
+            if (numberTokens == Integer.MAX_VALUE) {
+               throw new IOException("Too many tokens for binary corpus file " + fileName);
+            }
+            out.writeInt(typeId(sentences.getTokenValue(i)));
+            numberTokens += 1;
+         }
+      }
+      position += 4L * sentences.getNumberTokens();
+   }
+
+
+   private int typeId (String token) {
+      Integer id = typeIds.get(token);
+      if (id == null) {
+         id = types.size();
+         typeIds.put(token, id);
+         types.add(token);
+      }
+      return id;
+   }
+
+
+   /**
+    * Write the tables and the header and close the file.
+    */
+   public void close () throws IOException {
+      int numberReviews = reviewIds.size();
+      sentenceStarts[numberSentences] = numberTokens;
+      reviewStarts[numberReviews] = numberSentences;
+
+      long[] sections = new long[NUMBER_SECTIONS];
+      sections[0] = HEADER_LENGTH;
+      sections[1] = position;
+      writeInts(sentenceStarts, numberSentences + 1);
+      sections[2] = position;
+      writeInts(reviewStarts, numberReviews + 1);
+      sections[3] = position;
+      writeStrings(reviewIds, sections, 4);
+      sections[5] = position;
+      writeStrings(types, sections, 6);
+      sections[7] = position;
+      writeIdTable();
+      out.close();
+
+      RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+      try {
+         file.writeInt(MAGIC);
+         file.writeInt(VERSION);
+         file.writeInt(numberReviews);
+         file.writeInt(numberSentences);
+         file.writeInt(numberTokens);
+         file.writeInt(types.size());
+         for (long section : sections) {
+            file.writeLong(section);
+         }
+      } finally {
+         file.close();
+      }
+   }
+
+
+   private void writeInts (int[] values, int length) throws IOException {
+      for (int i=0; i<length; i++) {
+         out.writeInt(values[i]);
+      }
+      position += 4L * length;
+   }
+
+
+   /**
+    * Write offsets, then the data, the data section starts at sections[dataSection].
+    */
+   private void writeStrings (ArrayList<String> strings, long[] sections, int dataSection) throws IOException {
+      byte[][] data = new byte[strings.size()][];
+      int offset = 0;
+      for (int i=0; i<strings.size(); i++) {
+         data[i] = strings.get(i).getBytes(UTF8);
+         out.writeInt(offset);
+         if (offset + (long) data[i].length > Integer.MAX_VALUE) {
+            throw new IOException("Too many strings for binary corpus file " + fileName);
+         }
+         offset += data[i].length;
+      }
+      out.writeInt(offset);
+      position += 4L * (strings.size() + 1);
+      sections[dataSection] = position;
+      for (byte[] bytes : data) {
+         out.write(bytes);
+      }
+      position += offset;
+   }
+
+
+   private void writeIdTable () throws IOException {
+      int[] table = BinaryCorpus.idTable(reviewIds);
+      out.writeInt(table.length);
+      writeInts(table, table.length);
+      position += 4;
+   }
+
+}
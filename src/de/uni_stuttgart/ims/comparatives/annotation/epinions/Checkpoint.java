@@ -0,0 +1,168 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+
+/**
+ * State of an extraction run at the start of a review,
+ * when all reviews before it have been written completely.
+ * Reading can be resumed from here (see ExtractSentencesFromXML, --resume).
+ *
+ * Saved as a properties file:
+ * - lastReviewId: id of the last review before the checkpoint
+ * - inputOffset: byte offset of the line in the input file where the next review starts
+ * - openElements: elements that are open at this point, separated by spaces
+ *    (e.g., "products product"), attributes are not kept
+ * - sentencesLength, textsLength: length of the output files in bytes
+ *    (textsLength is -1 if no texts are written)
+ * - numberReviews, numberSentences, numberReviewsIgnored: counters
+ */
+public class Checkpoint {
+
+   public String lastReviewId = "";
+   public long inputOffset = 0;
+   public String[] openElements = new String[0];
+   public long sentencesLength = 0;
+   public long textsLength = -1;
+   public int numberReviews = 0;
+   public int numberSentences = 0;
+   public int numberReviewsIgnored = 0;
+
+
+   /**
+    * Name of the checkpoint file for this output file.
+    * @param outputSentences name of the output file for sentences
+    */
+   public static String getFileName (String outputSentences) {
+      return outputSentences + ".checkpoint";
+   }
+
+
+   /**
+    * Read a checkpoint from a file.
+    * @param fileName
+    * @throws IOException if the file cannot be read or a value is missing
+    */
+   public static Checkpoint load (String fileName) throws IOException {
+      Properties properties = new Properties();
+      InputStream in = new FileInputStream(fileName);
+      try {
+         properties.load(in);
+      } finally {
+         in.close();
+      }
+
+      Checkpoint checkpoint = new Checkpoint();
+      try {
+         checkpoint.lastReviewId = properties.getProperty("lastReviewId", "");
+         checkpoint.inputOffset = Long.parseLong(get(properties, "inputOffset"));
+         String openElements = get(properties, "openElements").trim();
+         checkpoint.openElements = openElements.isEmpty() ? new String[0] : openElements.split(" ");
+         checkpoint.sentencesLength = Long.parseLong(get(properties, "sentencesLength"));
+         checkpoint.textsLength = Long.parseLong(get(properties, "textsLength"));
+         checkpoint.numberReviews = Integer.parseInt(get(properties, "numberReviews"));
+         checkpoint.numberSentences = Integer.parseInt(get(properties, "numberSentences"));
+         checkpoint.numberReviewsIgnored = Integer.parseInt(get(properties, "numberReviewsIgnored"));
+      } catch (NumberFormatException e) {
+         throw new IOException("Invalid checkpoint file " + fileName + ": " + e.getMessage());
+      }
+      return checkpoint;
+   }
+
+
+   private static String get (Properties properties, String key) throws IOException {
+      String value = properties.getProperty(key);
+      if (value == null)
+         throw new IOException("Invalid checkpoint file, no value for " + key);
+      return value;
+   }
+
+
+   /**
+    * Write the checkpoint to a file.
+    * The checkpoint is first written to a temporary file that then
+    * replaces the old checkpoint, so there is always a complete checkpoint
+    * even if the program is killed while writing.
+    * @param fileName
+    * @throws IOException
+    */
+   public void save (String fileName) throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty("lastReviewId", lastReviewId);
+      properties.setProperty("inputOffset", Long.toString(inputOffset));
+      StringBuilder elements = new StringBuilder();
+      for (String element : openElements) {
+         if (elements.length() > 0)
+            elements.append(' ');
+         elements.append(element);
+      }
+      properties.setProperty("openElements", elements.toString());
+      properties.setProperty("sentencesLength", Long.toString(sentencesLength));
+      properties.setProperty("textsLength", Long.toString(textsLength));
+      properties.setProperty("numberReviews", Integer.toString(numberReviews));
+      properties.setProperty("numberSentences", Integer.toString(numberSentences));
+      properties.setProperty("numberReviewsIgnored", Integer.toString(numberReviewsIgnored));
+
+      File file = new File(fileName);
+      File temporary = new File(fileName + ".tmp");
+      OutputStream out = new FileOutputStream(temporary);
+      try {
+         properties.store(out, "Checkpoint of ExtractSentencesFromXML");
+         out.flush();
+      } finally {
+         out.close();
+      }
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+   }
+
+
+   /**
+    * Start of an XML document with the elements that are open at the checkpoint,
+    * one line each. Reading the input from inputOffset after this
+    * gives the same elements as reading the whole input.
+    */
+   public String getXmlPrefix () {
+      StringBuilder prefix = new StringBuilder();
+      prefix.append(EpinionsCleaningReader.XML_OPENING).append(EpinionsCleaningReader.LINE_SEPARATOR);
+      for (String element : openElements) {
+         prefix.append('<').append(element).append('>').append(EpinionsCleaningReader.LINE_SEPARATOR);
+      }
+      return prefix.toString();
+   }
+
+
+   /**
+    * Remove everything that has been written to a file after the checkpoint.
+    * @param fileName
+    * @param length length of the file at the checkpoint
+    * @throws IOException if the file is shorter than at the checkpoint
+    */
+   public static void truncate (String fileName, long length) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+      try {
+         if (file.length() < length) {
+            throw new IOException("File " + fileName + " is shorter than at the checkpoint ("
+                  + file.length() + " < " + length + " bytes)");
+         }
+         file.setLength(length);
+      } finally {
+         file.close();
+      }
+   }
+
+}
@@ -0,0 +1,110 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * Write a checkpoint every n reviews (see Checkpoint).
+ *
+ * The XML reader thread creates a checkpoint at the start of a review
+ * with create(). It is saved with save() when all reviews before it
+ * have been written, i.e., on the thread that writes the reviews,
+ * after the output files have been flushed.
+ */
+public class CheckpointWriter {
+
+   private int interval;
+   private LineOffsetInputStream input;
+   private int headerLines;
+   private long baseOffset;
+
+   private String checkpointFile;
+   private String outputSentences;
+   private String outputTexts;
+
+   // Number of reviews read when the next checkpoint should be written
+   private int nextCheckpoint;
+
+
+   /**
+    * @param interval write a checkpoint every this many reviews
+    * @param input input file as read by the XML reader
+    * @param headerLines number of lines the XML reader sees before the first line of input
+    *    (e.g., XML declaration and root element added when cleaning while reading)
+    * @param baseOffset offset in the input file at which input starts
+    * @param checkpointFile file to write the checkpoints to
+    * @param outputSentences output file for sentences
+    * @param outputTexts output file for texts (may be null)
+    */
+   public CheckpointWriter (int interval, LineOffsetInputStream input, int headerLines, long baseOffset,
+         String checkpointFile, String outputSentences, String outputTexts) {
+      this.interval = interval;
+      this.input = input;
+      this.headerLines = headerLines;
+      this.baseOffset = baseOffset;
+      this.checkpointFile = checkpointFile;
+      this.outputSentences = outputSentences;
+      this.outputTexts = outputTexts;
+      this.nextCheckpoint = interval;
+   }
+
+
+   /**
+    * Check if a checkpoint should be written.
+    * @param numberReviewsRead number of reviews read so far
+    */
+   public boolean isDue (int numberReviewsRead) {
+      return numberReviewsRead >= nextCheckpoint;
+   }
+
+
+   /**
+    * Create a checkpoint at the start of a review.
+    * This is only possible if the review starts a line of the input,
+    * otherwise the checkpoint is tried again at the next review.
+    * @param line line of the review start tag as seen by the XML reader
+    * @param openElements elements that are open, without the review
+    * @param numberReviewsRead number of reviews read before this one
+    * @return checkpoint without output lengths and number of sentences,
+    *    null if no checkpoint is possible here
+    */
+   public Checkpoint create (int line, String[] openElements, int numberReviewsRead) {
+      long offset = input.getReviewLineOffset(line - headerLines);
+      if (offset < 0) {
+         return null;
+      }
+      Checkpoint checkpoint = new Checkpoint();
+      checkpoint.inputOffset = baseOffset + offset;
+      checkpoint.openElements = openElements;
+      nextCheckpoint = numberReviewsRead + interval;
+      return checkpoint;
+   }
+
+
+   /**
+    * Save a checkpoint after all reviews before it have been written
+    * and the output files have been flushed.
+    * @param checkpoint
+    * @throws IOException
+    */
+   public void save (Checkpoint checkpoint) throws IOException {
+      checkpoint.sentencesLength = new File(outputSentences).length();
+      checkpoint.textsLength = (outputTexts != null) ? new File(outputTexts).length() : -1;
+      checkpoint.save(checkpointFile);
+   }
+
+
+   /**
+    * Remove the checkpoint file when the input has been read completely.
+    */
+   public void delete () {
+      new File(checkpointFile).delete();
+   }
+
+}
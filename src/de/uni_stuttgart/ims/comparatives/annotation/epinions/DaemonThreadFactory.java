@@ -0,0 +1,31 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Create named daemon threads, so that an aborted run does
+ * not keep the program running.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+   private String name;
+   private int count = 0;
+
+   public DaemonThreadFactory (String name) {
+      this.name = name;
+   }
+
+   public synchronized Thread newThread (Runnable r) {
+      count += 1;
+      Thread t = new Thread(r, name + "-" + count);
+      t.setDaemon(true);
+      return t;
+   }
+
+}
@@ -0,0 +1,279 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+
+/**
+ * Clean the original epinions file on bytes:
+ * convert Windows-1250 directly to UTF-8 and clean the lines
+ * in the same pass, without decoding to Strings.
+ *
+ * Gives the same result as EpinionsCleaningReader followed by a
+ * UTF-8 writer. All edits of the cleaner are on ASCII characters and
+ * Windows-1250 is a single-byte encoding, so each input byte is
+ * one character. Bytes are converted with a lookup table that
+ * contains the UTF-8 bytes of each Windows-1250 byte, control
+ * characters that are deleted have no bytes.
+ * In UTF-8, bytes of multi-byte characters are never ASCII,
+ * so the tags can be found on the output bytes.
+ *
+ * Lines are separated as in BufferedReader.readLine() (\n, \r or \r\n),
+ * in the output each line is followed by the platform line break.
+ * The output is collected in the given buffer and written to the
+ * channel when the buffer is full and on flush().
+ */
+public class EpinionsByteCleaner {
+
+   // UTF-8 bytes for each Windows-1250 byte
+   private static final byte[][] UTF8 = createTable();
+
+   private static final byte[] LINE_SEPARATOR = ascii(EpinionsCleaningReader.LINE_SEPARATOR);
+   private static final byte[] REVIEW_END = ascii("</review>");
+   private static final byte[] TEXT_START = ascii("<text>");
+   private static final byte[] TEXT_END = ascii("</text>");
+   private static final byte[] CDATA_START = ascii("<![CDATA[");
+   private static final byte[] CDATA_END = ascii("]]>");
+
+   private WritableByteChannel channel;
+   private ByteBuffer out;
+
+   // Current line in UTF-8 (see EpinionsLineCleaner)
+   private byte[] line = new byte[4096];
+   private int length = 0;
+   private int tagsFrom = 0;
+   private int sinceReviewEnd = 0;
+
+   private boolean pendingLine = false; // bytes after the last line break
+   private boolean skipLF = false; // \n after \r
+
+
+   /**
+    * @param channel output
+    * @param buffer buffer for the output (use a large direct buffer for files)
+    */
+   public EpinionsByteCleaner (WritableByteChannel channel, ByteBuffer buffer) {
+      this.channel = channel;
+      this.out = buffer;
+      this.out.clear();
+   }
+
+
+   /**
+    * Clean the next part of the input.
+    * Complete lines are moved to the output, the rest is kept until
+    * the next call or finish().
+    * @param input Windows-1250 bytes from position to limit, will be consumed
+    * @throws IOException if writing fails
+    */
+   public void clean (ByteBuffer input) throws IOException {
+      int limit = input.limit();
+      for (int i=input.position(); i<limit; i++) {
+         int b = input.get(i) & 0xFF;
+
+         if (skipLF) {
+            skipLF = false;
+            if (b == '\n')
+               continue;
+         }
+         if (b == '\n' || b == '\r') {
+            endLine();
+            skipLF = (b == '\r');
+            continue;
+         }
+         pendingLine = true;
+
+         // Only a '>' can complete one of the tags
+         if (b == '>') {
+            appendTagEnd();
+            continue;
+         }
+
+         if (length + 4 > line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+         }
+
+         // Printable ASCII is the same in UTF-8
+         if (b >= 0x20 && b < 0x7F) {
+            line[length++] = (byte) b;
+            sinceReviewEnd += 1;
+            continue;
+         }
+
+         // Convert to UTF-8, delete control characters
+         byte[] utf8 = UTF8[b];
+         if (utf8.length == 0)
+            continue;
+         for (int j=0; j<utf8.length; j++) {
+            line[length++] = utf8[j];
+         }
+         sinceReviewEnd += 1;
+      }
+      input.position(limit);
+   }
+
+
+   /**
+    * End of input: move the last line to the output, even without line break,
+    * and write everything to the channel.
+    * @throws IOException if writing fails
+    */
+   public void finish () throws IOException {
+      if (pendingLine) {
+         endLine();
+      }
+      flush();
+   }
+
+
+   /**
+    * Write a line that is not cleaned (e.g., XML opening),
+    * followed by a line break.
+    * @param text
+    * @throws IOException if writing fails
+    */
+   public void writeLine (String text) throws IOException {
+      byte[] bytes = text.getBytes("UTF-8");
+      write(bytes, bytes.length);
+      write(LINE_SEPARATOR, LINE_SEPARATOR.length);
+   }
+
+
+   /**
+    * Write all output that has been collected to the channel.
+    * @throws IOException if writing fails
+    */
+   public void flush () throws IOException {
+      out.flip();
+      while (out.hasRemaining()) {
+         channel.write(out);
+      }
+      out.clear();
+   }
+
+
+
+   /**
+    * Handle '>', remove misplaced </review>, add CDATA after <text> and before </text>
+    * (same as EpinionsLineCleaner).
+    */
+   private void appendTagEnd () {
+      if (sinceReviewEnd >= 4 + REVIEW_END.length - 1
+            && endsWith(REVIEW_END, REVIEW_END.length - 1)) {
+         length -= REVIEW_END.length - 1;
+         sinceReviewEnd = 0;
+         return;
+      }
+
+      if (length + 1 + CDATA_START.length + CDATA_END.length > line.length) {
+         line = Arrays.copyOf(line, line.length * 2);
+      }
+      line[length++] = '>';
+      sinceReviewEnd += 1;
+
+      if (endsWith(TEXT_START, TEXT_START.length)) {
+         System.arraycopy(CDATA_START, 0, line, length, CDATA_START.length);
+         length += CDATA_START.length;
+         tagsFrom = length;
+      } else if (endsWith(TEXT_END, TEXT_END.length)) {
+         length -= TEXT_END.length;
+         System.arraycopy(CDATA_END, 0, line, length, CDATA_END.length);
+         length += CDATA_END.length;
+         System.arraycopy(TEXT_END, 0, line, length, TEXT_END.length);
+         length += TEXT_END.length;
+         tagsFrom = length;
+      }
+   }
+
+
+   private boolean endsWith (byte[] tag, int n) {
+      int start = length - n;
+      if (start < tagsFrom)
+         return false;
+      for (int i=0; i<n; i++) {
+         if (line[start+i] != tag[i])
+            return false;
+      }
+      return true;
+   }
+
+
+   /**
+    * Move the current line to the output, followed by a line break.
+    */
+   private void endLine () throws IOException {
+      write(line, length);
+      write(LINE_SEPARATOR, LINE_SEPARATOR.length);
+      length = 0;
+      tagsFrom = 0;
+      sinceReviewEnd = 0;
+      pendingLine = false;
+   }
+
+
+   private void write (byte[] bytes, int n) throws IOException {
+      int written = 0;
+      while (written < n) {
+         if (!out.hasRemaining()) {
+            flush();
+         }
+         int chunk = Math.min(n - written, out.remaining());
+         out.put(bytes, written, chunk);
+         written += chunk;
+      }
+   }
+
+
+
+   /**
+    * Create the lookup table from the Windows-1250 decoder of the JDK.
+    * Bytes that are not defined in Windows-1250 are replaced as InputStreamReader does,
+    * control characters except whitespace (\t \n \x0B \f \r) are deleted.
+    */
+   private static byte[][] createTable () {
+      Charset utf8 = Charset.forName("UTF-8");
+      CharsetDecoder decoder = Charset.forName(EpinionsCleaner.INPUT_ENCODING).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      byte[][] table = new byte[256][];
+      for (int b=0; b<256; b++) {
+         char c;
+         try {
+            decoder.reset();
+            c = decoder.decode(ByteBuffer.wrap(new byte[] {(byte) b})).get();
+         } catch (CharacterCodingException e) {
+            // Not possible with REPLACE
+            c = decoder.replacement().charAt(0);
+         }
+         if (Character.getType(c) == Character.CONTROL && (c < 0x09 || c > 0x0D)) {
+            table[b] = new byte[0];
+         } else {
+            ByteBuffer encoded = utf8.encode(CharBuffer.wrap(new char[] {c}));
+            table[b] = Arrays.copyOf(encoded.array(), encoded.limit());
+         }
+      }
+      return table;
+   }
+
+
+   private static byte[] ascii (String s) {
+      byte[] bytes = new byte[s.length()];
+      for (int i=0; i<s.length(); i++) {
+         bytes[i] = (byte) s.charAt(i);
+      }
+      return bytes;
+   }
+
+}
@@ -6,15 +6,15 @@
 
 package de.uni_stuttgart.ims.comparatives.annotation.epinions;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Locale;
 
 
 /**
@@ -31,6 +31,19 @@ import java.io.UnsupportedEncodingException;
  */
 public class EpinionsCleaner {
    
+   /**
+    * Encoding of the original epinions file.
+    * Assume input encoding as Windows-1250 based on the occurrence of some 
+    * ' and " characters encoded as hex(92) hex(93).
+    */
+   public static final String INPUT_ENCODING = "Windows-1250";
+   
+   // Size of the parts of the file that are cleaned by one thread
+   private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+   
+   // Size of the input and output buffers
+   private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+   
    
    /**
     * Take the original epinions file provided by
@@ -45,6 +58,10 @@ public class EpinionsCleaner {
     * 
     * @author kesslewd
     * 
+    * Options (before the file names):
+    * --threads n: clean chunks of the file with n threads,
+    *    output is the same as with one thread (default: 1)
+    * 
     * @param args [1] input file name, [2] output file name
     *
     */
@@ -53,134 +70,152 @@ public class EpinionsCleaner {
 
       // ===== GET USER INPUT =====
       
-      if (args.length < 2) {
-         System.err.println("Usage: EpinionsCleaner <input file name> <output file name>");
+      int numberThreads = 1;
+      ArrayList<String> fileNames = new ArrayList<String>();
+      for (int i=0; i<args.length; i++) {
+         if (args[i].equals("--threads") && i+1 < args.length) {
+            i++;
+            try {
+               numberThreads = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+               numberThreads = 0;
+            }
+            if (numberThreads < 1) {
+               System.err.println("Error, number of threads must be a positive number: " + args[i]);
+               System.exit(1);
+            }
+         } else {
+            fileNames.add(args[i]);
+         }
+      }
+      
+      if (fileNames.size() < 2) {
+         System.err.println("Usage: EpinionsCleaner [--threads <n>] <input file name> <output file name>");
          System.exit(1);
       }
       
-      String inputFileName = args[0];
-      String outputFileName = args[1];
+      String inputFileName = fileNames.get(0);
+      String outputFileName = fileNames.get(1);
       System.out.println("Processing...");
+      long startTime = System.currentTimeMillis();
+
+      
+      
+      // === CLEAN WITH SEVERAL THREADS ===
+      if (numberThreads > 1) {
+         System.out.println("Clean with " + numberThreads + " threads");
+         try {
+            new ParallelEpinionsCleaner(numberThreads, CHUNK_SIZE).clean(inputFileName, outputFileName);
+         } catch (FileNotFoundException e) {
+            System.out.println("Error, file not found: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         } catch (IOException e) {
+            System.out.println("Error while cleaning input file: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         }
+         printTime(inputFileName, startTime);
+         System.out.println("...done.");
+         return;
+      }
 
       
       
       // === OPEN FILES ===
 
-      // Open input file (broken XML) and convert to UTF-8.
-      // Assume input encoding as Windows-1250 based on the occurrence of some 
-      // ' and " characters encoded as hex(92) hex(93).
-      BufferedReader inputReader = null;
+      // Open input file (broken XML in Windows-1250)
+      FileInputStream in = null;
       try {
-         FileInputStream in = new FileInputStream(inputFileName);
-         inputReader = new BufferedReader(new InputStreamReader(in, "Windows-1250"));
+         in = new FileInputStream(inputFileName);
       } catch (FileNotFoundException e) {
          System.out.println("Error, input file not found: " + e.getMessage());
          System.out.println("Abort.");
          return;
-      } catch (UnsupportedEncodingException e) {
-         System.out.println("Error, something is wrong with the encoding used: " + e.getMessage());
-         System.out.println("Abort.");
-         // Should never happen, 'Windows-1250' is known.
-         return;
       }
            
-      // Open output file (good XML)
-      BufferedWriter outputWriter = null;
+      // Open output file (good XML in UTF-8)
+      FileOutputStream out = null;
       try {
-         FileOutputStream out = new FileOutputStream(outputFileName);
-         outputWriter = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+         out = new FileOutputStream(outputFileName);
       } catch (IOException e) {
          System.out.println("Error when creating output file: " + e.getMessage());
          System.out.println("Abort.");
+         try {
+            in.close();
+         } catch (IOException e2) {
+         }
          return;
       }
       
       
 
-      // === ADD ROOT ELEMENT AND XML OPENING ===
-      
-      // Write XML opening to output file
-      writeLine(outputWriter, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-      
-      // Add opening <products> tag (original file contains no root element)
-      writeLine(outputWriter, "<products>");
-           
-      
-      
       // === COPY CONTENT ===
+      // Convert to UTF-8 and clean on bytes (see EpinionsByteCleaner):
+      // Add XML opening and root element,
+      // delete control bytes that would kill the XML reader,
+      // remove misplaced tags (unmotivated closing tag </review> after an opening tag </text>),
+      // add <![CDATA[ and ]]> around the entries in element <text> because content is HTML
       try {
-         String strLine = inputReader.readLine();
-         while (strLine != null) {
-            
-            // Delete control bytes that would kill the XML reader.
-            // \p{Cc} are all control characters, including line breaks and tabs.
-            // Line breaks and tabs should be kept, so take the intersection of
-            // the complement of the whitespace category with the controls.
-            strLine = strLine.replaceAll("[\\p{Cc}&&[^\\p{Space}]]", "");
-            
-            // Remove misplaced tags (unmotivated closing tag </review> after an opening tag </text>)
-            // Ordinary </review> tags always occur on a line by themselves,
-            // so just delete all others.
-            strLine = strLine.replaceAll("(.{4})</review>", "$1");
-            
-          
-            // Add <![CDATA[ and ]]> around the entries in element <text> because content is HTML
-            strLine = strLine.replaceAll("<text>", "<text><![CDATA[");
-            strLine = strLine.replaceAll("</text>", "]]></text>");
-
-            // Write line to output
-            writeLine(outputWriter, strLine);
-
-            // Get next line
-            strLine = inputReader.readLine();
-         }
-
+         clean(in.getChannel(), out.getChannel());
       } catch (IOException e) {
-         System.out.println("Error while reading input file: " + e.getMessage());
+         System.out.println("Error while cleaning input file: " + e.getMessage());
          System.out.println("Abort.");
       }
       
       
-
-      // === ADD CLOSING TAG FOR ROOT ELEMENT ===
-      writeLine(outputWriter, "</products>");
-      
-      
       
       // === CLEANUP ===
-      System.out.println("...done.");
       try {
-         inputReader.close();
+         in.close();
       } catch (IOException e) {
       }
       try {
-         outputWriter.close();
+         out.close();
       } catch (IOException e) {
       }
+      printTime(inputFileName, startTime);
+      System.out.println("...done.");
       
    }
 
-   
-   
+
    /**
-    * Write a line to the file writer that is given.
-    * @param out file to write to
-    * @param line String to write (linebreak will be added at the end)
+    * Clean the whole input with one thread (see main()).
+    * @param inputChannel original epinions file
+    * @param outputChannel cleaned XML file
+    * @throws IOException if reading or writing fails
     */
-   private static void writeLine (BufferedWriter out, String line) {
-      // Do nothing if the writer is null
-      if (out == null)
-         return;
-      
-      // Otherwise write line + an empty line
-      try {
-         out.write(line);
-         out.newLine();
-      } catch (IOException e) {
-         System.out.println("Error when writing to output file: " + e.getMessage());
+   public static void clean (FileChannel inputChannel, FileChannel outputChannel) throws IOException {
+      EpinionsByteCleaner cleaner = new EpinionsByteCleaner(outputChannel, 
+            ByteBuffer.allocateDirect(BUFFER_SIZE));
+      cleaner.writeLine(EpinionsCleaningReader.XML_OPENING);
+      cleaner.writeLine(EpinionsCleaningReader.ROOT_START);
+      
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      while (inputChannel.read(buffer) != -1) {
+         buffer.flip();
+         cleaner.clean(buffer);
+         buffer.clear();
       }
+      cleaner.finish();
+      
+      cleaner.writeLine(EpinionsCleaningReader.ROOT_END);
+      cleaner.flush();
+   }
+
+
+   /**
+    * Print time and throughput since start time.
+    * @param inputFileName file that has been processed
+    * @param startTime in milliseconds
+    */
+   private static void printTime (String inputFileName, long startTime) {
+      long time = Math.max(1, System.currentTimeMillis() - startTime);
+      double megabytes = new File(inputFileName).length() / (1024.0 * 1024.0);
+      System.out.println(String.format(Locale.ENGLISH, "Cleaned %.1f MB in %.2f s (%.1f MB/s)", 
+            megabytes, time / 1000.0, megabytes * 1000.0 / time));
    }
-   
 
 
 }
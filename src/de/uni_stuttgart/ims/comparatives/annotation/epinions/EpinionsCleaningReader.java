@@ -0,0 +1,156 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+
+/**
+ * Reader that cleans the original epinions file while it is read
+ * (see EpinionsLineCleaner).
+ *
+ * Produces exactly the content of the file that is written by EpinionsCleaner,
+ * so the original file can be given directly to the XML reader
+ * without writing the cleaned file first.
+ *
+ * Lines are separated as in BufferedReader.readLine() (\n, \r or \r\n),
+ * in the output each line is followed by the platform line break.
+ * Only complete lines are cleaned, so memory is bounded by the longest line.
+ */
+public class EpinionsCleaningReader extends Reader {
+
+   static final String LINE_SEPARATOR = System.getProperty("line.separator");
+   private static final char[] LINE_SEPARATOR_CHARS = LINE_SEPARATOR.toCharArray();
+
+   // XML opening and root element (original file contains no root element)
+   static final String XML_OPENING = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+   static final String ROOT_START = "<products>";
+   static final String ROOT_END = "</products>";
+
+   private Reader in;
+   private boolean addRootElement;
+   private EpinionsLineCleaner cleaner = new EpinionsLineCleaner();
+
+   // Input that has been read, but not cleaned yet
+   private char[] inBuffer = new char[65536];
+
+   // Cleaned lines that have not been returned yet
+   private char[] outBuffer = new char[65536];
+   private int outPos = 0;
+   private int outLimit = 0;
+
+   private boolean pendingLine = false; // characters after the last line break
+   private boolean skipLF = false; // \n after \r
+   private boolean endOfInput = false;
+
+
+   /**
+    * Clean the content of the given reader.
+    * @param in original epinions file (already decoded)
+    * @param addRootElement if true, add the XML opening and the root element
+    *    around the content as EpinionsCleaner does, if false only clean
+    *    the lines (for parts of the file)
+    */
+   public EpinionsCleaningReader (Reader in, boolean addRootElement) {
+      super(in);
+      this.in = in;
+      this.addRootElement = addRootElement;
+      if (addRootElement) {
+         appendLine(XML_OPENING);
+         appendLine(ROOT_START);
+      }
+   }
+
+
+   @Override
+   public int read (char[] cbuf, int off, int len) throws IOException {
+      if (len == 0)
+         return 0;
+      if (outPos == outLimit) {
+         fill();
+         if (outPos == outLimit)
+            return -1;
+      }
+      int n = Math.min(len, outLimit - outPos);
+      System.arraycopy(outBuffer, outPos, cbuf, off, n);
+      outPos += n;
+      return n;
+   }
+
+
+   @Override
+   public void close () throws IOException {
+      in.close();
+   }
+
+
+   /**
+    * Read input until at least one complete line has been cleaned
+    * or the input has ended.
+    */
+   private void fill () throws IOException {
+      outPos = 0;
+      outLimit = 0;
+      while (outLimit == 0 && !endOfInput) {
+         int read = in.read(inBuffer);
+         if (read == -1) {
+            endOfInput = true;
+            // Last line without line break
+            if (pendingLine) {
+               appendCleanedLine();
+            }
+            if (addRootElement) {
+               appendLine(ROOT_END);
+            }
+            return;
+         }
+         for (int i=0; i<read; i++) {
+            char c = inBuffer[i];
+            if (skipLF) {
+               skipLF = false;
+               if (c == '\n')
+                  continue;
+            }
+            if (c == '\n' || c == '\r') {
+               appendCleanedLine();
+               skipLF = (c == '\r');
+            } else {
+               cleaner.append(c);
+               pendingLine = true;
+            }
+         }
+      }
+   }
+
+
+   /**
+    * Move the line from the cleaner to the output, followed by a line break.
+    */
+   private void appendCleanedLine () {
+      append(cleaner.getBuffer(), cleaner.getLength());
+      append(LINE_SEPARATOR_CHARS, LINE_SEPARATOR_CHARS.length);
+      cleaner.clear();
+      pendingLine = false;
+   }
+
+
+   private void appendLine (String line) {
+      append(line.toCharArray(), line.length());
+      append(LINE_SEPARATOR_CHARS, LINE_SEPARATOR_CHARS.length);
+   }
+
+
+   private void append (char[] chars, int length) {
+      if (outLimit + length > outBuffer.length) {
+         outBuffer = Arrays.copyOf(outBuffer, Math.max(outBuffer.length * 2, outLimit + length));
+      }
+      System.arraycopy(chars, 0, outBuffer, outLimit, length);
+      outLimit += length;
+   }
+
+}
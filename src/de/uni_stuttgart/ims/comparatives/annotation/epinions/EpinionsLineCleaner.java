@@ -0,0 +1,182 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.util.Arrays;
+
+
+/**
+ * Clean one line of the original epinions file in a single pass
+ * over its characters.
+ *
+ * Gives the same result as applying these steps to the line one after the other:
+ * - delete control characters except whitespace (tab, vertical tab, form feed)
+ * - delete misplaced closing tags </review>, i.e., all that have at least
+ *    4 characters before them (ordinary </review> tags always occur
+ *    on a line by themselves)
+ * - add <![CDATA[ after <text> because the content is HTML
+ * - add ]]> before </text>
+ *
+ * The characters are given one at a time with append(),
+ * the cleaned line is collected in a buffer that is reused for all lines.
+ * Call clear() before starting a new line.
+ */
+public class EpinionsLineCleaner {
+
+   private static final char[] REVIEW_END = "</review>".toCharArray();
+   private static final char[] TEXT_START = "<text>".toCharArray();
+   private static final char[] TEXT_END = "</text>".toCharArray();
+   private static final char[] CDATA_START = "<![CDATA[".toCharArray();
+   private static final char[] CDATA_END = "]]>".toCharArray();
+
+   // Cleaned line
+   private char[] out = new char[1024];
+   private int length = 0;
+
+   // Start of the characters in 'out' that are part of the line and have not been
+   // inserted, only tags that start here or later are considered.
+   private int tagsFrom = 0;
+
+   // Characters of the line since the last deleted </review> (or line start).
+   private int sinceReviewEnd = 0;
+
+
+   /**
+    * Start a new line.
+    */
+   public void clear () {
+      length = 0;
+      tagsFrom = 0;
+      sinceReviewEnd = 0;
+   }
+
+
+   /**
+    * Add the next character of the line.
+    * @param c
+    */
+   public void append (char c) {
+
+      // Delete control bytes that would kill the XML reader.
+      // Same as [\p{Cc}&&[^\p{Space}]], i.e., keep \t \n \x0B \f \r.
+      if ((c < 0x20 && (c < 0x09 || c > 0x0D)) || (c >= 0x7F && c <= 0x9F))
+         return;
+
+      // '.' in a regular expression does not match line separators
+      if (c == 0x2028 || c == 0x2029) {
+         sinceReviewEnd = -1;
+      }
+
+      // Only a '>' can complete one of the tags
+      if (c == '>') {
+
+         // Remove misplaced </review>:
+         // the tag is already in the buffer except for the '>'
+         if (sinceReviewEnd >= 4 + REVIEW_END.length - 1
+               && endsWith(REVIEW_END, REVIEW_END.length - 1)) {
+            length -= REVIEW_END.length - 1;
+            sinceReviewEnd = 0;
+            return;
+         }
+
+         put(c);
+         sinceReviewEnd += 1;
+
+         // Add CDATA after <text> and before </text>
+         if (endsWith(TEXT_START, TEXT_START.length)) {
+            put(CDATA_START, 0, CDATA_START.length);
+            tagsFrom = length;
+         } else if (endsWith(TEXT_END, TEXT_END.length)) {
+            length -= TEXT_END.length;
+            put(CDATA_END, 0, CDATA_END.length);
+            put(TEXT_END, 0, TEXT_END.length);
+            tagsFrom = length;
+         }
+         return;
+      }
+
+      put(c);
+      sinceReviewEnd += 1;
+   }
+
+
+   /**
+    * Add characters of the line.
+    * @param chars
+    * @param start first character to add
+    * @param end one after the last character to add
+    */
+   public void append (char[] chars, int start, int end) {
+      for (int i=start; i<end; i++) {
+         append(chars[i]);
+      }
+   }
+
+
+   /**
+    * Buffer with the cleaned line, valid from 0 to getLength().
+    * Will be overwritten with the next line.
+    */
+   public char[] getBuffer () {
+      return out;
+   }
+
+
+   /**
+    * Length of the cleaned line.
+    */
+   public int getLength () {
+      return length;
+   }
+
+
+   /**
+    * Clean a line.
+    * @param line without line break
+    * @return cleaned line
+    */
+   public String cleanLine (String line) {
+      clear();
+      for (int i=0; i<line.length(); i++) {
+         append(line.charAt(i));
+      }
+      return new String(out, 0, length);
+   }
+
+
+
+   /**
+    * Check if the buffer ends with the first n characters of the tag,
+    * not counting inserted characters.
+    */
+   private boolean endsWith (char[] tag, int n) {
+      int start = length - n;
+      if (start < tagsFrom)
+         return false;
+      for (int i=0; i<n; i++) {
+         if (out[start+i] != tag[i])
+            return false;
+      }
+      return true;
+   }
+
+
+   private void put (char c) {
+      if (length == out.length) {
+         out = Arrays.copyOf(out, out.length * 2);
+      }
+      out[length] = c;
+      length += 1;
+   }
+
+
+   private void put (char[] chars, int start, int end) {
+      for (int i=start; i<end; i++) {
+         put(chars[i]);
+      }
+   }
+
+}
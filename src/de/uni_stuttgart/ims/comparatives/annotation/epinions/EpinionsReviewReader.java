@@ -0,0 +1,355 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+/**
+ * Read the reviews of an epinions XML file one by one with a pull parser
+ * (StAX), as an alternative to EpinionsReviewHandler (SAX).
+ *
+ * The reviews are read lazily, only one review is kept in memory
+ * (or one batch per thread when splitting a stream, see spliterator()).
+ * For each review, all fields are read: id, title, date, feature ranks,
+ * pros, cons and text. Id and text are the same as read by
+ * EpinionsReviewHandler (characters that are only whitespace are left out).
+ *
+ * Element names are compared exactly (XML is case-sensitive).
+ * The names are constants, and the JDK parser gives interned names,
+ * so a comparison is usually decided by the identity check.
+ *
+ * Errors while reading are thrown as IllegalStateException
+ * with the XMLStreamException as cause (Iterator cannot throw
+ * checked exceptions).
+ *
+ * Not thread-safe. Streams (see stream()) can be processed in parallel,
+ * the input is still read by one thread at a time.
+ */
+public class EpinionsReviewReader implements Iterator<Review>, Closeable {
+
+   private static final String REVIEW = "review";
+   private static final String ID = "id";
+   private static final String TITLE = "title";
+   private static final String DATE = "date";
+   private static final String FEATURE = "feature";
+   private static final String RANK = "rank";
+   private static final String PRO = "pro";
+   private static final String CON = "con";
+   private static final String TEXT = "text";
+
+   // Reviews handed out at once when a stream is split
+   private static final int BATCH_SIZE = 256;
+
+   private XMLStreamReader xml;
+   private ReviewIgnoreIndex ignoreIndex = null;
+
+   // Next review, read by hasNext()
+   private Review next = null;
+   private int numberReviews = 0;
+   private int numberReviewsIgnored = 0;
+
+   // Reused for all reviews
+   private StringBuilder buffer = new StringBuilder(4096);
+   private ArrayList<String> features = new ArrayList<String>();
+   private ArrayList<String> ranks = new ArrayList<String>();
+   private ArrayList<String> pros = new ArrayList<String>();
+   private ArrayList<String> cons = new ArrayList<String>();
+
+
+   /**
+    * @param reader XML input, e.g., the file written by EpinionsCleaner
+    *    or an EpinionsCleaningReader
+    * @throws XMLStreamException if the parser cannot be created
+    */
+   public EpinionsReviewReader (Reader reader) throws XMLStreamException {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      xml = factory.createXMLStreamReader(reader);
+   }
+
+
+   /**
+    * Skip the reviews with these ids (their text is not collected).
+    * @param ignoreIndex
+    */
+   public void setIgnoreIndex (ReviewIgnoreIndex ignoreIndex) {
+      this.ignoreIndex = ignoreIndex;
+   }
+
+
+   /**
+    * Number of reviews returned so far.
+    */
+   public int getNumberReviews () {
+      return numberReviews;
+   }
+
+
+   /**
+    * Number of reviews skipped so far (see setIgnoreIndex()).
+    */
+   public int getNumberReviewsIgnored () {
+      return numberReviewsIgnored;
+   }
+
+
+
+   // Iterator
+
+
+   public boolean hasNext () {
+      if (next == null) {
+         try {
+            next = readNext();
+         } catch (XMLStreamException e) {
+            throw new IllegalStateException("Error while reading XML: " + e.getMessage(), e);
+         }
+      }
+      return next != null;
+   }
+
+
+   public Review next () {
+      if (!hasNext())
+         throw new NoSuchElementException();
+      Review review = next;
+      next = null;
+      numberReviews += 1;
+      return review;
+   }
+
+
+   public void remove () {
+      throw new UnsupportedOperationException();
+   }
+
+
+   /**
+    * Reviews as a Spliterator that can be split for parallel processing.
+    * Each split takes the next BATCH_SIZE reviews from the input, so the
+    * reviews are read in order and only a few batches are in memory.
+    * The Spliterator is ORDERED: a parallel stream keeps the order
+    * of the input if asked for (e.g., forEachOrdered()).
+    */
+   public Spliterator<Review> spliterator () {
+      return new ReviewSpliterator();
+   }
+
+
+   /**
+    * Reviews as a sequential Stream, use parallel() to process
+    * them with several threads.
+    */
+   public Stream<Review> stream () {
+      return StreamSupport.stream(spliterator(), false);
+   }
+
+
+   public void close () throws IOException {
+      try {
+         xml.close();
+      } catch (XMLStreamException e) {
+         throw new IOException(e.getMessage(), e);
+      }
+   }
+
+
+
+   // Parsing
+
+
+   /**
+    * Read until the end of the next review that is not ignored.
+    * @return review, null at the end of the document
+    */
+   private Review readNext () throws XMLStreamException {
+      while (xml.hasNext()) {
+         if (xml.next() == XMLStreamConstants.START_ELEMENT && REVIEW.equals(xml.getLocalName())) {
+            Review review = readReview();
+            if (review != null)
+               return review;
+         }
+      }
+      return null;
+   }
+
+
+   /**
+    * Read one review, the parser is at its start element.
+    * @return review, null if ignored
+    */
+   private Review readReview () throws XMLStreamException {
+      String id = "";
+      String title = null;
+      String date = null;
+      String text = "";
+      features.clear();
+      ranks.clear();
+      pros.clear();
+      cons.clear();
+
+      while (xml.hasNext()) {
+         int event = xml.next();
+         if (event == XMLStreamConstants.START_ELEMENT) {
+            String name = xml.getLocalName();
+            if (ID.equals(name)) {
+               id = readContent(true);
+               if (ignoreIndex != null && ignoreIndex.contains(id)) {
+                  skipReview();
+                  numberReviewsIgnored += 1;
+                  return null;
+               }
+            } else if (TEXT.equals(name)) {
+               text = readContent(true);
+            } else if (TITLE.equals(name)) {
+               title = readContent(false);
+            } else if (DATE.equals(name)) {
+               date = readContent(false);
+            } else if (FEATURE.equals(name)) {
+               features.add(readContent(false));
+            } else if (RANK.equals(name)) {
+               ranks.add(readContent(false));
+            } else if (PRO.equals(name)) {
+               pros.add(readContent(false));
+            } else if (CON.equals(name)) {
+               cons.add(readContent(false));
+            }
+         } else if (event == XMLStreamConstants.END_ELEMENT && REVIEW.equals(xml.getLocalName())) {
+            break;
+         }
+      }
+
+      Review review = new Review(id, text);
+      review.title = title;
+      review.date = date;
+      review.features = features.toArray(new String[features.size()]);
+      review.ranks = new float[review.features.length];
+      for (int i=0; i<review.ranks.length; i++) {
+         review.ranks[i] = (i < ranks.size()) ? parseRank(ranks.get(i)) : Float.NaN;
+      }
+      review.pros = pros.toArray(new String[pros.size()]);
+      review.cons = cons.toArray(new String[cons.size()]);
+      return review;
+   }
+
+
+   /**
+    * Read the characters up to the end of the current element
+    * (also those of elements inside it).
+    * @param asHandler leave out characters that are only whitespace
+    *    (as EpinionsReviewHandler), otherwise remove whitespace at both ends
+    */
+   private String readContent (boolean asHandler) throws XMLStreamException {
+      buffer.setLength(0);
+      int depth = 1;
+      while (depth > 0) {
+         int event = xml.next();
+         if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+               || event == XMLStreamConstants.SPACE) {
+            if (!asHandler || !isWhitespace(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength())) {
+               buffer.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+            }
+         } else if (event == XMLStreamConstants.START_ELEMENT) {
+            depth += 1;
+         } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth -= 1;
+         }
+      }
+      return asHandler ? buffer.toString() : buffer.toString().trim();
+   }
+
+
+   /**
+    * Skip to the end of the current review.
+    */
+   private void skipReview () throws XMLStreamException {
+      int depth = 1;
+      while (depth > 0) {
+         int event = xml.next();
+         if (event == XMLStreamConstants.START_ELEMENT) {
+            depth += 1;
+         } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth -= 1;
+         }
+      }
+   }
+
+
+   /**
+    * Check if the characters are all whitespace or control characters
+    * (same definition as String.trim()).
+    */
+   private static boolean isWhitespace (char ch[], int start, int length) {
+      for (int i=start; i<start+length; i++) {
+         if (ch[i] > ' ')
+            return false;
+      }
+      return true;
+   }
+
+
+   /**
+    * Value of a rank, NaN if it is not a number.
+    */
+   static float parseRank (String rank) {
+      try {
+         return Float.parseFloat(rank);
+      } catch (NumberFormatException e) {
+         return Float.NaN;
+      }
+   }
+
+
+
+   /**
+    * Spliterator over the reviews that splits off batches of reviews.
+    */
+   private class ReviewSpliterator implements Spliterator<Review> {
+
+      public boolean tryAdvance (Consumer<? super Review> action) {
+         if (!hasNext())
+            return false;
+         action.accept(next());
+         return true;
+      }
+
+      public Spliterator<Review> trySplit () {
+         Review[] batch = new Review[BATCH_SIZE];
+         int n = 0;
+         while (n < batch.length && hasNext()) {
+            batch[n++] = next();
+         }
+         if (n == 0)
+            return null;
+         return Spliterators.spliterator(batch, 0, n, characteristics());
+      }
+
+      public long estimateSize () {
+         return Long.MAX_VALUE;
+      }
+
+      public int characteristics () {
+         return Spliterator.ORDERED | Spliterator.NONNULL;
+      }
+   }
+
+}
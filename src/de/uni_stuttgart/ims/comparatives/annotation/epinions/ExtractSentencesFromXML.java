@@ -7,27 +7,35 @@
 
 package de.uni_stuttgart.ims.comparatives.annotation.epinions;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import de.uni_stuttgart.ims.comparatives.nlp.CachingSentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.CueMatcher;
+import de.uni_stuttgart.ims.comparatives.nlp.HtmlStripper;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
 import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
-import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterStanford;
-import de.uni_stuttgart.ims.comparatives.nlp.TextSpan;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterFactory;
+import de.uni_stuttgart.ims.comparatives.nlp.SplitCache;
 
 
 /**
@@ -39,6 +47,9 @@ import de.uni_stuttgart.ims.comparatives.nlp.TextSpan;
  */
 public class ExtractSentencesFromXML {
    
+   // Size of the chunks read by one thread with --parallel-parse
+   private static final int PARSE_CHUNK_SIZE = 4 * 1024 * 1024;
+   
 
    /**
     * 
@@ -48,7 +59,7 @@ public class ExtractSentencesFromXML {
     * Two input files:
     * - xmlEpinionsFile: Reviews in XML format
     * - idIgnoreFile: review ids that should be ignored
-    *    Format: 1 id per line
+    *    Format: 1 id or range of ids "from-to" per line
     * 
     * Two output files:
     * - outputSentences: sentences as split by sentence splitter, tokenized
@@ -56,6 +67,68 @@ public class ExtractSentencesFromXML {
     * - outputTexts: complete text of all reviews, one sentence per line, separated by empty lines    * 
     *    Format: id \n sentence tokenized, one sentence per line\n \n
     *   
+    * Options (before the file names):
+    * --threads n: split reviews with n worker threads,
+    *    output is the same as with one thread (default: 1)
+    * --virtual: split each review on a thread of its own (virtual threads
+    *    if the JVM has them), only --threads reviews are split at the same
+    *    time (default with --virtual: number of cores), the output is the same,
+    *    cannot be combined with --parallel-parse
+    * --ignore file: additional file with review ids to be ignored,
+    *    may be given several times
+    * --raw: the input file is the original epinions file, it is cleaned
+    *    while reading (see EpinionsCleaner), no cleaned copy is written
+    * --splitter name: sentence splitter, 'stanford' (default) or 'rules'
+    *    (fast, but not exactly the same sentences and tokens as Stanford)
+    * --stax: read the XML with a pull parser (see EpinionsReviewReader)
+    *    instead of SAX, the output is the same,
+    *    cannot be combined with --checkpoint and --resume
+    * --parallel-parse: cut the cleaned input file into chunks at review ends
+    *    and read and split each chunk with its own parser on one of the
+    *    --threads threads (see ParallelReviewParser), the output is the same,
+    *    cannot be combined with --raw, --stax, --checkpoint and --resume
+    * --checkpoint n: every n reviews, save the state of the run
+    *    to the file <output sentences file name>.checkpoint
+    *    (removed when the input has been read completely)
+    * --resume: continue after the last checkpoint, i.e., cut the output files
+    *    to their length at the checkpoint and skip the input up to it,
+    *    the output is the same as without interruption.
+    *    Starts from the beginning if there is no checkpoint.
+    * --incremental: keep an index of the reviews in the output
+    *    (<output sentences file name>.index), in the next run with this option
+    *    copy the output of unchanged reviews instead of splitting them again
+    *    (see PreviousOutput), the output is the same as without this option.
+    *    Cannot be combined with --resume.
+    * --binary file: also write the sentences to a binary corpus file
+    *    with random access to reviews and sentences (see BinaryCorpus),
+    *    cannot be combined with --checkpoint, --resume and --incremental
+    * --fields file: also write title, date, feature ranks, pros and cons
+    *    of all reviews to a columnar file (see ReviewFields),
+    *    cannot be combined with --checkpoint and --resume
+    * --cues file: find comparative cues from this lexicon in each sentence
+    *    (see CueMatcher), the cues are added as third column
+    *    to the sentences file
+    * --candidates file: write the sentences with cues to this file
+    *    (with the cues as third column), the sentences file is not changed
+    *    (--cues cannot be combined with --checkpoint, --resume and --incremental)
+    * --buffer kb: size of the output buffers in kilobytes (default 1024)
+    * --gzip: compress the output files with gzip (.gz is added to the names)
+    * --shards n: write the output to n files per output file,
+    *    the shard of a review is given by its id (see ShardedOutput)
+    * --shard-sentences n: write the output to several files per output file,
+    *    a new file is started after n sentences
+    *    (--gzip and sharding cannot be combined with --checkpoint, --resume
+    *    and --incremental)
+    * --cache mb: remember the sentences of texts that have been split,
+    *    up to mb megabytes in memory (see CachingSentenceSplitter)
+    * --cache-file file: also keep the sentences in this file,
+    *    to be used in later runs with the same splitter
+    *    (with --cache-file, --cache defaults to 64 MB)
+    * --metrics s: print throughput, queue and heap to stderr every s seconds
+    *    and the time of each stage (parse, strip, split, write) at the end
+    *    (see ExtractionMetrics)
+    * --metrics-json file: write the metrics as JSON to this file at the end
+    *   
     * @author kesslewd
     * 
     * @param args [1] XML input file name, 
@@ -68,80 +141,365 @@ public class ExtractSentencesFromXML {
       
       // ===== GET USER INPUT =====
       
-      if (args.length < 3) {
-         System.err.println("Usage: ExtractSentencesFromXML <input XML file name>" +
+      // 0: not given, see below
+      int numberThreads = 0;
+      boolean virtualThreads = false;
+      ArrayList<String> ignoreFiles = new ArrayList<String>();
+      boolean rawInput = false;
+      String splitterName = SentenceSplitterFactory.STANFORD;
+      boolean stax = false;
+      boolean parallelParse = false;
+      int checkpointInterval = 0;
+      boolean resume = false;
+      boolean incremental = false;
+      String binaryFile = null;
+      String fieldsFile = null;
+      String cuesFile = null;
+      String candidatesFile = null;
+      int bufferKilobytes = 1024;
+      boolean gzip = false;
+      int numberShards = 0;
+      int sentencesPerShard = 0;
+      int cacheMegabytes = 0;
+      String cacheFile = null;
+      int metricsInterval = 0;
+      String metricsFile = null;
+      ArrayList<String> fileNames = new ArrayList<String>();
+      for (int i=0; i<args.length; i++) {
+         if (args[i].equals("--threads") && i+1 < args.length) {
+            i++;
+            try {
+               numberThreads = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+               numberThreads = 0;
+            }
+            if (numberThreads < 1) {
+               System.err.println("Error, number of threads must be a positive number: " + args[i]);
+               System.exit(1);
+            }
+         } else if (args[i].equals("--virtual")) {
+            virtualThreads = true;
+         } else if (args[i].equals("--raw")) {
+            rawInput = true;
+         } else if (args[i].equals("--splitter") && i+1 < args.length) {
+            i++;
+            splitterName = args[i];
+            if (!Arrays.asList(SentenceSplitterFactory.NAMES).contains(splitterName)) {
+               System.err.println("Error, unknown sentence splitter: " + splitterName 
+                     + ", use one of " + Arrays.toString(SentenceSplitterFactory.NAMES));
+               System.exit(1);
+            }
+         } else if (args[i].equals("--stax")) {
+            stax = true;
+         } else if (args[i].equals("--parallel-parse")) {
+            parallelParse = true;
+         } else if (args[i].equals("--checkpoint") && i+1 < args.length) {
+            i++;
+            try {
+               checkpointInterval = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+               checkpointInterval = 0;
+            }
+            if (checkpointInterval < 1) {
+               System.err.println("Error, checkpoint interval must be a positive number: " + args[i]);
+               System.exit(1);
+            }
+         } else if (args[i].equals("--resume")) {
+            resume = true;
+         } else if (args[i].equals("--incremental")) {
+            incremental = true;
+         } else if (args[i].equals("--binary") && i+1 < args.length) {
+            i++;
+            binaryFile = args[i];
+         } else if (args[i].equals("--fields") && i+1 < args.length) {
+            i++;
+            fieldsFile = args[i];
+         } else if (args[i].equals("--cues") && i+1 < args.length) {
+            i++;
+            cuesFile = args[i];
+         } else if (args[i].equals("--candidates") && i+1 < args.length) {
+            i++;
+            candidatesFile = args[i];
+         } else if (args[i].equals("--buffer") && i+1 < args.length) {
+            i++;
+            bufferKilobytes = parsePositive(args[i], "buffer size");
+         } else if (args[i].equals("--gzip")) {
+            gzip = true;
+         } else if (args[i].equals("--shards") && i+1 < args.length) {
+            i++;
+            numberShards = parsePositive(args[i], "number of shards");
+         } else if (args[i].equals("--shard-sentences") && i+1 < args.length) {
+            i++;
+            sentencesPerShard = parsePositive(args[i], "number of sentences per shard");
+         } else if (args[i].equals("--cache") && i+1 < args.length) {
+            i++;
+            try {
+               cacheMegabytes = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+               cacheMegabytes = 0;
+            }
+            if (cacheMegabytes < 1) {
+               System.err.println("Error, cache size must be a positive number: " + args[i]);
+               System.exit(1);
+            }
+         } else if (args[i].equals("--cache-file") && i+1 < args.length) {
+            i++;
+            cacheFile = args[i];
+         } else if (args[i].equals("--metrics") && i+1 < args.length) {
+            i++;
+            metricsInterval = parsePositive(args[i], "metrics interval");
+         } else if (args[i].equals("--metrics-json") && i+1 < args.length) {
+            i++;
+            metricsFile = args[i];
+         } else if (args[i].equals("--ignore") && i+1 < args.length) {
+            i++;
+            ignoreFiles.add(args[i]);
+         } else {
+            fileNames.add(args[i]);
+         }
+      }
+      
+      if (stax && (checkpointInterval > 0 || resume)) {
+         System.err.println("Error, --stax cannot be combined with --checkpoint and --resume");
+         System.exit(1);
+      }
+      if (parallelParse && (rawInput || stax || checkpointInterval > 0 || resume)) {
+         System.err.println("Error, --parallel-parse cannot be combined with --raw, --stax, --checkpoint and --resume");
+         System.exit(1);
+      }
+      if (virtualThreads && parallelParse) {
+         System.err.println("Error, --virtual cannot be combined with --parallel-parse");
+         System.exit(1);
+      }
+      if (numberThreads == 0) {
+         numberThreads = virtualThreads ? Runtime.getRuntime().availableProcessors() : 1;
+      }
+      if (resume && incremental) {
+         System.err.println("Error, --resume and --incremental cannot be combined");
+         System.exit(1);
+      }
+      if (binaryFile != null && (checkpointInterval > 0 || resume || incremental)) {
+         System.err.println("Error, --binary cannot be combined with --checkpoint, --resume and --incremental");
+         System.exit(1);
+      }
+      if (fieldsFile != null && (checkpointInterval > 0 || resume)) {
+         System.err.println("Error, --fields cannot be combined with --checkpoint and --resume");
+         System.exit(1);
+      }
+      if (cuesFile != null && (checkpointInterval > 0 || resume || incremental)) {
+         System.err.println("Error, --cues cannot be combined with --checkpoint, --resume and --incremental");
+         System.exit(1);
+      }
+      if (candidatesFile != null && cuesFile == null) {
+         System.err.println("Error, --candidates needs --cues");
+         System.exit(1);
+      }
+      if ((gzip || numberShards > 0 || sentencesPerShard > 0) && (checkpointInterval > 0 || resume || incremental)) {
+         System.err.println("Error, --gzip and sharding cannot be combined with --checkpoint, --resume and --incremental");
+         System.exit(1);
+      }
+      if (numberShards > 0 && sentencesPerShard > 0) {
+         System.err.println("Error, --shards and --shard-sentences cannot be combined");
+         System.exit(1);
+      }
+      if (fileNames.size() < 3) {
+         System.err.println("Usage: ExtractSentencesFromXML [--threads <n>] [--virtual] [--ignore <file>]* [--raw] [--splitter <name>] [--stax] [--parallel-parse] " +
+               "[--checkpoint <n>] [--resume] [--incremental] [--binary <file>] [--fields <file>] " +
+               "[--cues <file> [--candidates <file>]] " +
+               "[--buffer <kb>] [--gzip] [--shards <n> | --shard-sentences <n>] [--cache <mb>] [--cache-file <file>] " +
+               "[--metrics <s>] [--metrics-json <file>] " +
+               "<input XML file name>" +
          		" <ignore ids file name> <output sentences file name> <output texts file name>");
          System.exit(1);
       }
       
       System.out.println("Processing...");
-      String xmlEpinionsFile = args[0];
-      String idIgnoreFile = args[1];
-      String outputSentences = args[2];
+      String xmlEpinionsFile = fileNames.get(0);
+      ignoreFiles.add(0, fileNames.get(1));
+      String outputSentences = fileNames.get(2);
       String outputTexts = null;
-      if (args.length > 3) {
-         outputTexts = args[3];
+      if (fileNames.size() > 3) {
+         outputTexts = fileNames.get(3);
       }
 
       
       
       // === GET REVIEWS TO IGNORE ===
-      ArrayList<String> ignoreList = new ArrayList<String>();
-
-      // Open input file
-      BufferedReader br = null;
-      try {
+      ReviewIgnoreIndex ignoreIndex = new ReviewIgnoreIndex();
+      for (String idIgnoreFile : ignoreFiles) {
+         try {
+            ignoreIndex.load(idIgnoreFile);
+         } catch (FileNotFoundException e) {
+            System.out.println("Error, file with ids to ignore not found: " + e.getMessage());
+            System.out.println("Ids from this file will not be ignored.");
+         } catch (IOException e) {
+            System.out.println("Error while reading file with ids to ignore: " + e.getMessage());
+            System.out.println("Ignore list might be incomplete.");
+         }
+      }
+      System.out.println("Ignore reviews with " + ignoreIndex);
 
-         FileInputStream in = new FileInputStream(idIgnoreFile);
-         br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
       
-         // Put the ids into the list
-         String strLine = "";
-         while (strLine != null) {
-            strLine = br.readLine();
-            if (strLine != null)
-               ignoreList.add(strLine.trim());
+      
+      // === RESUME ===
+      String checkpointFile = Checkpoint.getFileName(outputSentences);
+      Checkpoint checkpoint = null;
+      if (resume) {
+         try {
+            checkpoint = Checkpoint.load(checkpointFile);
+            if ((checkpoint.textsLength >= 0) != (outputTexts != null)) {
+               System.out.println("Error, checkpoint " + checkpointFile + " does not match the output files.");
+               System.out.println("Abort.");
+               return;
+            }
+            Checkpoint.truncate(outputSentences, checkpoint.sentencesLength);
+            if (outputTexts != null) {
+               Checkpoint.truncate(outputTexts, checkpoint.textsLength);
+            }
+            System.out.println("Resume after review " + checkpoint.lastReviewId 
+                  + " (" + (checkpoint.numberReviews + checkpoint.numberReviewsIgnored) + " reviews read)");
+         } catch (FileNotFoundException e) {
+            System.out.println("No checkpoint found in " + checkpointFile + ", start from the beginning.");
+         } catch (IOException e) {
+            System.out.println("Error when resuming from checkpoint: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
          }
-         br.close();
-         
-         System.out.println("Ignore reviews with ids: " + ignoreList);
-         
-      } catch (FileNotFoundException e) {
-         System.out.println("Error, file with ids to ignore not found: " + e.getMessage());
-         System.out.println("Ignore list will be set to empty list.");
-      } catch (IOException e) {
-         System.out.println("Error while reading file with ids to ignore: " + e.getMessage());
-         System.out.println("Ignore list might be incomplete.");
       }
-
+      boolean append = (checkpoint != null);
       
       
-      // === OPEN FILES ===
       
-      // Open output file (text)
+      // === INCREMENTAL ===
+      ReviewIndex reviewIndex = null;
+      PreviousOutput previousOutput = null;
+      // Previous output that can be copied from
+      PreviousOutput copyFrom = null;
+      if (incremental) {
+         reviewIndex = new ReviewIndex(splitterName, outputTexts != null);
+         try {
+            previousOutput = PreviousOutput.open(outputSentences, outputTexts);
+         } catch (IOException e) {
+            System.out.println("Error when opening output of the previous run: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         }
+         if (previousOutput == null) {
+            System.out.println("No previous output, split all reviews");
+         } else if (!previousOutput.getIndex().isCompatible(splitterName, outputTexts != null)) {
+            System.out.println("Previous output was written with other options, split all reviews");
+         } else {
+            System.out.println("Copy unchanged reviews from previous output (" 
+                  + previousOutput.getIndex().size() + " reviews)");
+            copyFrom = previousOutput;
+         }
+      }
+      
+      
+      
+      // === OPEN FILES ===
+      // UTF-8, written on a separate thread
+      OutputFiles outputFiles = new OutputFiles(bufferKilobytes * 1024, gzip);
       BufferedWriter outText = null;
-      if (outputTexts != null) {
-         System.out.println("Output texts to file " + outputTexts);
+      BufferedWriter outSentences = null;
+      ShardedOutput shards = null;
+      
+      if (numberShards > 0 || sentencesPerShard > 0) {
+         // Open output files (shards)
+         try {
+            if (numberShards > 0) {
+               shards = ShardedOutput.byReviewId(outputFiles, outputSentences, outputTexts, numberShards);
+               System.out.println("Output to " + numberShards + " shards by review id");
+            } else {
+               shards = ShardedOutput.bySentences(outputFiles, outputSentences, outputTexts, sentencesPerShard);
+               System.out.println("Output to shards of " + sentencesPerShard + " sentences");
+            }
+         } catch (IOException e) {
+            System.out.println("Error when creating output files: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         }
+         System.out.println("Output sentences to files " 
+               + outputFiles.getFileName(ShardedOutput.getShardFileName(outputSentences, 0)) + ", ...");
+         if (outputTexts != null) {
+            System.out.println("Output texts to files " 
+                  + outputFiles.getFileName(ShardedOutput.getShardFileName(outputTexts, 0)) + ", ...");
+         }
+      
+      } else {
+         // Open output file (text)
+         if (outputTexts != null) {
+            System.out.println("Output texts to file " + outputFiles.getFileName(outputTexts));
+            try {
+               outText = outputFiles.open(outputTexts, append);
+            } catch (IOException e) {
+               System.out.println("Error when creating output file for texts: " + e.getMessage());
+               System.out.println("Abort.");
+               return;
+            }
+         }
+   
+         // Open output file (sentences)
+         System.out.println("Output sentences to file " + outputFiles.getFileName(outputSentences));
          try {
-            FileWriter fstream1 = new FileWriter(outputTexts);
-            outText = new BufferedWriter(fstream1);
+            outSentences = outputFiles.open(outputSentences, append);
          } catch (IOException e) {
-            System.out.println("Error when creating output file for texts: " + e.getMessage());
+            System.out.println("Error when creating output file for sentences: " + e.getMessage());
             System.out.println("Abort.");
             return;
          }
       }
-
-      // Open output file (sentences)
-      BufferedWriter outSentences;
-      System.out.println("Output sentences to file " + outputSentences);
-      try {
-         FileWriter fstream1 = new FileWriter(outputSentences);
-         outSentences = new BufferedWriter(fstream1);
-      } catch (IOException e) {
-         System.out.println("Error when creating output file for sentences: " + e.getMessage());
-         System.out.println("Abort.");
-         return;
+      
+     
+      
+      // Open output file (binary corpus)
+      BinaryCorpusWriter outBinary = null;
+      if (binaryFile != null) {
+         System.out.println("Output binary corpus to file " + binaryFile);
+         try {
+            outBinary = new BinaryCorpusWriter(binaryFile);
+         } catch (IOException e) {
+            System.out.println("Error when creating binary corpus file: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         }
+      }
+      
+      // Open output file (review fields)
+      ReviewFieldsWriter outFields = null;
+      if (fieldsFile != null) {
+         System.out.println("Output review fields to file " + fieldsFile);
+         try {
+            outFields = new ReviewFieldsWriter(fieldsFile);
+         } catch (IOException e) {
+            System.out.println("Error when creating review fields file: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         }
+      }
+      
+      // Lexicon of comparative cues, output file of candidates
+      CueMatcher cueMatcher = null;
+      BufferedWriter outCandidates = null;
+      if (cuesFile != null) {
+         try {
+            cueMatcher = CueMatcher.load(cuesFile);
+         } catch (IOException e) {
+            System.out.println("Error when reading lexicon of comparative cues: " + e.getMessage());
+            System.out.println("Abort.");
+            return;
+         }
+         System.out.println("Find " + cueMatcher.getNumberCues() + " comparative cues from " + cuesFile);
+         if (candidatesFile != null) {
+            System.out.println("Output candidate sentences to file " + outputFiles.getFileName(candidatesFile));
+            try {
+               outCandidates = outputFiles.open(candidatesFile, false);
+            } catch (IOException e) {
+               System.out.println("Error when creating output file for candidates: " + e.getMessage());
+               System.out.println("Abort.");
+               return;
+            }
+         }
       }
       
      
@@ -158,16 +516,117 @@ public class ExtractSentencesFromXML {
       EpinionsReviewHandler handler = new EpinionsReviewHandler();
       handler.setOutputTexts(outText);
       handler.setOutputSentences(outSentences);
-      handler.setIdIgnoreList(ignoreList);
+      handler.setOutputBinary(outBinary);
+      handler.setOutputFields(outFields);
+      handler.setShardedOutput(shards);
+      handler.setCueMatcher(cueMatcher, outCandidates);
+      handler.setIgnoreIndex(ignoreIndex);
+      handler.setNumberThreads(numberThreads);
+      handler.setVirtualThreads(virtualThreads);
+      handler.setSentenceSplitter(splitterName);
+      if (incremental) {
+         handler.setIncremental(reviewIndex, copyFrom);
+      }
+      System.out.println("Split sentences with " + splitterName);
+      
+      // Cache for texts that have been split before
+      SplitCache splitCache = null;
+      if (cacheMegabytes > 0 || cacheFile != null) {
+         if (cacheMegabytes == 0) {
+            cacheMegabytes = 64;
+         }
+         splitCache = new SplitCache(cacheMegabytes * 1048576L);
+         if (cacheFile != null) {
+            try {
+               splitCache.openFile(cacheFile, splitterName);
+            } catch (IOException e) {
+               System.out.println("Error when opening split cache file: " + e.getMessage());
+               System.out.println("Abort.");
+               return;
+            }
+            System.out.println("Cache sentences in memory (" + cacheMegabytes + " MB) and in file " + cacheFile);
+         } else {
+            System.out.println("Cache sentences in memory (" + cacheMegabytes + " MB)");
+         }
+         handler.setSplitCache(splitCache);
+      }
+      if (virtualThreads) {
+         System.out.println("Split each review on its own thread with " + VirtualThreads.describe()
+               + ", " + numberThreads + " at the same time");
+      } else if (numberThreads > 1) {
+         System.out.println("Split reviews with " + numberThreads + " threads");
+      }
       xr.setContentHandler(handler);
       xr.setErrorHandler(handler);
       
       
       
       // === READ FILE ===
+      ExtractionMetrics metrics = null;
+      if (metricsInterval > 0 || metricsFile != null) {
+         metrics = new ExtractionMetrics();
+      }
+      boolean complete = false;
       try {
-         FileReader r2 = new FileReader(xmlEpinionsFile);
-         xr.parse(new InputSource(r2));
+         if (parallelParse) {
+            // Chunks of the file are read by worker threads
+            System.out.println("Read chunks of input file with " + numberThreads + " threads");
+            if (metrics != null) {
+               handler.setMetrics(metrics, null);
+               if (metricsInterval > 0) {
+                  metrics.start(metricsInterval);
+               }
+            }
+            handler.parseInChunks(xmlEpinionsFile, PARSE_CHUNK_SIZE);
+         } else {
+            // Start of input (after a checkpoint if resuming)
+            FileInputStream fileIn = new FileInputStream(xmlEpinionsFile);
+            long inputOffset = 0;
+            if (checkpoint != null) {
+               inputOffset = checkpoint.inputOffset;
+               fileIn.getChannel().position(inputOffset);
+            }
+            LineOffsetInputStream lineIn = new LineOffsetInputStream(fileIn);
+         
+            // Lines the XML reader sees before the input
+            int headerLines = 0;
+            Reader r2;
+            if (rawInput) {
+               // Clean original file while reading
+               System.out.println("Clean input file while reading");
+               InputStreamReader in = new InputStreamReader(lineIn, EpinionsCleaner.INPUT_ENCODING);
+               r2 = new EpinionsCleaningReader(in, checkpoint == null);
+               headerLines = 2;
+            } else {
+               // Cleaned file is in UTF-8 (independent of the platform encoding)
+               r2 = new InputStreamReader(lineIn, OutputFiles.ENCODING);
+            }
+            if (checkpoint != null) {
+               // Open the elements that were open at the checkpoint
+               String end = rawInput ? EpinionsCleaningReader.ROOT_END + EpinionsCleaningReader.LINE_SEPARATOR : "";
+               r2 = new SequenceReader(new StringReader(checkpoint.getXmlPrefix()), r2, new StringReader(end));
+               headerLines = checkpoint.openElements.length + 1;
+               handler.resumeFrom(checkpoint);
+            }
+         
+            if (metrics != null) {
+               handler.setMetrics(metrics, lineIn);
+               if (metricsInterval > 0) {
+                  metrics.start(metricsInterval);
+               }
+            }
+            if (checkpointInterval > 0) {
+               handler.setCheckpointWriter(new CheckpointWriter(checkpointInterval, lineIn, headerLines, inputOffset, 
+                     checkpointFile, outputSentences, outputTexts));
+            }
+            if (stax) {
+               System.out.println("Read XML with pull parser");
+               handler.parse(new EpinionsReviewReader(r2));
+            } else {
+               xr.parse(new InputSource(r2));
+            }
+         }
+         complete = true;
       } catch (FileNotFoundException e) {
          System.out.println("Error, XML file not found: " + e.getMessage());
          System.out.println("Abort.");
@@ -177,6 +636,24 @@ public class ExtractSentencesFromXML {
       } catch (SAXException e) {
          System.out.println("Error while reading XML file: " + e.getMessage());
          System.out.println("Abort.");
+      } catch (XMLStreamException e) {
+         System.out.println("Error when creating XML reader: " + e.getMessage());
+         System.out.println("Abort.");
+      }
+      handler.abort();
+      if (splitCache != null) {
+         System.out.println("Split cache: " + splitCache);
+      }
+      if (metrics != null) {
+         metrics.stop();
+         metrics.printSummary(System.err);
+         if (metricsFile != null) {
+            try {
+               metrics.writeJson(metricsFile);
+            } catch (IOException e) {
+               System.out.println("Error when writing metrics file: " + e.getMessage());
+            }
+         }
       }
 
       
@@ -189,9 +666,65 @@ public class ExtractSentencesFromXML {
          } catch (IOException e) {
          }
       }
-      try {
-         outSentences.close();
-      } catch (IOException e) {
+      if (outSentences != null) {
+         try {
+            outSentences.close();
+         } catch (IOException e) {
+         }
+      }
+      if (outCandidates != null) {
+         try {
+            outCandidates.close();
+         } catch (IOException e) {
+         }
+      }
+      if (shards != null) {
+         try {
+            shards.close();
+         } catch (IOException e) {
+            System.out.println("Error when closing output files: " + e.getMessage());
+         }
+      }
+      outputFiles.close();
+      if (outBinary != null) {
+         try {
+            outBinary.close();
+         } catch (IOException e) {
+            System.out.println("Error when writing binary corpus file: " + e.getMessage());
+         }
+      }
+      if (outFields != null) {
+         try {
+            outFields.close();
+         } catch (IOException e) {
+            System.out.println("Error when writing review fields file: " + e.getMessage());
+         }
+      }
+      if (splitCache != null) {
+         try {
+            splitCache.close();
+         } catch (IOException e) {
+            System.out.println("Error when writing split cache file: " + e.getMessage());
+         }
+      }
+      
+      // Index of the output, the previous output is no longer needed.
+      // If the run is incomplete, the next run uses the previous output again.
+      if (incremental) {
+         if (complete) {
+            try {
+               reviewIndex.save(ReviewIndex.getFileName(outputSentences));
+            } catch (IOException e) {
+               System.out.println("Error when writing review index: " + e.getMessage());
+            }
+         }
+         if (previousOutput != null) {
+            if (complete) {
+               previousOutput.delete();
+            } else {
+               previousOutput.close();
+            }
+         }
       }
       
    }
@@ -199,6 +732,26 @@ public class ExtractSentencesFromXML {
    
    
    
+   /**
+    * Parse a positive number given as option, exit if it is not.
+    */
+   private static int parsePositive (String value, String name) {
+      int number;
+      try {
+         number = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+         number = 0;
+      }
+      if (number < 1) {
+         System.err.println("Error, " + name + " must be a positive number: " + value);
+         System.exit(1);
+      }
+      return number;
+   }
+   
+   
+   
+   
    /**
    Read the XML files in format
    (Branavan, Chen, Eisenstein, Barzilay 2009)
@@ -236,14 +789,43 @@ public class ExtractSentencesFromXML {
       // Debug/bookkeeping
       private int numberReviews = 0;
       private int numberReviewsIgnored = 0;
-      private int numberSentences = 0;
+      private boolean printCounts = true;
    
-      // Sentence splitter
-      private SentenceSplitter sentenceSplitter;
+      // Sentence splitter, created from the name when the first review
+      // is split on this thread, unless given to the constructor
+      private SentenceSplitter sentenceSplitter = null;
+      private String sentenceSplitterName = SentenceSplitterFactory.STANFORD;
+      private boolean splitterCreated = false;
+      // Reused for all reviews when splitting on this thread
+      private SentenceBoundaries sentenceBoundaries = new SentenceBoundaries();
+      private HtmlStripper htmlStripper = new HtmlStripper();
+      // Results of the splitter for texts seen before (optional)
+      private SplitCache splitCache = null;
+      
+      // Split on worker threads if more than one thread is used
+      private int numberThreads = 1;
+      private boolean virtualThreads = false;
+      private ParallelReviewSplitter parallelSplitter = null;
       
       // Output files
-      private BufferedWriter outSentences;
-      private BufferedWriter outText;
+      private ReviewWriter reviewWriter = new ReviewWriter();
+      private boolean findCues = false;
+      
+      // Incremental runs (optional)
+      private boolean incremental = false;
+      private PreviousOutput previousOutput = null;
+      
+      // Metrics (optional)
+      private ExtractionMetrics metrics = null;
+      private LineOffsetInputStream input = null;
+      private long parseStart = 0;
+      
+      // Checkpoints (optional)
+      private CheckpointWriter checkpointWriter = null;
+      private Locator locator = null;
+      private ArrayList<String> openElements = new ArrayList<String>();
+      private String lastReviewId = "";
+      private int lastReviewLine = -1;
       
       // Document-level
       private boolean inReview = false;
@@ -251,18 +833,44 @@ public class ExtractSentencesFromXML {
       private boolean inID = false;
       
       // Review-level
-      private String text = "";
-      private String id = "";
-      private List<String> idIgnoreList;
+      // Text and id are collected in buffers that are reused for all reviews,
+      // Strings are only created when the review is complete.
+      private StringBuilder text = new StringBuilder(4096);
+      private StringBuilder id = new StringBuilder(16);
+      private boolean ignoreReview = false;
+      private ReviewIgnoreIndex ignoreIndex = new ReviewIgnoreIndex();
+      
+      // Other fields of the review, only collected if they are written
+      private static final String[] FIELDS = {"title", "date", "feature", "rank", "pro", "con"};
+      private boolean collectFields = false;
+      private String inField = null;
+      private StringBuilder field = new StringBuilder(256);
+      private String title;
+      private String date;
+      private ArrayList<String> features = new ArrayList<String>();
+      private ArrayList<String> ranks = new ArrayList<String>();
+      private ArrayList<String> pros = new ArrayList<String>();
+      private ArrayList<String> cons = new ArrayList<String>();
       
       
       
       /**
-       * Initialize sentence splitter.
+       * Split with Stanford unless set with setSentenceSplitter().
+       * The splitter is only created if reviews are split on the thread
+       * that reads the XML.
        */
       public EpinionsReviewHandler () {
-         // Initialize sentence splitter (Stanford)
-         sentenceSplitter = new SentenceSplitterStanford();
+      }
+   
+   
+      /**
+       * Use the given sentence splitter when splitting on the thread
+       * that reads the XML (e.g., for benchmarks).
+       * Worker threads use Stanford unless set with setSentenceSplitter().
+       * @param sentenceSplitter
+       */
+      public EpinionsReviewHandler (SentenceSplitter sentenceSplitter) {
+         this.sentenceSplitter = sentenceSplitter;
       }
    
    
@@ -281,7 +889,7 @@ public class ExtractSentencesFromXML {
        * @param outputFile
        */
       public void setOutputTexts(BufferedWriter outputFile) {
-         this.outText = outputFile;
+         this.reviewWriter.setOutputTexts(outputFile);
       }      
       
    
@@ -292,7 +900,51 @@ public class ExtractSentencesFromXML {
        * @param outputFile
        */
       public void setOutputSentences(BufferedWriter outputFile) {
-         this.outSentences = outputFile;      
+         this.reviewWriter.setOutputSentences(outputFile);
+      }
+   
+      
+      /**
+       * Output all sentences of reviews to this binary corpus file
+       * (see BinaryCorpusWriter).
+       * @param outputFile
+       */
+      public void setOutputBinary(BinaryCorpusWriter outputFile) {
+         this.reviewWriter.setOutputBinary(outputFile);
+      }
+   
+      
+      /**
+       * Output the other fields of all reviews (title, date, feature ranks,
+       * pros, cons) to this columnar file (see ReviewFieldsWriter).
+       * Must be set before the document is read.
+       * @param outputFile
+       */
+      public void setOutputFields(ReviewFieldsWriter outputFile) {
+         this.reviewWriter.setOutputFields(outputFile);
+         this.collectFields = (outputFile != null);
+      }
+   
+      
+      /**
+       * Find comparative cues in each sentence.
+       * @param cueMatcher lexicon of cues (may be null)
+       * @param outputFile file for the candidate sentences,
+       *    if null the cues are added to the sentences file
+       */
+      public void setCueMatcher(CueMatcher cueMatcher, BufferedWriter outputFile) {
+         this.reviewWriter.setCueMatcher(cueMatcher, outputFile);
+         this.findCues = (cueMatcher != null);
+      }
+   
+      
+      /**
+       * Output sentences and texts to several files (instead of
+       * setOutputSentences() and setOutputTexts()).
+       * @param shards (may be null)
+       */
+      public void setShardedOutput(ShardedOutput shards) {
+         this.reviewWriter.setShardedOutput(shards);
       }
    
       
@@ -302,24 +954,168 @@ public class ExtractSentencesFromXML {
        * @param idIgnoreList
        */
       public void setIdIgnoreList(List<String> idIgnoreList) {
-         this.idIgnoreList = idIgnoreList;
+         this.ignoreIndex = new ReviewIgnoreIndex();
+         this.ignoreIndex.addAll(idIgnoreList);
+      }
+   
+      
+      /**
+       * Review ids to ignore.
+       * There will be no sentences extracted from reviews in this index.
+       * @param ignoreIndex
+       */
+      public void setIgnoreIndex(ReviewIgnoreIndex ignoreIndex) {
+         this.ignoreIndex = ignoreIndex;
       }
    
    
       /**
-       * Write a line to the file given.
-       * @param out file to write to
-       * @param line String to write (linebreak will be added at the end)
+       * Sentence splitter to use (see SentenceSplitterFactory).
+       * Must be set before the document is read.
+       * A splitter created by the handler before is closed,
+       * one given to the constructor is replaced, but not closed.
+       * @param name
+       * @throws IllegalArgumentException if there is no splitter with this name
        */
-      private void writeLine (BufferedWriter out, String line) {
-         if (out == null)
-            return;
-         
-         try {
-            out.write(line);
-            out.newLine();
-         } catch (IOException e) {
-            System.out.println("Error when writing to output file: " + e.getMessage());
+      public void setSentenceSplitter(String name) {
+         if (!Arrays.asList(SentenceSplitterFactory.NAMES).contains(name))
+            throw new IllegalArgumentException("Unknown sentence splitter: " + name);
+         if (this.splitterCreated) {
+            try {
+               this.sentenceSplitter.close();
+            } catch (IOException e) {
+               System.out.println("Error when closing sentence splitter: " + e.getMessage());
+            }
+         }
+         this.sentenceSplitter = null;
+         this.splitterCreated = false;
+         this.sentenceSplitterName = name;
+      }
+   
+   
+      /**
+       * Do not split texts again that are in this cache
+       * (see CachingSentenceSplitter).
+       * Must be set before the document is read.
+       * @param splitCache cache, shared by all threads
+       */
+      public void setSplitCache(SplitCache splitCache) {
+         this.splitCache = splitCache;
+      }
+   
+   
+      /**
+       * Split reviews with this many threads.
+       * With 1 thread (default), reviews are split on the thread that
+       * reads the XML. With more threads, the reviews are split by
+       * worker threads and written in the original order.
+       * Must be set before the document is read.
+       * @param numberThreads
+       */
+      public void setNumberThreads(int numberThreads) {
+         this.numberThreads = numberThreads;
+      }
+   
+   
+      /**
+       * Split each review on a thread of its own (virtual threads if the JVM
+       * has them, see VirtualThreads), at most numberThreads reviews
+       * at the same time (also with 1 thread). The reviews are written
+       * in the original order.
+       * Must be set before the document is read.
+       * @param virtualThreads
+       */
+      public void setVirtualThreads(boolean virtualThreads) {
+         this.virtualThreads = virtualThreads;
+      }
+   
+   
+      /**
+       * Incremental run: record all reviews in the index,
+       * do not split reviews that are unchanged in the previous output
+       * (see PreviousOutput).
+       * Must be set before the document is read.
+       * @param index new index
+       * @param previousOutput output of the previous run (may be null)
+       */
+      public void setIncremental(ReviewIndex index, PreviousOutput previousOutput) {
+         this.incremental = true;
+         this.previousOutput = previousOutput;
+         this.reviewWriter.setIndex(index, previousOutput);
+      }
+   
+   
+      /**
+       * Record the time of each stage, the number of reviews and sentences
+       * and the input bytes read (see ExtractionMetrics).
+       * Must be set before the document is read.
+       * @param metrics
+       * @param input input stream of the XML (may be null)
+       */
+      public void setMetrics(ExtractionMetrics metrics, LineOffsetInputStream input) {
+         this.metrics = metrics;
+         this.input = input;
+         this.reviewWriter.setMetrics(metrics);
+      }
+   
+   
+      /**
+       * Write a checkpoint every n reviews (see CheckpointWriter).
+       * Must be set before the document is read.
+       * @param checkpointWriter
+       */
+      public void setCheckpointWriter(CheckpointWriter checkpointWriter) {
+         this.checkpointWriter = checkpointWriter;
+         this.reviewWriter.setCheckpointWriter(checkpointWriter);
+      }
+   
+   
+      /**
+       * Continue counting from a checkpoint.
+       * The document must start with the review after the checkpoint.
+       * @param checkpoint
+       */
+      public void resumeFrom(Checkpoint checkpoint) {
+         this.numberReviews = checkpoint.numberReviews;
+         this.numberReviewsIgnored = checkpoint.numberReviewsIgnored;
+         this.lastReviewId = checkpoint.lastReviewId;
+         this.reviewWriter.setNumberSentences(checkpoint.numberSentences);
+      }
+   
+   
+      /**
+       * Print the number of reviews and sentences at the end of the document
+       * (default), otherwise they can only be read with getNumberReviews() etc.
+       * @param printCounts
+       */
+      public void setPrintCounts(boolean printCounts) {
+         this.printCounts = printCounts;
+      }
+      
+      
+      public int getNumberReviews() {
+         return this.numberReviews;
+      }
+      
+      
+      public int getNumberReviewsIgnored() {
+         return this.numberReviewsIgnored;
+      }
+      
+      
+      public int getNumberSentences() {
+         return this.reviewWriter.getNumberSentences();
+      }
+      
+      
+      /**
+       * Stop the worker threads if reading the document has been aborted.
+       * Does nothing if the document has been read completely.
+       */
+      public void abort() {
+         if (this.parallelSplitter != null) {
+            this.parallelSplitter.abort();
+            this.parallelSplitter = null;
          }
       }
       
@@ -328,6 +1124,85 @@ public class ExtractSentencesFromXML {
       // Process XML document
       
       
+      /**
+       * Read all reviews with a pull parser instead of SAX callbacks,
+       * the output is the same. Checkpoints are not written.
+       * @param reader reader at the start of the document
+       * @throws SAXException if reading, splitting or writing fails
+       */
+      public void parse (EpinionsReviewReader reader) throws SAXException {
+         reader.setIgnoreIndex(this.ignoreIndex);
+         this.startDocument();
+         try {
+            while (reader.hasNext()) {
+               Review review = reader.next();
+               this.numberReviews += 1;
+               this.lastReviewId = review.id;
+               this.process(review);
+            }
+         } catch (IllegalStateException e) {
+            throw new SAXException(e.getMessage(), e);
+         }
+         this.numberReviewsIgnored += reader.getNumberReviewsIgnored();
+         this.endDocument();
+      }
+      
+      
+      /**
+       * Read the reviews of a cleaned file in chunks with several threads
+       * (see ParallelReviewParser), the output is the same.
+       * Checkpoints are not written.
+       * @param fileName cleaned XML file
+       * @param chunkSize approximate size of the chunks in bytes
+       * @throws IOException if reading, parsing or writing fails
+       */
+      public void parseInChunks (String fileName, int chunkSize) throws IOException {
+         ParallelReviewParser parser = new ParallelReviewParser(this.numberThreads, chunkSize,
+               this.sentenceSplitterName, this.splitCache, this.reviewWriter);
+         parser.setIgnoreIndex(this.ignoreIndex);
+         if (this.incremental) {
+            parser.setIncremental(this.previousOutput);
+         }
+         parser.setMetrics(this.metrics);
+         parser.parse(fileName);
+         this.numberReviews += parser.getNumberReviews();
+         this.numberReviewsIgnored += parser.getNumberReviewsIgnored();
+         this.printCounts();
+      }
+      
+      
+      /**
+       * Called by the XML reader, the locator gives the line
+       * of the current element (needed for checkpoints).
+       */
+      public void setDocumentLocator (Locator locator) {
+         this.locator = locator;
+      }
+      
+      
+      /**
+       * Called at the start of the document.
+       * Start worker threads if needed.
+       */
+      public void startDocument () {
+         if (this.sentenceSplitter != null && this.splitCache != null
+               && !(this.sentenceSplitter instanceof CachingSentenceSplitter)) {
+            this.sentenceSplitter = new CachingSentenceSplitter(this.sentenceSplitter, this.splitCache);
+         }
+         if (this.numberThreads > 1 || this.virtualThreads) {
+            this.parallelSplitter = new ParallelReviewSplitter(this.numberThreads, 
+                  this.sentenceSplitterName, this.splitCache, this.reviewWriter, this.virtualThreads);
+         }
+         if (this.metrics != null) {
+            if (this.parallelSplitter != null) {
+               this.parallelSplitter.setMetrics(this.metrics);
+               this.metrics.setQueue(this.parallelSplitter);
+            }
+            this.parseStart = System.nanoTime();
+         }
+      }
+      
+      
       /**
       Called at the start of an element.
       Do things for 'review', 'text', 'id'
@@ -335,27 +1210,48 @@ public class ExtractSentencesFromXML {
        **/
       public void startElement (String uri, String name, String qName, Attributes atts) 
                throws SAXException {
+         this.openElements.add(qName);
          
          // Review
          if (name.equalsIgnoreCase("review")) {
+            this.checkpoint();
             this.inReview = true;
             this.numberReviews += 1;
-            this.text = "";
-            this.id = "";
+            this.text.setLength(0);
+            this.id.setLength(0);
+            this.ignoreReview = false;
             // cannot ignore reviews here, because we don't
             // have the id yet
+            if (this.collectFields) {
+               this.title = null;
+               this.date = null;
+               this.features.clear();
+               this.ranks.clear();
+               this.pros.clear();
+               this.cons.clear();
+            }
    
          // Review text
          // There might be uses of text outside of reviews, 
          // so check if we are in a review.
+         // Text of ignored reviews is not collected.
          } else if (this.inReview & name.equalsIgnoreCase("text")) {
-            this.inText = true;
+            this.inText = !this.ignoreReview;
             
          // Review ID.
          // Products also have an id with the same tag, 
          // so check if we are in a review.
          } else if (this.inReview & name.equalsIgnoreCase("id")) { 
             this.inID = true;
+            
+         // Other fields (only if they are written)
+         } else if (this.collectFields & this.inReview & !this.ignoreReview) {
+            for (String field : FIELDS) {
+               if (name.equalsIgnoreCase(field)) {
+                  this.inField = field;
+                  this.field.setLength(0);
+               }
+            }
          }
       }
    
@@ -367,38 +1263,31 @@ public class ExtractSentencesFromXML {
        **/
       public void endElement (String uri, String name, String qName) 
                throws SAXException {
+         this.openElements.remove(this.openElements.size() - 1);
          
          // Review
          // Have read everything in a review,
          // pass on to further processing.
          if (name.equalsIgnoreCase("review")) {
             this.inReview = false;
+            String id = this.id.toString();
+            this.lastReviewId = id;
             
             // ignore reviews not about the topic at hand or otherwise bad
-            // (manually determined and given in list this.idIgnoreList)
-            if (this.idIgnoreList.contains(this.id)) { 
-               //System.out.println("ignore review id " + this.id);
+            // (manually determined and given in this.ignoreIndex,
+            // checked as soon as the id is complete)
+            if (this.ignoreReview) { 
+               //System.out.println("ignore review id " + id);
                this.numberReviews -= 1;
                this.numberReviewsIgnored += 1;
                return;
             }
             
-            // Remove HTML tags
-            // Split into sentences
-            this.text = this.text.replaceAll("<[^>]+>", " ");
-            TextSpan[] sentenceSpans = sentenceSplitter.split(this.text);
-            
-            // Write to files
-            this.writeLine(outText, this.id);
-            int reviewSentences = 0;
-            for (TextSpan spanny : sentenceSpans) {
-               numberSentences += 1; // all reviews
-               reviewSentences += 1; // this review
-               this.writeLine(outText, spanny.coveredText);
-               this.writeLine(outSentences, this.id + "-" + reviewSentences + "\t" + spanny.coveredText);
+            Review review = new Review(id, this.text.toString());
+            if (this.collectFields) {
+               this.addFields(review);
             }
-            this.writeLine(outText, "");
-            //System.out.println("write review id " + this.id);
+            this.process(review);
    
    
          // Review text
@@ -406,11 +1295,97 @@ public class ExtractSentencesFromXML {
             this.inText = false;
    
          // Review ID.
+         // Decide here if the review is ignored.
          } else if (name.equalsIgnoreCase("id")) { 
+            if (this.inID && this.ignoreIndex.contains(this.id)) {
+               this.ignoreReview = true;
+            }
             this.inID = false;
+            
+         // Other fields
+         } else if (this.inField != null && name.equalsIgnoreCase(this.inField)) {
+            this.endField();
          }
    
       }
+      
+      
+      /**
+       * Keep the content of a field of the review
+       * (same as EpinionsReviewReader).
+       */
+      private void endField () {
+         String value = this.field.toString().trim();
+         if (this.inField.equalsIgnoreCase("title")) {
+            this.title = value;
+         } else if (this.inField.equalsIgnoreCase("date")) {
+            this.date = value;
+         } else if (this.inField.equalsIgnoreCase("feature")) {
+            this.features.add(value);
+         } else if (this.inField.equalsIgnoreCase("rank")) {
+            this.ranks.add(value);
+         } else if (this.inField.equalsIgnoreCase("pro")) {
+            this.pros.add(value);
+         } else {
+            this.cons.add(value);
+         }
+         this.inField = null;
+      }
+      
+      
+      private void addFields (Review review) {
+         review.title = this.title;
+         review.date = this.date;
+         review.features = this.features.toArray(new String[this.features.size()]);
+         review.ranks = new float[review.features.length];
+         for (int i=0; i<review.ranks.length; i++) {
+            review.ranks[i] = (i < this.ranks.size()) ? EpinionsReviewReader.parseRank(this.ranks.get(i)) : Float.NaN;
+         }
+         review.pros = this.pros.toArray(new String[this.pros.size()]);
+         review.cons = this.cons.toArray(new String[this.cons.size()]);
+      }
+      
+      
+      /**
+       * Remove HTML tags, split into sentences and write to files
+       * (or hand over to the worker threads).
+       */
+      private void process (Review review) throws SAXException {
+         if (this.metrics != null) {
+            this.metrics.record(ExtractionMetrics.PARSE, System.nanoTime() - this.parseStart);
+            this.metrics.review(this.input != null ? this.input.getPosition() : 0);
+         }
+         if (this.incremental) {
+            review.hash = ReviewIndex.hash(review.text);
+            if (this.previousOutput != null) {
+               review.previous = this.previousOutput.getUnchanged(review);
+            }
+         }
+         if (this.parallelSplitter != null) {
+            try {
+               this.parallelSplitter.submit(review);
+            } catch (ExecutionException e) {
+               throw new SAXException(e.getMessage(), e);
+            } catch (InterruptedException e) {
+               throw new SAXException(e);
+            }
+         } else {
+            if (review.previous == null) {
+               if (this.sentenceSplitter == null) {
+                  this.createSentenceSplitter();
+               }
+               review.split(sentenceSplitter, htmlStripper, sentenceBoundaries, metrics);
+            }
+            try {
+               reviewWriter.write(review);
+            } catch (IOException e) {
+               throw new SAXException(e.getMessage(), e);
+            }
+         }
+         if (this.metrics != null) {
+            this.parseStart = System.nanoTime();
+         }
+      }
    
       
       /**
@@ -421,30 +1396,87 @@ public class ExtractSentencesFromXML {
             throws SAXException {
          
          // Only do something if we are interested in the element
-         if (!this.inText & !this.inID)
+         if (!this.inText & !this.inID & this.inField == null)
             return;
          
-         String content = new String(ch, start, length);
+         // Other fields: everything, whitespace is removed at the end
+         if (this.inField != null) {
+            this.field.append(ch, start, length);
+            return;
+         }
          
          // Append to corresponding variable,
          // Don't add empty lines, but otherwise don't do strip() to preserve
          // spaces at the end of a set of characters that is read and newlines.
-         if (content.trim() != "") {
-   
-            // Review text
-            if (this.inText) {
-               this.text = this.text + content;
-            }
+         if (isWhitespace(ch, start, length)) {
+            return;
+         }
    
-            // Review id
-            if (this.inID) {
-               this.id = this.id + content;
-            }
+         // Review text
+         if (this.inText) {
+            this.text.append(ch, start, length);
+         }
    
+         // Review id
+         if (this.inID) {
+            this.id.append(ch, start, length);
          }
          
       }
       
+      
+      /**
+       * Write a checkpoint at the start of a review if one is due.
+       * All reviews read so far have been written (1 thread)
+       * or are written before the checkpoint is saved (several threads).
+       * If the review does not start its line, try again at the next review.
+       */
+      private void checkpoint () throws SAXException {
+         if (this.checkpointWriter == null || this.locator == null)
+            return;
+         
+         int numberReviewsRead = this.numberReviews + this.numberReviewsIgnored;
+         int line = this.locator.getLineNumber();
+         // Only the first review on a line can be resumed from
+         boolean firstOnLine = (line != this.lastReviewLine);
+         this.lastReviewLine = line;
+         if (!firstOnLine || !this.checkpointWriter.isDue(numberReviewsRead))
+            return;
+         
+         // Elements that are open without this review
+         String[] open = this.openElements.subList(0, this.openElements.size() - 1).toArray(new String[0]);
+         Checkpoint checkpoint = this.checkpointWriter.create(line, open, numberReviewsRead);
+         if (checkpoint == null)
+            return;
+         checkpoint.lastReviewId = this.lastReviewId;
+         checkpoint.numberReviews = this.numberReviews;
+         checkpoint.numberReviewsIgnored = this.numberReviewsIgnored;
+         if (this.parallelSplitter != null) {
+            try {
+               this.parallelSplitter.submitCheckpoint(checkpoint);
+            } catch (ExecutionException e) {
+               throw new SAXException(e.getMessage(), e);
+            } catch (InterruptedException e) {
+               throw new SAXException(e);
+            }
+         } else {
+            this.reviewWriter.writeCheckpoint(checkpoint);
+         }
+      }
+      
+      
+      /**
+       * Check if the characters are all whitespace or control characters
+       * (same definition as String.trim()).
+       */
+      private static boolean isWhitespace (char ch[], int start, int length) {
+         for (int i=start; i<start+length; i++) {
+            if (ch[i] > ' ')
+               return false;
+         }
+         return true;
+      }
+      
    
       
       // End of XML document
@@ -453,12 +1485,54 @@ public class ExtractSentencesFromXML {
    
       /**
        * Called at the end of the document.
+       * Waits until all reviews have been written.
+       * The checkpoint file is removed, as there is nothing left to resume.
        * Streams must be closed in caller.
        */
-      public void endDocument () {
+      public void endDocument () throws SAXException {
+         if (this.parallelSplitter != null) {
+            try {
+               this.parallelSplitter.finish();
+            } catch (ExecutionException e) {
+               throw new SAXException(e.getMessage(), e);
+            } catch (InterruptedException e) {
+               throw new SAXException(e);
+            } finally {
+               this.parallelSplitter = null;
+               if (this.metrics != null) {
+                  this.metrics.setQueue(null);
+               }
+            }
+         }
+         this.printCounts();
+         if (this.checkpointWriter != null) {
+            this.checkpointWriter.delete();
+         }
+      }
+      
+      
+      /**
+       * Create the splitter with the name that has been set,
+       * with the cache if there is one.
+       */
+      private void createSentenceSplitter () {
+         this.sentenceSplitter = SentenceSplitterFactory.create(this.sentenceSplitterName);
+         if (this.splitCache != null) {
+            this.sentenceSplitter = new CachingSentenceSplitter(this.sentenceSplitter, this.splitCache);
+         }
+         this.splitterCreated = true;
+      }
+      
+      
+      private void printCounts () {
+         if (!this.printCounts)
+            return;
          System.out.println( "Processed " + numberReviews + " reviews "
-               + "with " + numberSentences + " sentences. "
+               + "with " + reviewWriter.getNumberSentences() + " sentences. "
                + "Ignored " + numberReviewsIgnored + " reviews.");
+         if (this.findCues) {
+            System.out.println("Found comparative cues in " + reviewWriter.getNumberCandidates() + " sentences.");
+         }
       }
    
    }
@@ -0,0 +1,324 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Runtime metrics of an extraction run (see ExtractSentencesFromXML, --metrics).
+ *
+ * Recorded are:
+ * - time per review of each stage (parse, strip, split, write),
+ *    as total and as histogram with buckets of powers of 2 nanoseconds
+ * - input bytes, reviews and sentences, and their rates
+ * - number of reviews waiting for the workers and the writer
+ *    (ParallelReviewSplitter)
+ * - heap usage
+ *
+ * A progress line is printed to stderr periodically (see start()),
+ * a summary at the end (see printSummary()), and the metrics
+ * can be written as JSON (see writeJson()).
+ *
+ * When metrics are not enabled, no object of this class exists and
+ * the stages do not take the time (callers check for null),
+ * so there is no overhead.
+ *
+ * Stage times may be recorded from several threads.
+ * Input bytes and reviews are counted by the thread that reads the XML,
+ * sentences by the thread that writes.
+ */
+public class ExtractionMetrics {
+
+   public static final int PARSE = 0;
+   public static final int STRIP = 1;
+   public static final int SPLIT = 2;
+   public static final int WRITE = 3;
+   private static final String[] STAGE_NAMES = {"parse", "strip", "split", "write"};
+
+   private static final double MB = 1048576.0;
+
+   private Histogram[] stages = new Histogram[STAGE_NAMES.length];
+   private long startTime = System.nanoTime();
+
+   // Counters, each changed by one thread
+   private volatile long inputBytes = 0;
+   private volatile long numberReviews = 0;
+   private volatile long numberSentences = 0;
+
+   // Reviews waiting to be split or written
+   private volatile ParallelReviewSplitter queue = null;
+   private AtomicLong maxQueueDepth = new AtomicLong();
+   private AtomicLong maxHeapUsed = new AtomicLong();
+
+   private ScheduledExecutorService reporter = null;
+
+
+   public ExtractionMetrics () {
+      for (int i=0; i<stages.length; i++) {
+         stages[i] = new Histogram();
+      }
+   }
+
+
+   // Recording
+
+
+   /**
+    * Record the time of one review in a stage.
+    * @param stage PARSE, STRIP, SPLIT or WRITE
+    * @param nanos duration in nanoseconds
+    */
+   public void record (int stage, long nanos) {
+      stages[stage].add(nanos);
+   }
+
+
+   /**
+    * A review has been read (thread that reads the XML).
+    * @param inputBytes bytes of the input read so far
+    */
+   public void review (long inputBytes) {
+      this.inputBytes = inputBytes;
+      this.numberReviews += 1;
+   }
+
+
+   /**
+    * Sentences have been written (thread that writes).
+    */
+   public void sentences (int number) {
+      this.numberSentences += number;
+   }
+
+
+   /**
+    * Reviews are split by worker threads, report their queue.
+    * @param queue (null when the workers have finished)
+    */
+   public void setQueue (ParallelReviewSplitter queue) {
+      this.queue = queue;
+   }
+
+
+   /**
+    * Number of reviews waiting when one is submitted.
+    */
+   public void queueDepth (int depth) {
+      updateMax(maxQueueDepth, depth);
+   }
+
+
+   private static void updateMax (AtomicLong max, long value) {
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value)) {
+         current = max.get();
+      }
+   }
+
+
+
+   // Reporting
+
+
+   /**
+    * Print a progress line to stderr every interval seconds.
+    */
+   public void start (int intervalSeconds) {
+      reporter = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("metrics"));
+      reporter.scheduleAtFixedRate(new Runnable() {
+         public void run() {
+            System.err.println(progress());
+         }
+      }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+   }
+
+
+   /**
+    * Stop printing progress lines.
+    */
+   public void stop () {
+      if (reporter != null) {
+         reporter.shutdownNow();
+         reporter = null;
+      }
+   }
+
+
+   /**
+    * One line: amounts so far, rates, queue and heap.
+    */
+   public String progress () {
+      double seconds = seconds();
+      ParallelReviewSplitter queue = this.queue;
+      String queueText = "";
+      if (queue != null) {
+         int depth = queue.getNumberPending();
+         updateMax(maxQueueDepth, depth);
+         queueText = ", queue " + depth;
+      }
+      return String.format(Locale.ENGLISH,
+            "[metrics] %.0f s: %.1f MB read (%.2f MB/s), %d reviews (%.0f/s), %d sentences (%.0f/s)%s, heap %.0f/%.0f MB",
+            seconds, inputBytes / MB, inputBytes / MB / seconds, numberReviews, numberReviews / seconds,
+            numberSentences, numberSentences / seconds, queueText, heapUsed() / MB,
+            Runtime.getRuntime().maxMemory() / MB);
+   }
+
+
+   /**
+    * Print the totals and the time of each stage.
+    */
+   public void printSummary (PrintStream out) {
+      out.println(progress());
+      out.println("[metrics] max queue " + maxQueueDepth.get()
+            + String.format(Locale.ENGLISH, ", max heap %.0f MB", maxHeapUsed.get() / MB));
+      for (int i=0; i<stages.length; i++) {
+         Histogram h = stages[i];
+         out.println(String.format(Locale.ENGLISH,
+               "[metrics] %-5s %8d x, total %8.2f s, mean %9.1f us, p50 < %9.1f us, p99 < %9.1f us, max %9.1f us",
+               STAGE_NAMES[i], h.getCount(), h.getSum() / 1e9, h.getMean() / 1e3,
+               h.getPercentile(0.5) / 1e3, h.getPercentile(0.99) / 1e3, h.getMax() / 1e3));
+      }
+   }
+
+
+   /**
+    * Write all metrics as JSON.
+    * Histograms are given as a list of [upper bound in ns, count]
+    * for the buckets that are not empty.
+    */
+   public void writeJson (String fileName) throws IOException {
+      double seconds = seconds();
+      heapUsed();
+      BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), OutputFiles.ENCODING));
+      try {
+         out.write("{\n");
+         out.write(String.format(Locale.ENGLISH, "  \"seconds\": %.3f,\n", seconds));
+         out.write("  \"inputBytes\": " + inputBytes + ",\n");
+         out.write("  \"reviews\": " + numberReviews + ",\n");
+         out.write("  \"sentences\": " + numberSentences + ",\n");
+         out.write(String.format(Locale.ENGLISH, "  \"inputBytesPerSecond\": %.1f,\n", inputBytes / seconds));
+         out.write(String.format(Locale.ENGLISH, "  \"reviewsPerSecond\": %.1f,\n", numberReviews / seconds));
+         out.write(String.format(Locale.ENGLISH, "  \"sentencesPerSecond\": %.1f,\n", numberSentences / seconds));
+         out.write("  \"maxQueueDepth\": " + maxQueueDepth.get() + ",\n");
+         out.write("  \"maxHeapBytes\": " + maxHeapUsed.get() + ",\n");
+         out.write("  \"stages\": {\n");
+         for (int i=0; i<stages.length; i++) {
+            Histogram h = stages[i];
+            out.write("    \"" + STAGE_NAMES[i] + "\": {");
+            out.write("\"count\": " + h.getCount());
+            out.write(", \"totalNanos\": " + h.getSum());
+            out.write(", \"maxNanos\": " + h.getMax());
+            out.write(", \"histogram\": [");
+            boolean first = true;
+            for (int b=0; b<Histogram.BUCKETS; b++) {
+               long count = h.getBucket(b);
+               if (count > 0) {
+                  out.write((first ? "" : ", ") + "[" + Histogram.upperBound(b) + ", " + count + "]");
+                  first = false;
+               }
+            }
+            out.write("]}" + (i < stages.length - 1 ? "," : "") + "\n");
+         }
+         out.write("  }\n");
+         out.write("}\n");
+      } finally {
+         out.close();
+      }
+   }
+
+
+   private double seconds () {
+      return Math.max(1e-3, (System.nanoTime() - startTime) / 1e9);
+   }
+
+
+   private long heapUsed () {
+      Runtime runtime = Runtime.getRuntime();
+      long used = runtime.totalMemory() - runtime.freeMemory();
+      updateMax(maxHeapUsed, used);
+      return used;
+   }
+
+
+
+   /**
+    * Histogram of durations with buckets of powers of 2:
+    * bucket b counts values v with 2^(b-1) <= v < 2^b (bucket 0: v = 0).
+    * Thread-safe.
+    */
+   static class Histogram {
+
+      static final int BUCKETS = 64;
+
+      private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+      private AtomicLong count = new AtomicLong();
+      private AtomicLong sum = new AtomicLong();
+      private AtomicLong max = new AtomicLong();
+
+      void add (long value) {
+         value = Math.max(0, value);
+         buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+         count.incrementAndGet();
+         sum.addAndGet(value);
+         updateMax(max, value);
+      }
+
+      static long upperBound (int bucket) {
+         return (bucket == 63) ? Long.MAX_VALUE : 1L << bucket;
+      }
+
+      long getBucket (int bucket) {
+         return buckets.get(bucket);
+      }
+
+      long getCount () {
+         return count.get();
+      }
+
+      long getSum () {
+         return sum.get();
+      }
+
+      long getMax () {
+         return max.get();
+      }
+
+      double getMean () {
+         long n = count.get();
+         return (n == 0) ? 0 : (double) sum.get() / n;
+      }
+
+      /**
+       * Upper bound of the bucket that contains the percentile.
+       * @param fraction e.g., 0.99
+       */
+      long getPercentile (double fraction) {
+         long n = count.get();
+         if (n == 0)
+            return 0;
+         long rank = (long) Math.ceil(fraction * n);
+         long seen = 0;
+         for (int b=0; b<BUCKETS; b++) {
+            seen += buckets.get(b);
+            if (seen >= rank)
+               return Math.min(upperBound(b), max.get());
+         }
+         return max.get();
+      }
+   }
+
+}
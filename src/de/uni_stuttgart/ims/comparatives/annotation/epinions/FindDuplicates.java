@@ -0,0 +1,555 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import de.uni_stuttgart.ims.comparatives.nlp.MinHash;
+
+
+/**
+ * Find near-duplicate sentences and reviews in a sentences file
+ * written by ExtractSentencesFromXML (id \t tokenized sentence, a third
+ * column with the cues found is ignored),
+ * e.g., boilerplate sentences and reviews that have been posted twice.
+ *
+ * Each sentence gets a MinHash signature of its token shingles
+ * (see MinHash), each review the signature of all its sentences.
+ * Candidates are found with LSH: for each band, the band keys of all
+ * items are sorted, items with the same key are candidates. A candidate
+ * is a duplicate if the estimated similarity to the first item with this key
+ * is at least the threshold. Duplicates are joined into clusters
+ * (union-find), the first item of a cluster in the file is kept.
+ *
+ * Memory: signatures are written to temporary files and read from there
+ * (memory-mapped), in memory are only an int per item for the clusters
+ * and a long per item for sorting the keys of one band.
+ * The input file is read twice.
+ *
+ * Output:
+ * - report, one line per sentence or review that is in a cluster, in the order of the file:
+ *    sentence \t id of first sentence of the cluster \t sentence id \t similarity \t sentence
+ *    review \t id of first review of the cluster \t review id \t similarity
+ * - (optional) the sentences file without duplicates: sentences that are
+ *    duplicates of an earlier sentence and all sentences of reviews that are
+ *    duplicates of an earlier review are left out
+ * - (optional) the ids of the duplicate reviews, as file of review ids to ignore
+ *    (see ExtractSentencesFromXML, --ignore)
+ */
+public class FindDuplicates {
+
+   private static final String[] TYPES = {"sentence", "review"};
+
+   private MinHash minHash;
+   private double threshold;
+
+   private int numberSentences = 0;
+   private int numberReviews = 0;
+   private SignatureFile[] signatures = new SignatureFile[2];
+   private BitSet[] empty = {new BitSet(), new BitSet()};
+
+   // For each item the first item of its cluster (the item itself if it is no duplicate)
+   private int[][] clusters = new int[2][];
+   // Items that are the first item of a cluster with duplicates
+   private BitSet[] firstItems = {new BitSet(), new BitSet()};
+
+
+
+   /**
+    * @param args [--threshold t] [--bands n] [--rows n] [--shingle n]
+    *    [--dedup file] [--ignore-out file] sentences file, report file
+    */
+   public static void main (String[] args) {
+      double threshold = 0.8;
+      int numberBands = 8;
+      int rowsPerBand = 8;
+      int shingleSize = 2;
+      String dedupFile = null;
+      String ignoreFile = null;
+      ArrayList<String> fileNames = new ArrayList<String>();
+      for (int i=0; i<args.length; i++) {
+         if (args[i].equals("--threshold") && i+1 < args.length) {
+            i++;
+            try {
+               threshold = Double.parseDouble(args[i]);
+            } catch (NumberFormatException e) {
+               threshold = -1;
+            }
+            if (threshold <= 0 || threshold > 1) {
+               System.err.println("Error, threshold must be a number between 0 and 1: " + args[i]);
+               System.exit(1);
+            }
+         } else if (args[i].equals("--bands") && i+1 < args.length) {
+            numberBands = parsePositive(args[++i], "number of bands");
+         } else if (args[i].equals("--rows") && i+1 < args.length) {
+            rowsPerBand = parsePositive(args[++i], "number of rows per band");
+         } else if (args[i].equals("--shingle") && i+1 < args.length) {
+            shingleSize = parsePositive(args[++i], "shingle size");
+         } else if (args[i].equals("--dedup") && i+1 < args.length) {
+            dedupFile = args[++i];
+         } else if (args[i].equals("--ignore-out") && i+1 < args.length) {
+            ignoreFile = args[++i];
+         } else {
+            fileNames.add(args[i]);
+         }
+      }
+      if (fileNames.size() != 2) {
+         System.err.println("Usage: FindDuplicates [--threshold <t>] [--bands <n>] [--rows <n>] [--shingle <n>] "
+               + "[--dedup <output sentences file>] [--ignore-out <output review ids file>] "
+               + "<sentences file> <report file>");
+         System.exit(1);
+      }
+
+      System.out.println("Find duplicates with similarity >= " + threshold + " (" + numberBands + " bands of "
+            + rowsPerBand + " rows, shingles of " + shingleSize + " tokens)");
+      FindDuplicates finder = new FindDuplicates(new MinHash(numberBands, rowsPerBand, shingleSize, 1), threshold);
+      long start = System.nanoTime();
+      try {
+         finder.find(fileNames.get(0));
+         finder.write(fileNames.get(0), fileNames.get(1), dedupFile, ignoreFile);
+      } catch (IOException e) {
+         System.out.println("Error while finding duplicates: " + e.getMessage());
+         System.out.println("Abort.");
+      } finally {
+         finder.close();
+      }
+      for (int type=0; type<TYPES.length; type++) {
+         System.out.println(finder.getSummary(type));
+      }
+      System.out.println(String.format(Locale.ENGLISH, "...done (%.1f s).", (System.nanoTime() - start) / 1e9));
+   }
+
+
+   private static int parsePositive (String value, String name) {
+      int number;
+      try {
+         number = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+         number = 0;
+      }
+      if (number < 1) {
+         System.err.println("Error, " + name + " must be a positive number: " + value);
+         System.exit(1);
+      }
+      return number;
+   }
+
+
+
+   /**
+    * @param minHash signatures and bands
+    * @param threshold minimum estimated similarity of duplicates
+    */
+   public FindDuplicates (MinHash minHash, double threshold) {
+      this.minHash = minHash;
+      this.threshold = threshold;
+   }
+
+
+   /**
+    * Compute the signatures of all sentences and reviews and find the clusters.
+    * @param fileName sentences file (gzip if the name ends with .gz)
+    */
+   public void find (String fileName) throws IOException {
+      int length = minHash.getSignatureLength();
+      for (int type=0; type<TYPES.length; type++) {
+         signatures[type] = new SignatureFile(length);
+      }
+
+      BufferedReader in = open(fileName);
+      try {
+         int[] signature = new int[length];
+         int[] reviewSignature = new int[length];
+         long[] tokenHashes = new long[256];
+         String previousReview = null;
+         boolean reviewEmpty = true;
+         String line;
+         while ((line = in.readLine()) != null) {
+            if (line.isEmpty())
+               continue;
+            int tab = line.indexOf('\t');
+            String reviewId = getReviewId(tab < 0 ? line : line.substring(0, tab));
+            if (!reviewId.equals(previousReview)) {
+               if (previousReview != null) {
+                  addReview(reviewSignature, reviewEmpty);
+               }
+               minHash.clear(reviewSignature);
+               reviewEmpty = true;
+               previousReview = reviewId;
+            }
+            int numberShingles = (tab < 0) ? 0
+                  : minHash.signature(getTokens(line, tab), signature, tokenHashes);
+            if (numberShingles == 0) {
+               minHash.clear(signature);
+               empty[0].set(numberSentences);
+            } else {
+               MinHash.merge(reviewSignature, signature);
+               reviewEmpty = false;
+            }
+            signatures[0].add(signature);
+            numberSentences++;
+         }
+         if (previousReview != null) {
+            addReview(reviewSignature, reviewEmpty);
+         }
+      } finally {
+         in.close();
+      }
+
+      System.out.println("Read " + numberSentences + " sentences of " + numberReviews + " reviews");
+      clusters[0] = cluster(0, numberSentences);
+      clusters[1] = cluster(1, numberReviews);
+   }
+
+
+   private void addReview (int[] signature, boolean isEmpty) throws IOException {
+      if (isEmpty) {
+         empty[1].set(numberReviews);
+      }
+      signatures[1].add(signature);
+      numberReviews++;
+   }
+
+
+   /**
+    * Tokenized sentence of a line, the column after the id
+    * (without the cues that ExtractSentencesFromXML --cues adds).
+    * @param tab position of the tab after the id
+    */
+   private static String getTokens (String line, int tab) {
+      int end = line.indexOf('\t', tab + 1);
+      return line.substring(tab + 1, (end < 0) ? line.length() : end);
+   }
+
+
+   /**
+    * Review id of a sentence id (the part before the last '-').
+    */
+   private static String getReviewId (String sentenceId) {
+      int dash = sentenceId.lastIndexOf('-');
+      return (dash < 0) ? sentenceId : sentenceId.substring(0, dash);
+   }
+
+
+
+   // LSH
+
+
+   /**
+    * Find the clusters of duplicates among the items of a type.
+    * @return for each item the first item of its cluster
+    */
+   private int[] cluster (int type, int numberItems) throws IOException {
+      SignatureFile file = signatures[type];
+      file.finish();
+      int[] parent = new int[numberItems];
+      for (int i=0; i<numberItems; i++) {
+         parent[i] = i;
+      }
+
+      // Keys are sorted with the item in the lowest bits,
+      // items with the same key follow each other, the first item first
+      int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, numberItems - 1));
+      long itemMask = (1L << bits) - 1;
+      long[] keys = new long[numberItems - empty[type].cardinality()];
+      int[] signature = new int[minHash.getSignatureLength()];
+      int[] first = new int[signature.length];
+      int rows = minHash.getRowsPerBand();
+      for (int band=0; band<minHash.getNumberBands(); band++) {
+         int n = 0;
+         for (int i=0; i<numberItems; i++) {
+            if (!empty[type].get(i)) {
+               // Only the values of the band are needed
+               file.get(i, band * rows, (band + 1) * rows, signature);
+               keys[n++] = (minHash.bandKey(signature, band) & ~itemMask) | i;
+            }
+         }
+         Arrays.sort(keys);
+
+         int start = 0;
+         while (start < n) {
+            long key = keys[start] & ~itemMask;
+            int end = start + 1;
+            while (end < n && (keys[end] & ~itemMask) == key) {
+               end++;
+            }
+            if (end - start > 1) {
+               int firstItem = (int) (keys[start] & itemMask);
+               file.get(firstItem, first);
+               for (int k=start+1; k<end; k++) {
+                  int item = (int) (keys[k] & itemMask);
+                  if (find(parent, item) != find(parent, firstItem)) {
+                     file.get(item, signature);
+                     if (MinHash.similarity(first, signature) >= threshold) {
+                        union(parent, firstItem, item);
+                     }
+                  }
+               }
+            }
+            start = end;
+         }
+      }
+
+      for (int i=0; i<numberItems; i++) {
+         parent[i] = find(parent, i);
+         if (parent[i] != i) {
+            firstItems[type].set(parent[i]);
+         }
+      }
+      return parent;
+   }
+
+
+   private static int find (int[] parent, int item) {
+      while (parent[item] != item) {
+         parent[item] = parent[parent[item]];
+         item = parent[item];
+      }
+      return item;
+   }
+
+
+   /**
+    * Join the clusters of two items, the first item of the file is the root.
+    */
+   private static void union (int[] parent, int item1, int item2) {
+      int root1 = find(parent, item1);
+      int root2 = find(parent, item2);
+      if (root1 < root2) {
+         parent[root2] = root1;
+      } else if (root2 < root1) {
+         parent[root1] = root2;
+      }
+   }
+
+
+
+   // Output
+
+
+   /**
+    * Write the report and the optional output files.
+    * @param fileName sentences file (as given to find())
+    * @param reportFile report file name
+    * @param dedupFile sentences file without duplicates (may be null)
+    * @param ignoreFile review ids of the duplicate reviews (may be null)
+    */
+   public void write (String fileName, String reportFile, String dedupFile, String ignoreFile) throws IOException {
+      BufferedReader in = open(fileName);
+      BufferedWriter report = create(reportFile);
+      BufferedWriter dedup = (dedupFile != null) ? create(dedupFile) : null;
+      BufferedWriter ignore = (ignoreFile != null) ? create(ignoreFile) : null;
+      try {
+         // Ids of the first items of clusters, they come before the other items
+         ArrayList<HashMap<Integer, String>> firstIds = new ArrayList<HashMap<Integer, String>>();
+         firstIds.add(new HashMap<Integer, String>());
+         firstIds.add(new HashMap<Integer, String>());
+         int[] signature1 = new int[minHash.getSignatureLength()];
+         int[] signature2 = new int[signature1.length];
+
+         int sentence = 0;
+         int review = -1;
+         String previousReview = null;
+         String line;
+         while ((line = in.readLine()) != null) {
+            if (line.isEmpty())
+               continue;
+            int tab = line.indexOf('\t');
+            String id = (tab < 0) ? line : line.substring(0, tab);
+            String reviewId = getReviewId(id);
+            if (!reviewId.equals(previousReview)) {
+               review++;
+               previousReview = reviewId;
+               String similarity = similarity(1, review, firstIds.get(1), reviewId, signature1, signature2);
+               if (similarity != null) {
+                  report.write(TYPES[1] + "\t" + firstIds.get(1).get(clusters[1][review]) + "\t" + reviewId
+                        + "\t" + similarity);
+                  report.newLine();
+               }
+               if (ignore != null && clusters[1][review] != review) {
+                  ignore.write(reviewId);
+                  ignore.newLine();
+               }
+            }
+
+            String similarity = similarity(0, sentence, firstIds.get(0), id, signature1, signature2);
+            if (similarity != null) {
+               report.write(TYPES[0] + "\t" + firstIds.get(0).get(clusters[0][sentence]) + "\t" + id
+                     + "\t" + similarity + "\t" + ((tab < 0) ? "" : getTokens(line, tab)));
+               report.newLine();
+            }
+            if (dedup != null && clusters[0][sentence] == sentence && clusters[1][review] == review) {
+               dedup.write(line);
+               dedup.newLine();
+            }
+            sentence++;
+         }
+      } finally {
+         in.close();
+         report.close();
+         if (dedup != null) {
+            dedup.close();
+         }
+         if (ignore != null) {
+            ignore.close();
+         }
+      }
+   }
+
+
+   /**
+    * Similarity of an item to the first item of its cluster.
+    * @return similarity as text, null if the item is in no cluster
+    */
+   private String similarity (int type, int item, HashMap<Integer, String> firstIds, String id,
+         int[] signature1, int[] signature2) {
+      int first = clusters[type][item];
+      if (first == item) {
+         if (!firstItems[type].get(item))
+            return null;
+         firstIds.put(item, id);
+         return "1.000";
+      }
+      signatures[type].get(first, signature1);
+      signatures[type].get(item, signature2);
+      return String.format(Locale.ENGLISH, "%.3f", MinHash.similarity(signature1, signature2));
+   }
+
+
+   /**
+    * Number of items, clusters and duplicates.
+    */
+   public String getSummary (int type) {
+      int numberItems = (type == 0) ? numberSentences : numberReviews;
+      int duplicates = 0;
+      if (clusters[type] != null) {
+         for (int i=0; i<numberItems; i++) {
+            if (clusters[type][i] != i) {
+               duplicates++;
+            }
+         }
+      }
+      return "Found " + firstItems[type].cardinality() + " clusters with " + duplicates + " duplicates in "
+            + numberItems + " " + TYPES[type] + "s.";
+   }
+
+
+   /**
+    * Delete the temporary files.
+    */
+   public void close () {
+      for (SignatureFile file : signatures) {
+         if (file != null) {
+            file.close();
+         }
+      }
+   }
+
+
+   private static BufferedReader open (String fileName) throws IOException {
+      InputStream in = new FileInputStream(fileName);
+      if (fileName.endsWith(OutputFiles.GZIP_SUFFIX)) {
+         in = new GZIPInputStream(in, 65536);
+      }
+      return new BufferedReader(new InputStreamReader(in, OutputFiles.ENCODING), 1 << 16);
+   }
+
+
+   private static BufferedWriter create (String fileName) throws IOException {
+      return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), OutputFiles.ENCODING), 1 << 16);
+   }
+
+
+
+   /**
+    * Signatures of all items in a temporary file.
+    * Written with add(), then memory-mapped in segments after finish().
+    */
+   private static class SignatureFile implements Closeable {
+
+      private int length;
+      private File file;
+      private DataOutputStream out;
+      private RandomAccessFile in = null;
+      private ByteBuffer[] segments;
+      private int itemsPerSegment;
+
+      SignatureFile (int length) throws IOException {
+         this.length = length;
+         this.file = File.createTempFile("signatures", ".bin");
+         this.file.deleteOnExit();
+         this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+         this.itemsPerSegment = (1 << 30) / (4 * length);
+      }
+
+      void add (int[] signature) throws IOException {
+         for (int value : signature) {
+            out.writeInt(value);
+         }
+      }
+
+      void finish () throws IOException {
+         out.close();
+         in = new RandomAccessFile(file, "r");
+         FileChannel channel = in.getChannel();
+         long segmentSize = 4L * length * itemsPerSegment;
+         int numberSegments = (int) ((channel.size() + segmentSize - 1) / segmentSize);
+         segments = new ByteBuffer[numberSegments];
+         for (int s=0; s<numberSegments; s++) {
+            long start = s * segmentSize;
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, channel.size() - start));
+         }
+      }
+
+      void get (int item, int[] signature) {
+         get(item, 0, length, signature);
+      }
+
+      /**
+       * Read the values from (inclusive) to (exclusive) of a signature.
+       */
+      void get (int item, int from, int to, int[] signature) {
+         ByteBuffer segment = segments[item / itemsPerSegment];
+         int position = 4 * length * (item % itemsPerSegment);
+         for (int i=from; i<to; i++) {
+            signature[i] = segment.getInt(position + 4 * i);
+         }
+      }
+
+      public void close () {
+         try {
+            out.close();
+            if (in != null) {
+               in.close();
+            }
+         } catch (IOException e) {
+         }
+         segments = null;
+         file.delete();
+      }
+   }
+
+}
@@ -0,0 +1,166 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Input stream that remembers the byte offset at which each line starts,
+ * so a line number reported by the XML parser (see org.xml.sax.Locator)
+ * can be mapped back to a position in the input file.
+ *
+ * Only the most recent lines are kept. The parser reads ahead only
+ * a few kilobytes, so the line of the current element is always among them.
+ *
+ * Lines end with \n, \r or \r\n, the same as for the XML parser.
+ * For every line it is also noted whether the line starts with
+ * a review start tag (after spaces or tabs), because only
+ * these lines are positions at which reading can be resumed.
+ */
+public class LineOffsetInputStream extends FilterInputStream {
+
+   private static final byte[] REVIEW_START = {'<', 'r', 'e', 'v', 'i', 'e', 'w', '>'};
+
+   // Ring buffer of the most recent lines
+   private static final int WINDOW = 1 << 15;
+   private static final int MASK = WINDOW - 1;
+   private int[] lineNumbers = new int[WINDOW];
+   private long[] lineStarts = new long[WINDOW];
+   private boolean[] reviewLines = new boolean[WINDOW];
+
+   // Number of bytes read so far
+   private long position = 0;
+   // Current line, starts with 1
+   private int line = 1;
+   private boolean lastWasCR = false;
+   // Bytes of the review start tag matched in the current line,
+   // -1 if the line does not start with it
+   private int match = 0;
+
+
+   /**
+    * @param in input, positions are counted from the current position of this stream
+    */
+   public LineOffsetInputStream (InputStream in) {
+      super(in);
+      lineNumbers[1] = 1;
+   }
+
+
+   /**
+    * Number of bytes read so far.
+    * Only to be called from the thread that reads.
+    */
+   public long getPosition () {
+      return position;
+   }
+
+
+   /**
+    * Byte offset at which this line starts
+    * if the line starts with a review start tag.
+    * @param lineNumber line number, starting with 1
+    * @return offset from the start of the stream, -1 if the line
+    *    does not start with a review or is no longer known
+    */
+   public long getReviewLineOffset (int lineNumber) {
+      int index = lineNumber & MASK;
+      if (lineNumber < 1 || lineNumbers[index] != lineNumber || !reviewLines[index]) {
+         return -1;
+      }
+      return lineStarts[index];
+   }
+
+
+   @Override
+   public int read () throws IOException {
+      int b = in.read();
+      if (b != -1) {
+         update((byte) b);
+      }
+      return b;
+   }
+
+
+   @Override
+   public int read (byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      for (int i=off; i<off+n; i++) {
+         update(b[i]);
+      }
+      return n;
+   }
+
+
+   @Override
+   public long skip (long n) throws IOException {
+      // Skipped bytes must be counted as well
+      byte[] buffer = new byte[(int) Math.min(n, 8192)];
+      long skipped = 0;
+      while (skipped < n) {
+         int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+         if (read <= 0)
+            break;
+         skipped += read;
+      }
+      return skipped;
+   }
+
+
+   @Override
+   public boolean markSupported () {
+      return false;
+   }
+
+
+   private void update (byte b) {
+      position += 1;
+      if (b == '\n') {
+         if (lastWasCR) {
+            // \r\n, the line has already been started at \r
+            lineStarts[line & MASK] = position;
+            lastWasCR = false;
+         } else {
+            newLine();
+         }
+         return;
+      }
+      if (b == '\r') {
+         newLine();
+         lastWasCR = true;
+         return;
+      }
+      lastWasCR = false;
+
+      if (match >= 0) {
+         if (match == 0 && (b == ' ' || b == '\t')) {
+            // leading whitespace
+         } else if (b == REVIEW_START[match]) {
+            match += 1;
+            if (match == REVIEW_START.length) {
+               reviewLines[line & MASK] = true;
+               match = -1;
+            }
+         } else {
+            match = -1;
+         }
+      }
+   }
+
+
+   private void newLine () {
+      line += 1;
+      int index = line & MASK;
+      lineNumbers[index] = line;
+      lineStarts[index] = position;
+      reviewLines[index] = false;
+      match = 0;
+   }
+
+}
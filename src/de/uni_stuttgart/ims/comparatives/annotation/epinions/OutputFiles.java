@@ -0,0 +1,86 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Open the output files of a run.
+ *
+ * All files are written in UTF-8. The bytes are written (and compressed
+ * with gzip if asked for) by one writer thread that is shared by all files
+ * (see BackgroundOutputStream), so the thread that produces the output
+ * does not wait for the disk.
+ *
+ * Close all files before closing this object.
+ */
+public class OutputFiles implements Closeable {
+
+   public static final Charset ENCODING = Charset.forName("UTF-8");
+   public static final String GZIP_SUFFIX = ".gz";
+
+   private int bufferSize;
+   private boolean gzip;
+   private ExecutorService writer;
+
+
+   /**
+    * @param bufferSize size of the buffers of each file in bytes
+    * @param gzip compress all files with gzip
+    */
+   public OutputFiles (int bufferSize, boolean gzip) {
+      this.bufferSize = bufferSize;
+      this.gzip = gzip;
+      this.writer = Executors.newSingleThreadExecutor(new DaemonThreadFactory("output"));
+   }
+
+
+   /**
+    * Name of the file that is written for this name,
+    * with gzip ".gz" is added if the name does not end with it.
+    */
+   public String getFileName (String fileName) {
+      if (gzip && !fileName.endsWith(GZIP_SUFFIX)) {
+         return fileName + GZIP_SUFFIX;
+      }
+      return fileName;
+   }
+
+
+   /**
+    * Open a file for writing.
+    * @param fileName file name (see getFileName())
+    * @param append add to the end of an existing file (not with gzip)
+    * @throws IOException if the file cannot be created
+    */
+   public BufferedWriter open (String fileName, boolean append) throws IOException {
+      OutputStream out = new FileOutputStream(getFileName(fileName), append);
+      if (gzip) {
+         out = new GZIPOutputStream(out, 65536);
+      }
+      out = new BackgroundOutputStream(out, writer, bufferSize);
+      return new BufferedWriter(new OutputStreamWriter(out, ENCODING));
+   }
+
+
+   /**
+    * Stop the writer thread.
+    */
+   public void close () {
+      writer.shutdown();
+   }
+
+}
@@ -0,0 +1,168 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Clean the original epinions file with several threads
+ * (same result as EpinionsCleaner).
+ *
+ * The cleaning is line by line and there is no state across lines,
+ * so the file is cut into chunks at line breaks. Each chunk is
+ * memory-mapped, converted from Windows-1250 to UTF-8 and cleaned
+ * by its own task (see EpinionsByteCleaner). The results are written to the output file
+ * in the order of the chunks.
+ *
+ * Windows-1250 is a single-byte encoding, so each chunk can be converted
+ * on its own. Chunks end after a \n, so \r\n is never cut apart.
+ */
+public class ParallelEpinionsCleaner {
+
+   private static final Charset OUTPUT_CHARSET = Charset.forName("UTF-8");
+
+   private int numberThreads;
+   private int chunkSize;
+
+
+   /**
+    * @param numberThreads number of threads that clean chunks
+    * @param chunkSize approximate size of the chunks in bytes
+    */
+   public ParallelEpinionsCleaner (int numberThreads, int chunkSize) {
+      this.numberThreads = numberThreads;
+      this.chunkSize = chunkSize;
+   }
+
+
+   /**
+    * Clean the input file and write the result to the output file.
+    * @param inputFileName original epinions file
+    * @param outputFileName cleaned XML file
+    * @throws IOException if reading or writing fails
+    */
+   public void clean (String inputFileName, String outputFileName) throws IOException {
+      FileInputStream in = new FileInputStream(inputFileName);
+      OutputStream out = new FileOutputStream(outputFileName);
+      ExecutorService workers = Executors.newFixedThreadPool(numberThreads, new DaemonThreadFactory("cleaner"));
+      try {
+         FileChannel channel = in.getChannel();
+
+         // Add XML opening and root element
+         out.write((EpinionsCleaningReader.XML_OPENING + EpinionsCleaningReader.LINE_SEPARATOR
+               + EpinionsCleaningReader.ROOT_START + EpinionsCleaningReader.LINE_SEPARATOR).getBytes(OUTPUT_CHARSET));
+
+         // Clean chunks, keep a limited number in progress and write them in order
+         ArrayDeque<Future<ByteArrayOutputStream>> pending = new ArrayDeque<Future<ByteArrayOutputStream>>();
+         for (long[] chunk : findChunks(channel)) {
+            final MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+            pending.add(workers.submit(new Callable<ByteArrayOutputStream>() {
+               public ByteArrayOutputStream call() throws IOException {
+                  return cleanChunk(bytes);
+               }
+            }));
+            if (pending.size() >= numberThreads * 2) {
+               getResult(pending.poll()).writeTo(out);
+            }
+         }
+         while (!pending.isEmpty()) {
+            getResult(pending.poll()).writeTo(out);
+         }
+
+         // Add closing tag for root element
+         out.write((EpinionsCleaningReader.ROOT_END + EpinionsCleaningReader.LINE_SEPARATOR).getBytes(OUTPUT_CHARSET));
+
+      } finally {
+         workers.shutdownNow();
+         in.close();
+         out.close();
+      }
+   }
+
+
+   /**
+    * Cut the file into chunks of about chunkSize bytes that end after a \n
+    * (or at the end of the file).
+    * @return start and end (exclusive) of each chunk
+    */
+   private ArrayList<long[]> findChunks (FileChannel channel) throws IOException {
+      ArrayList<long[]> chunks = new ArrayList<long[]>();
+      long size = channel.size();
+      long start = 0;
+      ByteBuffer window = ByteBuffer.allocate(65536);
+      while (start < size) {
+         long end = Math.min(start + chunkSize, size);
+         // Move end to the next line break
+         boolean found = (end == size);
+         while (!found) {
+            window.clear();
+            int read = channel.read(window, end);
+            if (read <= 0) {
+               end = size;
+               break;
+            }
+            for (int i=0; i<read; i++) {
+               if (window.get(i) == '\n') {
+                  end = end + i + 1;
+                  found = true;
+                  break;
+               }
+            }
+            if (!found) {
+               end += read;
+            }
+         }
+         chunks.add(new long[] {start, end});
+         start = end;
+      }
+      return chunks;
+   }
+
+
+   /**
+    * Convert and clean one chunk.
+    * @return cleaned lines in UTF-8
+    */
+   private static ByteArrayOutputStream cleanChunk (ByteBuffer bytes) throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.remaining() + bytes.remaining() / 8);
+      EpinionsByteCleaner cleaner = new EpinionsByteCleaner(Channels.newChannel(result), 
+            ByteBuffer.allocate(65536));
+      cleaner.clean(bytes);
+      cleaner.finish();
+      return result;
+   }
+
+
+   private static ByteArrayOutputStream getResult (Future<ByteArrayOutputStream> result) throws IOException {
+      try {
+         return result.get();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException)
+            throw (IOException) e.getCause();
+         throw new IOException("Error while cleaning chunk: " + e.getCause().getMessage(), e.getCause());
+      } catch (InterruptedException e) {
+         throw new IOException("Interrupted while cleaning", e);
+      }
+   }
+
+}
@@ -0,0 +1,428 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+
+import de.uni_stuttgart.ims.comparatives.nlp.HtmlStripper;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterPool;
+import de.uni_stuttgart.ims.comparatives.nlp.SplitCache;
+
+
+/**
+ * Read and split the reviews of a cleaned XML file with several threads
+ * (same output as reading it with EpinionsReviewHandler).
+ *
+ * In a cleaned file (see EpinionsCleaner), every review ends with
+ * a line that only contains </review>. The file is cut into chunks
+ * of about chunkSize bytes after such lines, so no review is cut apart.
+ * Each chunk is memory-mapped, and each task takes the reviews
+ * of its chunk (from <review to the end of the </review> line),
+ * wraps them in a root element and reads them with its own
+ * EpinionsReviewReader. The reviews are split by the same task,
+ * so reading the XML is done in parallel, too.
+ * The split reviews are written on the calling thread in the order
+ * of the chunks.
+ *
+ * Everything outside of reviews (e.g., product ids) is left out,
+ * it is not used by the extraction.
+ * The number of chunks in progress is bounded.
+ */
+public class ParallelReviewParser {
+
+   // Encoding of the cleaned file, the same on all paths
+   private static final Charset CHARSET = OutputFiles.ENCODING;
+   private static final byte[] REVIEW_START = "<review".getBytes(CHARSET);
+   private static final byte[] REVIEW_END = "</review>".getBytes(CHARSET);
+   private static final byte[] ROOT_START = EpinionsCleaningReader.ROOT_START.getBytes(CHARSET);
+   private static final byte[] ROOT_END = EpinionsCleaningReader.ROOT_END.getBytes(CHARSET);
+
+   private int numberThreads;
+   private int chunkSize;
+   private ReviewWriter reviewWriter;
+
+   // One sentence splitter and HTML stripper per worker
+   private SentenceSplitterPool splitterPool;
+   private ThreadLocal<SentenceSplitter> splitters;
+   private ThreadLocal<HtmlStripper> htmlStrippers;
+
+   private ReviewIgnoreIndex ignoreIndex = null;
+   private boolean incremental = false;
+   private PreviousOutput previousOutput = null;
+   private ExtractionMetrics metrics = null;
+
+   private int numberReviews = 0;
+   private int numberReviewsIgnored = 0;
+
+
+   /**
+    * @param numberThreads number of threads that read and split chunks
+    * @param chunkSize approximate size of the chunks in bytes
+    * @param splitterName sentence splitter to use (see SentenceSplitterFactory)
+    * @param splitCache cache shared by the splitters of all threads (may be null)
+    * @param reviewWriter writer for the split reviews,
+    *    will only be used from the thread that calls parse()
+    */
+   public ParallelReviewParser (int numberThreads, int chunkSize, String splitterName, SplitCache splitCache,
+         ReviewWriter reviewWriter) {
+      this.numberThreads = numberThreads;
+      this.chunkSize = chunkSize;
+      this.reviewWriter = reviewWriter;
+      this.splitterPool = new SentenceSplitterPool(splitterName, splitCache);
+      this.splitters = new ThreadLocal<SentenceSplitter>() {
+         protected SentenceSplitter initialValue() {
+            return splitterPool.acquire();
+         }
+      };
+      this.htmlStrippers = new ThreadLocal<HtmlStripper>() {
+         protected HtmlStripper initialValue() {
+            return new HtmlStripper();
+         }
+      };
+   }
+
+
+   /**
+    * Skip the reviews with these ids.
+    * @param ignoreIndex (may be null)
+    */
+   public void setIgnoreIndex (ReviewIgnoreIndex ignoreIndex) {
+      this.ignoreIndex = ignoreIndex;
+   }
+
+
+   /**
+    * Compute the hash of each review and do not split unchanged reviews
+    * (see PreviousOutput).
+    * @param previousOutput output of the previous run (may be null)
+    */
+   public void setIncremental (PreviousOutput previousOutput) {
+      this.incremental = true;
+      this.previousOutput = previousOutput;
+   }
+
+
+   /**
+    * Record the time of the stages, the number of reviews
+    * and the input bytes read.
+    * @param metrics (may be null)
+    */
+   public void setMetrics (ExtractionMetrics metrics) {
+      this.metrics = metrics;
+   }
+
+
+   /**
+    * Number of reviews written.
+    */
+   public int getNumberReviews () {
+      return numberReviews;
+   }
+
+
+   /**
+    * Number of reviews skipped (see setIgnoreIndex()).
+    */
+   public int getNumberReviewsIgnored () {
+      return numberReviewsIgnored;
+   }
+
+
+
+   /**
+    * Read, split and write all reviews of the file.
+    * @param fileName cleaned XML file (UTF-8, see EpinionsCleaner)
+    * @throws IOException if reading, parsing or writing fails
+    */
+   public void parse (String fileName) throws IOException {
+      FileInputStream in = new FileInputStream(fileName);
+      ExecutorService workers = Executors.newFixedThreadPool(numberThreads, new DaemonThreadFactory("parser"));
+      try {
+         FileChannel channel = in.getChannel();
+
+         // Parse chunks, keep a limited number in progress and write them in order
+         ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+         for (long[] range : findChunks(channel)) {
+            final long start = range[0];
+            final long end = range[1];
+            final MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            pending.add(workers.submit(new Callable<Chunk>() {
+               public Chunk call() throws IOException {
+                  return parseChunk(bytes, start, end);
+               }
+            }));
+            if (pending.size() >= numberThreads * 2) {
+               write(getResult(pending.poll()));
+            }
+         }
+         while (!pending.isEmpty()) {
+            write(getResult(pending.poll()));
+         }
+
+      } finally {
+         workers.shutdownNow();
+         in.close();
+         splitterPool.close();
+      }
+   }
+
+
+   /**
+    * Cut the file into chunks of about chunkSize bytes that end after
+    * a line that only contains </review> (or at the end of the file).
+    * @return start and end (exclusive) of each chunk
+    */
+   private ArrayList<long[]> findChunks (FileChannel channel) throws IOException {
+      ArrayList<long[]> chunks = new ArrayList<long[]>();
+      long size = channel.size();
+      long start = 0;
+      ByteBuffer window = ByteBuffer.allocate(65536);
+      while (start < size) {
+         long end = Math.min(start + chunkSize, size);
+         // Move end to the end of the next </review> line,
+         // the line end is the first one not before end
+         int matched = -1;
+         boolean found = (end == size);
+         while (!found) {
+            window.clear();
+            int read = channel.read(window, end);
+            if (read <= 0) {
+               end = size;
+               break;
+            }
+            for (int i=0; i<read; i++) {
+               byte b = window.get(i);
+               if (b == '\n') {
+                  if (matched == REVIEW_END.length) {
+                     end = end + i + 1;
+                     found = true;
+                     break;
+                  }
+                  matched = 0;
+               } else {
+                  matched = matchReviewEnd(matched, b);
+               }
+            }
+            if (!found) {
+               end += read;
+            }
+         }
+         chunks.add(new long[] {start, end});
+         start = end;
+      }
+      return chunks;
+   }
+
+
+   /**
+    * Match one more byte of a line against optional whitespace,
+    * </review> and optional whitespace.
+    * @param matched bytes of </review> matched so far, -1 if the line does not match
+    * @return new number of bytes matched, -1 if the line does not match
+    */
+   private static int matchReviewEnd (int matched, byte b) {
+      if (matched < 0)
+         return -1;
+      boolean whitespace = (b == ' ' || b == '\t' || b == '\r');
+      if (matched == 0 && whitespace)
+         return 0;
+      if (matched < REVIEW_END.length && b == REVIEW_END[matched])
+         return matched + 1;
+      if (matched == REVIEW_END.length && whitespace)
+         return matched;
+      return -1;
+   }
+
+
+
+   /**
+    * Reviews of one chunk, read and split.
+    */
+   private static class Chunk {
+      ArrayList<Review> reviews = new ArrayList<Review>();
+      int numberReviewsIgnored;
+      // End of the chunk in the file
+      long end;
+   }
+
+
+   /**
+    * Read and split the reviews of one chunk (worker thread).
+    */
+   private Chunk parseChunk (ByteBuffer bytes, long start, long end) throws IOException {
+      Chunk chunk = new Chunk();
+      chunk.end = end;
+      ByteArrayOutputStream document = extractReviews(bytes);
+
+      EpinionsReviewReader reader;
+      try {
+         reader = new EpinionsReviewReader(new InputStreamReader(
+               new ByteArrayInputStream(document.toByteArray()), CHARSET));
+      } catch (XMLStreamException e) {
+         throw new IOException("Error when creating XML reader: " + e.getMessage(), e);
+      }
+      reader.setIgnoreIndex(ignoreIndex);
+      SentenceSplitter splitter = splitters.get();
+      HtmlStripper htmlStripper = htmlStrippers.get();
+      try {
+         long parseStart = (metrics != null) ? System.nanoTime() : 0;
+         while (reader.hasNext()) {
+            Review review = reader.next();
+            if (metrics != null) {
+               metrics.record(ExtractionMetrics.PARSE, System.nanoTime() - parseStart);
+            }
+            if (incremental) {
+               review.hash = ReviewIndex.hash(review.text);
+               if (previousOutput != null) {
+                  review.previous = previousOutput.getUnchanged(review);
+               }
+            }
+            // Unchanged reviews in incremental runs are copied by the writer
+            if (review.previous == null) {
+               review.split(splitter, htmlStripper, null, metrics);
+            }
+            chunk.reviews.add(review);
+            if (metrics != null) {
+               parseStart = System.nanoTime();
+            }
+         }
+      } catch (IllegalStateException e) {
+         throw new IOException("Error in chunk at byte " + start + ": " + e.getMessage(), e);
+      }
+      chunk.numberReviewsIgnored = reader.getNumberReviewsIgnored();
+      reader.close();
+      return chunk;
+   }
+
+
+   /**
+    * Copy the reviews of a chunk into a document with a root element.
+    * A review goes from the first <review after the previous </review> line
+    * to the end of its own </review> line.
+    */
+   private static ByteArrayOutputStream extractReviews (ByteBuffer bytes) {
+      ByteArrayOutputStream document = new ByteArrayOutputStream(bytes.remaining() + 64);
+      document.write(ROOT_START, 0, ROOT_START.length);
+      document.write('\n');
+
+      byte[] line = new byte[4096];
+      int reviewStart = -1;
+      int lineStart = 0;
+      int matched = 0;
+      int size = bytes.limit();
+      // The end of the chunk is the end of the last line
+      for (int i=0; i<=size; i++) {
+         if (i < size && bytes.get(i) != '\n') {
+            matched = matchReviewEnd(matched, bytes.get(i));
+            continue;
+         }
+         int lineEnd = Math.min(i+1, size);
+         if (reviewStart < 0) {
+            reviewStart = findReviewStart(bytes, lineStart, lineEnd);
+         }
+         if (matched == REVIEW_END.length && reviewStart >= 0) {
+            line = copy(bytes, reviewStart, lineEnd, document, line);
+            document.write('\n');
+            reviewStart = -1;
+         }
+         lineStart = lineEnd;
+         matched = 0;
+      }
+      // Incomplete review at the end of the file (gives an XML error)
+      if (reviewStart >= 0) {
+         copy(bytes, reviewStart, size, document, line);
+         document.write('\n');
+      }
+
+      document.write(ROOT_END, 0, ROOT_END.length);
+      document.write('\n');
+      return document;
+   }
+
+
+   /**
+    * Position of the first <review start tag in the range, -1 if there is none.
+    */
+   private static int findReviewStart (ByteBuffer bytes, int from, int to) {
+      for (int i=from; i+REVIEW_START.length<to; i++) {
+         int j = 0;
+         while (j < REVIEW_START.length && bytes.get(i+j) == REVIEW_START[j]) {
+            j++;
+         }
+         if (j == REVIEW_START.length) {
+            byte next = bytes.get(i+j);
+            if (next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\r' || next == '\n')
+               return i;
+         }
+      }
+      return -1;
+   }
+
+
+   /**
+    * Copy a range of the buffer to the output.
+    * @return the copy buffer (to be reused)
+    */
+   private static byte[] copy (ByteBuffer bytes, int from, int to, ByteArrayOutputStream out, byte[] buffer) {
+      ByteBuffer range = bytes.duplicate();
+      range.limit(to);
+      range.position(from);
+      while (range.hasRemaining()) {
+         int n = Math.min(buffer.length, range.remaining());
+         range.get(buffer, 0, n);
+         out.write(buffer, 0, n);
+      }
+      return buffer;
+   }
+
+
+
+   /**
+    * Write the reviews of a chunk (calling thread).
+    */
+   private void write (Chunk chunk) throws IOException {
+      for (Review review : chunk.reviews) {
+         numberReviews += 1;
+         if (metrics != null) {
+            metrics.review(chunk.end);
+         }
+         reviewWriter.write(review);
+      }
+      numberReviewsIgnored += chunk.numberReviewsIgnored;
+   }
+
+
+   private static Chunk getResult (Future<Chunk> result) throws IOException {
+      try {
+         return result.get();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException)
+            throw (IOException) e.getCause();
+         throw new IOException("Error while parsing chunk: " + e.getCause().getMessage(), e.getCause());
+      } catch (InterruptedException e) {
+         throw new IOException("Interrupted while parsing", e);
+      }
+   }
+
+}
@@ -0,0 +1,280 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import de.uni_stuttgart.ims.comparatives.nlp.HtmlStripper;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterPool;
+import de.uni_stuttgart.ims.comparatives.nlp.SplitCache;
+import de.uni_stuttgart.ims.comparatives.nlp.ThrottledSentenceSplitter;
+
+
+/**
+ * Split reviews into sentences with several worker threads
+ * and write them in the original order.
+ *
+ * The XML reader thread only hands over the reviews with submit().
+ * Each review is split by one of the workers, each worker takes its own
+ * sentence splitter from a SentenceSplitterPool and keeps it.
+ * A single writer thread waits for the results in the order in which
+ * the reviews have been submitted and passes them on to the ReviewWriter,
+ * so the output is the same as when splitting on the reader thread.
+ * Checkpoints (see submitCheckpoint()) go through the same queue,
+ * so they are saved exactly after the reviews submitted before them.
+ *
+ * The number of reviews that are submitted, but not written yet
+ * is bounded, submit() blocks if the workers or the writer are behind.
+ *
+ * With virtual threads, each review is split on a thread of its own
+ * (see VirtualThreads) instead of on a fixed pool of workers.
+ * All threads share one ThrottledSentenceSplitter, so only numberThreads
+ * reviews are split at the same time and no more splitters are created.
+ */
+public class ParallelReviewSplitter {
+
+   // Marks the end of the queue for the writer thread
+   private static final Future<Object> END_OF_INPUT = done(null);
+
+   private ExecutorService workers;
+   private SentenceSplitterPool splitterPool;
+   private ThreadLocal<SentenceSplitter> splitters;
+   // With virtual threads: splitter shared by all threads (null otherwise)
+   private SentenceSplitter sharedSplitter = null;
+   // HTML strippers that are not in use, each task takes one
+   // (not one per thread, with virtual threads every review has its own thread)
+   private ConcurrentLinkedQueue<HtmlStripper> htmlStrippers = new ConcurrentLinkedQueue<HtmlStripper>();
+   // Results in order: reviews or checkpoints
+   private BlockingQueue<Future<?>> pending;
+   private Thread writerThread;
+   private ReviewWriter reviewWriter;
+   private ExtractionMetrics metrics = null;
+
+   // First error that happened in a worker or in the writer,
+   // reported to the reader thread with the next submit() or finish().
+   private volatile Throwable failure = null;
+
+
+   /**
+    * Start the workers and the writer thread.
+    * @param numberThreads number of worker threads that split reviews
+    * @param splitterName sentence splitter to use (see SentenceSplitterFactory)
+    * @param splitCache cache shared by the splitters of all workers (may be null)
+    * @param reviewWriter writer for the split reviews,
+    *    will only be used from the writer thread
+    */
+   public ParallelReviewSplitter (int numberThreads, String splitterName, SplitCache splitCache,
+         ReviewWriter reviewWriter) {
+      this(numberThreads, splitterName, splitCache, reviewWriter, false);
+   }
+
+
+   /**
+    * Start the workers and the writer thread.
+    * @param numberThreads number of threads that split reviews at the same time
+    * @param splitterName sentence splitter to use (see SentenceSplitterFactory)
+    * @param splitCache cache shared by the splitters of all workers (may be null)
+    * @param reviewWriter writer for the split reviews,
+    *    will only be used from the writer thread
+    * @param virtualThreads split each review on a new (virtual) thread,
+    *    numberThreads limits only the splitting
+    */
+   public ParallelReviewSplitter (int numberThreads, String splitterName, SplitCache splitCache,
+         ReviewWriter reviewWriter, boolean virtualThreads) {
+      this.reviewWriter = reviewWriter;
+      this.pending = new ArrayBlockingQueue<Future<?>>(numberThreads * 4);
+
+      // One sentence splitter per worker
+      this.splitterPool = new SentenceSplitterPool(splitterName, splitCache);
+      this.splitters = new ThreadLocal<SentenceSplitter>() {
+         protected SentenceSplitter initialValue() {
+            return splitterPool.acquire();
+         }
+      };
+      if (virtualThreads) {
+         this.sharedSplitter = new ThrottledSentenceSplitter(splitterPool, new Semaphore(numberThreads));
+         this.workers = VirtualThreads.newThreadPerTaskExecutor("splitter");
+      } else {
+         this.workers = Executors.newFixedThreadPool(numberThreads, new DaemonThreadFactory("splitter"));
+      }
+
+      this.writerThread = new DaemonThreadFactory("writer").newThread(new Runnable() {
+         public void run() {
+            writeAll();
+         }
+      });
+      this.writerThread.start();
+   }
+
+
+   /**
+    * Record the time of the stages and the number of waiting reviews.
+    * Must be set before the first review is submitted.
+    * @param metrics (may be null)
+    */
+   public void setMetrics (ExtractionMetrics metrics) {
+      this.metrics = metrics;
+   }
+
+
+   /**
+    * Number of reviews (and checkpoints) submitted, but not written yet.
+    */
+   public int getNumberPending () {
+      return pending.size();
+   }
+
+
+   /**
+    * Hand over a review to be split and written.
+    * Blocks if too many reviews are waiting.
+    * @param review review with id and text
+    * @throws ExecutionException if splitting or writing a previous review failed
+    * @throws InterruptedException if interrupted while waiting
+    */
+   public void submit (final Review review) throws ExecutionException, InterruptedException {
+      checkFailure();
+      Future<Review> result = workers.submit(new Callable<Review>() {
+         public Review call() {
+            // Unchanged reviews in incremental runs are copied by the writer
+            if (review.previous == null) {
+               SentenceSplitter splitter = (sharedSplitter != null) ? sharedSplitter : splitters.get();
+               HtmlStripper htmlStripper = htmlStrippers.poll();
+               if (htmlStripper == null) {
+                  htmlStripper = new HtmlStripper();
+               }
+               review.split(splitter, htmlStripper, null, metrics);
+               htmlStrippers.add(htmlStripper);
+            }
+            return review;
+         }
+      });
+      pending.put(result);
+      if (metrics != null) {
+         metrics.queueDepth(pending.size());
+      }
+   }
+
+
+   /**
+    * Hand over a checkpoint, it is saved by the writer thread
+    * when all reviews submitted before it have been written.
+    * @param checkpoint
+    * @throws ExecutionException if splitting or writing a previous review failed
+    * @throws InterruptedException if interrupted while waiting
+    */
+   public void submitCheckpoint (Checkpoint checkpoint) throws ExecutionException, InterruptedException {
+      checkFailure();
+      pending.put(done(checkpoint));
+   }
+
+
+   /**
+    * Wait until all submitted reviews have been written, then stop all threads.
+    * @throws ExecutionException if splitting or writing a review failed
+    * @throws InterruptedException if interrupted while waiting
+    */
+   public void finish () throws ExecutionException, InterruptedException {
+      try {
+         pending.put(END_OF_INPUT);
+         writerThread.join();
+      } finally {
+         workers.shutdownNow();
+      }
+      checkFailure();
+   }
+
+
+   /**
+    * Stop all threads without waiting for the reviews that have not been written.
+    * Used when reading the input has been aborted.
+    */
+   public void abort () {
+      workers.shutdownNow();
+      writerThread.interrupt();
+   }
+
+
+   /**
+    * Writer thread.
+    * Take the results in order and write them.
+    */
+   private void writeAll () {
+      try {
+         Future<?> result = pending.take();
+         while (result != END_OF_INPUT) {
+            Object item = result.get();
+            if (item instanceof Checkpoint) {
+               reviewWriter.writeCheckpoint((Checkpoint) item);
+            } else {
+               reviewWriter.write((Review) item);
+            }
+            result = pending.take();
+         }
+      } catch (ExecutionException e) {
+         failure = e.getCause();
+         // Keep emptying the queue so the reader thread does not block
+         drain();
+      } catch (IOException e) {
+         failure = e;
+         drain();
+      } catch (InterruptedException e) {
+         // aborted
+      } catch (RuntimeException e) {
+         failure = e;
+         drain();
+      }
+   }
+
+
+   /**
+    * Discard everything that is still waiting until the end of input is reached.
+    */
+   private void drain () {
+      try {
+         Future<?> result = pending.take();
+         while (result != END_OF_INPUT) {
+            result.cancel(true);
+            result = pending.take();
+         }
+      } catch (InterruptedException e) {
+         // aborted
+      }
+   }
+
+
+   /**
+    * Result that is available immediately.
+    */
+   private static Future<Object> done (final Object value) {
+      FutureTask<Object> result = new FutureTask<Object>(new Callable<Object>() {
+         public Object call() {
+            return value;
+         }
+      });
+      result.run();
+      return result;
+   }
+
+
+   private void checkFailure () throws ExecutionException {
+      if (failure != null) {
+         throw new ExecutionException("Error while splitting reviews: " + failure.getMessage(), failure);
+      }
+   }
+
+}
@@ -0,0 +1,174 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+
+/**
+ * Output files and index of the previous run for incremental runs
+ * (see ExtractSentencesFromXML, --incremental).
+ *
+ * At the start of an incremental run, the output files and the index
+ * are renamed to <name>.previous, the new output is written to the
+ * original file names. A review whose id and text are the same as in
+ * the previous run is not split again, its output is copied
+ * from the previous files. When the run is complete, the previous
+ * files are deleted. If a run is interrupted, the next run uses
+ * the previous files that are still there.
+ *
+ * Output files are written in UTF-8 (see OutputFiles),
+ * the copied bytes are decoded with the same encoding.
+ */
+public class PreviousOutput {
+
+   private static final String SUFFIX = ".previous";
+
+   private ReviewIndex index;
+   private String[] fileNames;
+   private FileChannel sentences;
+   private FileChannel texts;
+   private Charset charset = OutputFiles.ENCODING;
+   private ByteBuffer buffer = ByteBuffer.allocate(65536);
+
+
+   private PreviousOutput (ReviewIndex index, String[] fileNames) throws IOException {
+      this.index = index;
+      this.fileNames = fileNames;
+      this.sentences = new RandomAccessFile(fileNames[1], "r").getChannel();
+      if (fileNames[2] != null) {
+         this.texts = new RandomAccessFile(fileNames[2], "r").getChannel();
+      }
+   }
+
+
+   /**
+    * Move the output of the previous run out of the way and open it.
+    * @param outputSentences output file for sentences
+    * @param outputTexts output file for texts (may be null)
+    * @return previous output, null if there is none
+    * @throws IOException if the previous output cannot be renamed or read
+    */
+   public static PreviousOutput open (String outputSentences, String outputTexts) throws IOException {
+      String indexFile = ReviewIndex.getFileName(outputSentences);
+      String[] current = {indexFile, outputSentences, outputTexts};
+      String[] previous = new String[current.length];
+      for (int i=0; i<current.length; i++) {
+         previous[i] = (current[i] != null) ? current[i] + SUFFIX : null;
+      }
+
+      // Previous incremental run was interrupted: previous files are still there,
+      // current files are incomplete
+      if (!new File(previous[0]).exists()) {
+         if (!new File(indexFile).exists()) {
+            return null;
+         }
+         // Rename the index last, so an interrupted rename is noticed
+         // by the next run (index without previous index)
+         for (int i=current.length-1; i>=0; i--) {
+            if (current[i] != null && new File(current[i]).exists()
+                  && !new File(current[i]).renameTo(new File(previous[i]))) {
+               throw new IOException("Cannot rename " + current[i] + " to " + previous[i]);
+            }
+         }
+      }
+
+      for (int i=1; i<previous.length; i++) {
+         if (previous[i] != null && !new File(previous[i]).exists()) {
+            throw new IOException("Previous output file missing: " + previous[i]);
+         }
+      }
+      return new PreviousOutput(ReviewIndex.load(previous[0]), previous);
+   }
+
+
+   /**
+    * Index of the previous run.
+    */
+   public ReviewIndex getIndex () {
+      return index;
+   }
+
+
+   /**
+    * Entry of the review in the previous output
+    * if the review has the same id and text.
+    * @param review review with hash
+    * @return entry, null if the review is new or has changed
+    */
+   public ReviewIndex.Entry getUnchanged (Review review) {
+      ReviewIndex.Entry entry = index.get(review.id);
+      if (entry != null && entry.textLength == review.text.length() && entry.textHash == review.hash) {
+         return entry;
+      }
+      return null;
+   }
+
+
+   /**
+    * Output of the review in the sentences file.
+    */
+   public String readSentences (ReviewIndex.Entry entry) throws IOException {
+      return read(sentences, entry.sentencesOffset, entry.sentencesLength);
+   }
+
+
+   /**
+    * Output of the review in the texts file.
+    */
+   public String readTexts (ReviewIndex.Entry entry) throws IOException {
+      return read(texts, entry.textsOffset, entry.textsLength);
+   }
+
+
+   private String read (FileChannel channel, long offset, int length) throws IOException {
+      if (buffer.capacity() < length) {
+         buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+      }
+      buffer.clear();
+      buffer.limit(length);
+      while (buffer.hasRemaining()) {
+         if (channel.read(buffer, offset + buffer.position()) < 0) {
+            throw new EOFException("Previous output file is shorter than in its index");
+         }
+      }
+      return new String(buffer.array(), 0, length, charset);
+   }
+
+
+   /**
+    * Close and delete the previous output (when the run is complete).
+    */
+   public void delete () {
+      close();
+      for (String fileName : fileNames) {
+         if (fileName != null) {
+            new File(fileName).delete();
+         }
+      }
+   }
+
+
+   /**
+    * Close the previous output files.
+    */
+   public void close () {
+      try {
+         sentences.close();
+         if (texts != null) {
+            texts.close();
+         }
+      } catch (IOException e) {
+      }
+   }
+
+}
@@ -0,0 +1,83 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import de.uni_stuttgart.ims.comparatives.nlp.HtmlStripper;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+
+
+/**
+ * One review as read from the XML file.
+ * Id and text are filled in by the XML reader, the other fields
+ * only by EpinionsReviewReader,
+ * the sentences are filled in when the text is split.
+ * In incremental runs, unchanged reviews are not split (see PreviousOutput).
+ * Offsets of sentences and tokens refer to the text as read from the XML,
+ * including HTML tags.
+ */
+public class Review {
+
+   public String id;
+   public String text;
+   public SentenceBoundaries sentences;
+
+   // Other fields of the review (null if not read)
+   public String title;
+   public String date;
+   // Feature names and their ranks (NaN if missing or not a number)
+   public String[] features;
+   public float[] ranks;
+   public String[] pros;
+   public String[] cons;
+
+   // Incremental runs: hash of the text (see ReviewIndex)
+   // and the previous output if the review has not changed (then it is not split)
+   public long hash;
+   public ReviewIndex.Entry previous;
+
+   public Review (String id, String text) {
+      this.id = id;
+      this.text = text;
+   }
+
+   /**
+    * Remove HTML tags from the text and split it into sentences.
+    * The result is stored in this.sentences.
+    * @param sentenceSplitter splitter to use
+    * @param htmlStripper stripper to reuse, if null a new one is created
+    * @param buffer boundaries object to reuse, if null a new one is created
+    */
+   public void split (SentenceSplitter sentenceSplitter, HtmlStripper htmlStripper, SentenceBoundaries buffer) {
+      this.split(sentenceSplitter, htmlStripper, buffer, null);
+   }
+
+   /**
+    * Remove HTML tags from the text and split it into sentences,
+    * record the time of both stages.
+    * @param metrics (may be null)
+    */
+   public void split (SentenceSplitter sentenceSplitter, HtmlStripper htmlStripper, SentenceBoundaries buffer,
+         ExtractionMetrics metrics) {
+      if (htmlStripper == null) {
+         htmlStripper = new HtmlStripper();
+      }
+      long start = (metrics != null) ? System.nanoTime() : 0;
+      String cleanText = htmlStripper.strip(this.text);
+      long stripped = (metrics != null) ? System.nanoTime() : 0;
+      this.sentences = sentenceSplitter.split(cleanText, buffer);
+      this.sentences.mapOffsets(htmlStripper);
+      if (metrics != null) {
+         metrics.record(ExtractionMetrics.STRIP, stripped - start);
+         metrics.record(ExtractionMetrics.SPLIT, System.nanoTime() - stripped);
+      }
+   }
+
+   public String toString() {
+      return "Review " + id;
+   }
+
+}
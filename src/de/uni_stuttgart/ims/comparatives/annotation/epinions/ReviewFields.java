@@ -0,0 +1,341 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Read a review fields file written by ReviewFieldsWriter.
+ *
+ * The file is memory-mapped. Reviews are numbered from 0 in the order
+ * of the input, a review is found by its id (the part of the sentence id
+ * before the last '-') with findReview().
+ * A whole column (e.g., the rank of one feature for all reviews)
+ * can be read with getRankColumn().
+ *
+ * Can be used from several threads.
+ */
+public class ReviewFields implements Closeable {
+
+   private RandomAccessFile file;
+
+   private int numberReviews;
+   private int numberRanks;
+   private int numberFeatures;
+
+   private ByteBuffer[] sections = new ByteBuffer[ReviewFieldsWriter.NUMBER_SECTIONS];
+   private int idTableSize;
+
+   // Feature names, read when the file is opened (there are only a few)
+   private String[] featureNames;
+   private HashMap<String, Integer> featureIds = new HashMap<String, Integer>();
+
+
+   /**
+    * Open a review fields file.
+    * @param fileName
+    * @throws IOException if the file cannot be read or is not a review fields file
+    */
+   public ReviewFields (String fileName) throws IOException {
+      file = new RandomAccessFile(fileName, "r");
+      try {
+         if (file.length() < ReviewFieldsWriter.HEADER_LENGTH || file.readInt() != ReviewFieldsWriter.MAGIC) {
+            throw new IOException("Not a review fields file: " + fileName);
+         }
+         if (file.readInt() != ReviewFieldsWriter.VERSION) {
+            throw new IOException("Unknown version of review fields file: " + fileName);
+         }
+         numberReviews = file.readInt();
+         numberRanks = file.readInt();
+         numberFeatures = file.readInt();
+         file.readInt(); // pros
+         file.readInt(); // cons
+         long[] offsets = new long[ReviewFieldsWriter.NUMBER_SECTIONS + 1];
+         for (int i=0; i<ReviewFieldsWriter.NUMBER_SECTIONS; i++) {
+            offsets[i] = file.readLong();
+         }
+         offsets[ReviewFieldsWriter.NUMBER_SECTIONS] = file.length();
+
+         FileChannel channel = file.getChannel();
+         for (int i=0; i<ReviewFieldsWriter.NUMBER_SECTIONS; i++) {
+            long size = offsets[i+1] - offsets[i];
+            if (size < 0 || size > Integer.MAX_VALUE) {
+               throw new IOException("Invalid section in review fields file: " + i);
+            }
+            sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], size);
+         }
+         idTableSize = sections[ReviewFieldsWriter.SECTION_ID_TABLE].getInt(0);
+      } catch (IOException e) {
+         file.close();
+         throw e;
+      }
+
+      featureNames = new String[numberFeatures];
+      for (int i=0; i<numberFeatures; i++) {
+         featureNames[i] = string(ReviewFieldsWriter.SECTION_FEATURE_NAMES, i);
+         featureIds.put(featureNames[i], i);
+      }
+   }
+
+
+   public int getNumberReviews () {
+      return numberReviews;
+   }
+
+
+   /**
+    * Find a review by its id.
+    * @return the first review with this id, -1 if there is none
+    */
+   public int findReview (String id) {
+      ByteBuffer table = sections[ReviewFieldsWriter.SECTION_ID_TABLE];
+      int slot = BinaryCorpus.slot(id, idTableSize);
+      while (true) {
+         int review = table.getInt(4 + 4 * slot) - 1;
+         if (review < 0 || getReviewId(review).equals(id)) {
+            return review;
+         }
+         slot = (slot + 1) & (idTableSize - 1);
+      }
+   }
+
+
+   public String getReviewId (int review) {
+      return string(ReviewFieldsWriter.SECTION_IDS, review);
+   }
+
+   /**
+    * Title (empty if the review has none).
+    */
+   public String getTitle (int review) {
+      return string(ReviewFieldsWriter.SECTION_TITLES, review);
+   }
+
+   /**
+    * Date as in the input (empty if the review has none).
+    */
+   public String getDate (int review) {
+      return string(ReviewFieldsWriter.SECTION_DATES, review);
+   }
+
+
+   // Feature ranks
+
+
+   /**
+    * Names of all features, index is the feature id.
+    */
+   public String[] getFeatureNames () {
+      return featureNames.clone();
+   }
+
+
+   /**
+    * Id of a feature name, -1 if no review has this feature.
+    */
+   public int getFeatureId (String name) {
+      Integer id = featureIds.get(name);
+      return (id == null) ? -1 : id;
+   }
+
+
+   /**
+    * Number of features ranked in the review.
+    */
+   public int getNumberRanks (int review) {
+      return rankStart(review + 1) - rankStart(review);
+   }
+
+
+   /**
+    * Feature id of a rank of a review.
+    * @param review
+    * @param i number of the rank in the review, starting with 0
+    */
+   public int getFeatureId (int review, int i) {
+      return sections[ReviewFieldsWriter.SECTION_FEATURE_IDS].getInt(4 * (rankStart(review) + i));
+   }
+
+
+   /**
+    * Value of a rank of a review.
+    * @param review
+    * @param i number of the rank in the review, starting with 0
+    */
+   public float getRank (int review, int i) {
+      return sections[ReviewFieldsWriter.SECTION_RANKS].getFloat(4 * (rankStart(review) + i));
+   }
+
+
+   /**
+    * Rank of a feature in a review.
+    * @return rank, NaN if the review does not rank this feature
+    */
+   public float getRank (int review, String feature) {
+      int featureId = getFeatureId(feature);
+      for (int i=0; i<getNumberRanks(review); i++) {
+         if (getFeatureId(review, i) == featureId) {
+            return getRank(review, i);
+         }
+      }
+      return Float.NaN;
+   }
+
+
+   /**
+    * Rank of a feature in all reviews, NaN where a review does not rank it.
+    * @param feature feature id (see getFeatureId())
+    * @return one value per review
+    */
+   public float[] getRankColumn (int feature) {
+      float[] column = new float[numberReviews];
+      Arrays.fill(column, Float.NaN);
+      ByteBuffer featureIds = sections[ReviewFieldsWriter.SECTION_FEATURE_IDS];
+      ByteBuffer ranks = sections[ReviewFieldsWriter.SECTION_RANKS];
+      int review = 0;
+      for (int i=0; i<numberRanks; i++) {
+         while (rankStart(review + 1) <= i) {
+            review++;
+         }
+         if (featureIds.getInt(4 * i) == feature) {
+            column[review] = ranks.getFloat(4 * i);
+         }
+      }
+      return column;
+   }
+
+
+   // Pros and cons
+
+
+   public String[] getPros (int review) {
+      return strings(ReviewFieldsWriter.SECTION_PRO_STARTS, ReviewFieldsWriter.SECTION_PROS, review);
+   }
+
+   public String[] getCons (int review) {
+      return strings(ReviewFieldsWriter.SECTION_CON_STARTS, ReviewFieldsWriter.SECTION_CONS, review);
+   }
+
+
+   private String[] strings (int startSection, int stringSection, int review) {
+      int first = start(startSection, review);
+      String[] values = new String[start(startSection, review + 1) - first];
+      for (int i=0; i<values.length; i++) {
+         values[i] = string(stringSection, first + i);
+      }
+      return values;
+   }
+
+
+   private int rankStart (int review) {
+      return start(ReviewFieldsWriter.SECTION_RANK_STARTS, review);
+   }
+
+
+   private int start (int section, int index) {
+      return sections[section].getInt(4 * index);
+   }
+
+
+   /**
+    * String of a string column (offsets in section, data in section + 1).
+    */
+   private String string (int section, int index) {
+      ByteBuffer offsets = sections[section];
+      ByteBuffer data = sections[section + 1];
+      int begin = offsets.getInt(4 * index);
+      int end = offsets.getInt(4 * (index+1));
+      byte[] bytes = new byte[end - begin];
+      for (int i=0; i<bytes.length; i++) {
+         bytes[i] = data.get(begin + i);
+      }
+      return new String(bytes, BinaryCorpusWriter.UTF8);
+   }
+
+
+   public void close () throws IOException {
+      file.close();
+   }
+
+
+
+   /**
+    * Print the fields of reviews, one review per line:
+    * id \t title \t date \t feature=rank;... \t pro|... \t con|...
+    * @param args [1] review fields file
+    *    [2..] (optional) ids of the reviews to print, all reviews if none is given
+    */
+   public static void main (String[] args) throws IOException {
+      if (args.length < 1) {
+         System.err.println("Usage: ReviewFields <review fields file> [<review id>]*");
+         System.exit(1);
+      }
+      ReviewFields fields = new ReviewFields(args[0]);
+      BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, OutputFiles.ENCODING));
+      if (args.length == 1) {
+         for (int review=0; review<fields.getNumberReviews(); review++) {
+            fields.print(review, out);
+         }
+      } else {
+         for (int i=1; i<args.length; i++) {
+            int review = fields.findReview(args[i]);
+            if (review < 0) {
+               out.flush();
+               System.err.println("Review not found: " + args[i]);
+            } else {
+               fields.print(review, out);
+            }
+         }
+      }
+      out.flush();
+      fields.close();
+   }
+
+
+   private void print (int review, BufferedWriter out) throws IOException {
+      out.write(getReviewId(review));
+      out.write('\t');
+      out.write(getTitle(review));
+      out.write('\t');
+      out.write(getDate(review));
+      out.write('\t');
+      for (int i=0; i<getNumberRanks(review); i++) {
+         if (i > 0) {
+            out.write(';');
+         }
+         out.write(featureNames[getFeatureId(review, i)]);
+         out.write('=');
+         out.write(Float.toString(getRank(review, i)));
+      }
+      out.write('\t');
+      out.write(join(getPros(review)));
+      out.write('\t');
+      out.write(join(getCons(review)));
+      out.newLine();
+   }
+
+
+   private static String join (String[] values) {
+      StringBuilder sb = new StringBuilder();
+      for (int i=0; i<values.length; i++) {
+         if (i > 0) {
+            sb.append('|');
+         }
+         sb.append(values[i]);
+      }
+      return sb.toString();
+   }
+
+}
@@ -0,0 +1,297 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Write the fields of all reviews other than the text (title, date,
+ * feature ranks, pros, cons) to a columnar file (see ReviewFields).
+ * The rows are joined with the sentences by the review id.
+ *
+ * Each column is stored as one block: ranks as float arrays,
+ * feature names as ids into a dictionary (every name is stored once),
+ * Strings as UTF-8 data with an array of offsets.
+ * All columns are kept in memory in this form until close(),
+ * about the size of the file.
+ *
+ * File format (all numbers big endian):
+ * header:
+ *    int magic, int version,
+ *    int number of reviews, int number of ranks,
+ *    int number of feature names, int number of pros, int number of cons,
+ *    long offset of each section (in the order below)
+ * sections (string column: int offset per string + 1, then the UTF-8 data):
+ *    review ids (string column, 2 sections)
+ *    titles (string column, 2 sections)
+ *    dates (string column, 2 sections)
+ *    rank starts: int per review + 1, index of the first rank of the review
+ *    feature ids: int per rank, index into the feature names
+ *    ranks: float per rank (NaN if missing or not a number)
+ *    feature names (string column, 2 sections)
+ *    pro starts: int per review + 1, index of the first pro of the review
+ *    pros (string column, 2 sections)
+ *    con starts: int per review + 1
+ *    cons (string column, 2 sections)
+ *    review id table: int table size (power of 2), then int per slot,
+ *       review + 1 or 0 if empty (open addressing, see BinaryCorpus.idTable())
+ *
+ * Not thread-safe, all reviews must be written from the same thread.
+ */
+public class ReviewFieldsWriter implements Closeable {
+
+   static final int MAGIC = 0x45504946;
+   static final int VERSION = 1;
+
+   // First section of each column, a string column has two
+   // (offsets, then data at the next section)
+   static final int SECTION_IDS = 0;
+   static final int SECTION_TITLES = 2;
+   static final int SECTION_DATES = 4;
+   static final int SECTION_RANK_STARTS = 6;
+   static final int SECTION_FEATURE_IDS = 7;
+   static final int SECTION_RANKS = 8;
+   static final int SECTION_FEATURE_NAMES = 9;
+   static final int SECTION_PRO_STARTS = 11;
+   static final int SECTION_PROS = 12;
+   static final int SECTION_CON_STARTS = 14;
+   static final int SECTION_CONS = 15;
+   static final int SECTION_ID_TABLE = 17;
+   static final int NUMBER_SECTIONS = 18;
+   static final int HEADER_LENGTH = 7 * 4 + NUMBER_SECTIONS * 8;
+
+   private DataOutputStream out;
+
+   private StringColumn ids = new StringColumn();
+   private StringColumn titles = new StringColumn();
+   private StringColumn dates = new StringColumn();
+
+   private IntColumn rankStarts = new IntColumn();
+   private IntColumn featureIds = new IntColumn();
+   private float[] ranks = new float[1024];
+   private HashMap<String, Integer> featureDictionary = new HashMap<String, Integer>();
+   private StringColumn featureNames = new StringColumn();
+
+   private IntColumn proStarts = new IntColumn();
+   private StringColumn pros = new StringColumn();
+   private IntColumn conStarts = new IntColumn();
+   private StringColumn cons = new StringColumn();
+
+   // Review ids for the id table
+   private ArrayList<String> reviewIds = new ArrayList<String>();
+
+
+   /**
+    * Create the file, it is written by close().
+    * @param fileName file to write (an existing file is overwritten)
+    * @throws IOException if the file cannot be created
+    */
+   public ReviewFieldsWriter (String fileName) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+   }
+
+
+   /**
+    * Add the fields of a review.
+    * @param review review with id and fields (missing fields may be null)
+    */
+   public void write (Review review) {
+      ids.add(review.id);
+      reviewIds.add(review.id);
+      titles.add(review.title);
+      dates.add(review.date);
+
+      rankStarts.add(featureIds.size);
+      if (review.features != null) {
+         for (int i=0; i<review.features.length; i++) {
+            if (featureIds.size == ranks.length) {
+               ranks = Arrays.copyOf(ranks, ranks.length * 2);
+            }
+            ranks[featureIds.size] = review.ranks[i];
+            featureIds.add(featureId(review.features[i]));
+         }
+      }
+
+      proStarts.add(pros.size());
+      if (review.pros != null) {
+         for (String pro : review.pros) {
+            pros.add(pro);
+         }
+      }
+      conStarts.add(cons.size());
+      if (review.cons != null) {
+         for (String con : review.cons) {
+            cons.add(con);
+         }
+      }
+   }
+
+
+   private int featureId (String feature) {
+      Integer id = featureDictionary.get(feature);
+      if (id == null) {
+         id = featureDictionary.size();
+         featureDictionary.put(feature, id);
+         featureNames.add(feature);
+      }
+      return id;
+   }
+
+
+   /**
+    * Write the file.
+    */
+   public void close () throws IOException {
+      if (out == null)
+         return;
+      int numberReviews = reviewIds.size();
+      rankStarts.add(featureIds.size);
+      proStarts.add(pros.size());
+      conStarts.add(cons.size());
+
+      try {
+         long[] sections = new long[NUMBER_SECTIONS];
+         long position = HEADER_LENGTH;
+         long[] sizes = new long[NUMBER_SECTIONS];
+         ids.sizes(sizes, SECTION_IDS);
+         titles.sizes(sizes, SECTION_TITLES);
+         dates.sizes(sizes, SECTION_DATES);
+         sizes[SECTION_RANK_STARTS] = 4L * rankStarts.size;
+         sizes[SECTION_FEATURE_IDS] = 4L * featureIds.size;
+         sizes[SECTION_RANKS] = 4L * featureIds.size;
+         featureNames.sizes(sizes, SECTION_FEATURE_NAMES);
+         sizes[SECTION_PRO_STARTS] = 4L * proStarts.size;
+         pros.sizes(sizes, SECTION_PROS);
+         sizes[SECTION_CON_STARTS] = 4L * conStarts.size;
+         cons.sizes(sizes, SECTION_CONS);
+         // The id table is the last section, it ends at the end of the file
+         for (int i=0; i<NUMBER_SECTIONS; i++) {
+            sections[i] = position;
+            position += sizes[i];
+         }
+
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(numberReviews);
+         out.writeInt(featureIds.size);
+         out.writeInt(featureNames.size());
+         out.writeInt(pros.size());
+         out.writeInt(cons.size());
+         for (long section : sections) {
+            out.writeLong(section);
+         }
+
+         // In the order of the sections
+         ids.write(out);
+         titles.write(out);
+         dates.write(out);
+         rankStarts.write(out);
+         featureIds.write(out);
+         for (int i=0; i<featureIds.size; i++) {
+            out.writeFloat(ranks[i]);
+         }
+         featureNames.write(out);
+         proStarts.write(out);
+         pros.write(out);
+         conStarts.write(out);
+         cons.write(out);
+         writeIdTable(out);
+      } finally {
+         out.close();
+         out = null;
+      }
+   }
+
+
+   private void writeIdTable (DataOutputStream out) throws IOException {
+      int[] table = BinaryCorpus.idTable(reviewIds);
+      out.writeInt(table.length);
+      for (int i=0; i<table.length; i++) {
+         out.writeInt(table[i]);
+      }
+   }
+
+
+
+   /**
+    * Growing array of ints.
+    */
+   private static class IntColumn {
+
+      private int[] values = new int[1024];
+      private int size = 0;
+
+      void add (int value) {
+         if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+         }
+         values[size++] = value;
+      }
+
+      void write (DataOutputStream out) throws IOException {
+         for (int i=0; i<size; i++) {
+            out.writeInt(values[i]);
+         }
+      }
+   }
+
+
+   /**
+    * Strings as UTF-8 data and offsets, null is stored as empty String.
+    */
+   private static class StringColumn {
+
+      private IntColumn offsets = new IntColumn();
+      private byte[] data = new byte[4096];
+      private int length = 0;
+
+      StringColumn () {
+         offsets.add(0);
+      }
+
+      void add (String value) {
+         if (value != null) {
+            byte[] bytes = value.getBytes(BinaryCorpusWriter.UTF8);
+            if (length + (long) bytes.length > Integer.MAX_VALUE) {
+               throw new IllegalStateException("Column too large for review fields file");
+            }
+            if (length + bytes.length > data.length) {
+               data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE,
+                     Math.max(2L * data.length, length + bytes.length)));
+            }
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+         }
+         offsets.add(length);
+      }
+
+      int size () {
+         return offsets.size - 1;
+      }
+
+      /**
+       * Size of the offsets and of the data, in the sections from first on.
+       */
+      void sizes (long[] sizes, int first) {
+         sizes[first] = 4L * offsets.size;
+         sizes[first + 1] = length;
+      }
+
+      void write (DataOutputStream out) throws IOException {
+         offsets.write(out);
+         out.write(data, 0, length);
+      }
+   }
+
+}
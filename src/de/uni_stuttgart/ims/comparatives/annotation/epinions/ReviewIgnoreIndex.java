@@ -0,0 +1,286 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+
+/**
+ * Review ids that should be ignored.
+ *
+ * Numeric ids (as in the Epinions data) are kept in a hash set of
+ * primitive ints, all other ids in a hash set of Strings,
+ * so lookup takes constant time regardless of the number of ids.
+ * Additionally, ranges of numeric ids can be ignored. Ranges are kept
+ * sorted and merged (overlapping and adjacent ranges are joined),
+ * so a range is found with binary search.
+ *
+ * An id matches only if it is exactly the same String as given,
+ * i.e., "020" does not match "20".
+ *
+ * File format: 1 entry per line, leading and trailing whitespace is removed,
+ * empty lines are skipped. An entry is either an id or a range
+ * of numeric ids "from-to" (both inclusive, from must not be larger than to).
+ */
+public class ReviewIgnoreIndex {
+
+   private IntHashSet numericIds = new IntHashSet();
+   private HashSet<String> otherIds = new HashSet<String>();
+
+   // Ranges [from, to], both inclusive, packed as from << 32 | to,
+   // sorted and merged except while a file is loaded
+   private long[] ranges = new long[0];
+   private int numberRanges = 0;
+
+
+   /**
+    * Ignore all ids in the list.
+    * @param ids
+    */
+   public void addAll (Collection<String> ids) {
+      for (String id : ids) {
+         this.add(id);
+      }
+   }
+
+
+   /**
+    * Ignore this id.
+    * @param id
+    */
+   public void add (String id) {
+      int number = parseId(id);
+      if (number >= 0) {
+         numericIds.add(number);
+      } else {
+         otherIds.add(id);
+      }
+   }
+
+
+   /**
+    * Ignore all numeric ids between from and to (both inclusive).
+    * To add many ranges, use load(), which sorts them only once.
+    * @param from
+    * @param to
+    */
+   public void addRange (int from, int to) {
+      if (from < 0 || from > to)
+         throw new IllegalArgumentException("Empty range of ids: " + from + "-" + to);
+      this.appendRange(from, to);
+      this.mergeRanges();
+   }
+
+
+   private void appendRange (int from, int to) {
+      if (numberRanges == ranges.length) {
+         ranges = Arrays.copyOf(ranges, Math.max(8, ranges.length * 2));
+      }
+      ranges[numberRanges++] = ((long) from << 32) | to;
+   }
+
+
+   /**
+    * Sort the ranges and join overlapping and adjacent ones.
+    */
+   private void mergeRanges () {
+      Arrays.sort(ranges, 0, numberRanges);
+      int merged = 0;
+      for (int i=0; i<numberRanges; i++) {
+         int from = (int) (ranges[i] >>> 32);
+         int to = (int) ranges[i];
+         if (merged > 0 && from <= (int) ranges[merged-1] + 1) {
+            int previousTo = (int) ranges[merged-1];
+            if (to > previousTo) {
+               ranges[merged-1] = (ranges[merged-1] & 0xFFFFFFFF00000000L) | to;
+            }
+         } else {
+            ranges[merged++] = ranges[i];
+         }
+      }
+      numberRanges = merged;
+   }
+
+
+   /**
+    * Read ids and ranges of ids to ignore from a file (UTF-8).
+    * If there is an error, the entries before it are kept.
+    * @param fileName
+    * @throws IOException if the file cannot be read or contains
+    *    a range where from is larger than to
+    */
+   public void load (String fileName) throws IOException {
+      BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+      try {
+         int lineNumber = 1;
+         String strLine = br.readLine();
+         while (strLine != null) {
+            strLine = strLine.trim();
+            int dash = strLine.indexOf('-');
+            int from = (dash > 0) ? parseId(strLine.substring(0, dash)) : -1;
+            int to = (dash > 0) ? parseId(strLine.substring(dash+1)) : -1;
+            if (from >= 0 && to >= 0) {
+               if (from > to)
+                  throw new IOException("Empty range of ids in line " + lineNumber + " of " + fileName + ": " + strLine);
+               this.appendRange(from, to);
+            } else if (strLine.length() > 0) {
+               this.add(strLine);
+            }
+            strLine = br.readLine();
+            lineNumber += 1;
+         }
+      } finally {
+         br.close();
+         this.mergeRanges();
+      }
+   }
+
+
+   /**
+    * Check if the review with this id should be ignored.
+    * @param id review id, may be a buffer that is still in use,
+    *    no String is created for the check
+    * @return true if the id has been added or is in one of the ranges
+    */
+   public boolean contains (CharSequence id) {
+      int number = parseId(id);
+      if (number >= 0) {
+         if (numericIds.contains(number))
+            return true;
+         // Binary search in the sorted, disjoint ranges
+         int low = 0;
+         int high = numberRanges - 1;
+         while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (number < (int) (ranges[middle] >>> 32)) {
+               high = middle - 1;
+            } else if (number > (int) ranges[middle]) {
+               low = middle + 1;
+            } else {
+               return true;
+            }
+         }
+         return false;
+      }
+      if (otherIds.isEmpty())
+         return false;
+      return otherIds.contains(id.toString());
+   }
+
+
+   /**
+    * Number of single ids (without ranges).
+    */
+   public int size () {
+      return numericIds.size() + otherIds.size();
+   }
+
+
+   /**
+    * Number of ranges of ids (after joining overlapping ranges).
+    */
+   public int numberRanges () {
+      return numberRanges;
+   }
+
+
+   public String toString() {
+      return size() + " ids and " + numberRanges() + " ranges of ids";
+   }
+
+
+   /**
+    * Parse an id that consists only of digits, without leading zeros,
+    * and fits into an int.
+    * @return the number or -1 if the id is not such a number
+    */
+   private static int parseId (CharSequence id) {
+      int length = id.length();
+      if (length == 0 || length > 9 || (length > 1 && id.charAt(0) == '0'))
+         return -1;
+      int number = 0;
+      for (int i=0; i<length; i++) {
+         char c = id.charAt(i);
+         if (c < '0' || c > '9')
+            return -1;
+         number = number * 10 + (c - '0');
+      }
+      return number;
+   }
+
+
+
+   /**
+    * Hash set of non-negative ints with open addressing.
+    */
+   private static class IntHashSet {
+
+      private static final int FREE = -1;
+
+      private int[] slots;
+      private int size = 0;
+
+      public IntHashSet () {
+         slots = new int[64];
+         Arrays.fill(slots, FREE);
+      }
+
+      public int size () {
+         return size;
+      }
+
+      public boolean contains (int key) {
+         int mask = slots.length - 1;
+         int i = hash(key) & mask;
+         while (slots[i] != FREE) {
+            if (slots[i] == key)
+               return true;
+            i = (i + 1) & mask;
+         }
+         return false;
+      }
+
+      public void add (int key) {
+         if (contains(key))
+            return;
+         // Keep load factor below 0.5
+         if ((size + 1) * 2 > slots.length) {
+            int[] oldSlots = slots;
+            slots = new int[oldSlots.length * 2];
+            Arrays.fill(slots, FREE);
+            size = 0;
+            for (int oldKey : oldSlots) {
+               if (oldKey != FREE)
+                  insert(oldKey);
+            }
+         }
+         insert(key);
+      }
+
+      private void insert (int key) {
+         int mask = slots.length - 1;
+         int i = hash(key) & mask;
+         while (slots[i] != FREE) {
+            i = (i + 1) & mask;
+         }
+         slots[i] = key;
+         size += 1;
+      }
+
+      private static int hash (int key) {
+         int h = key * 0x9E3779B9;
+         return h ^ (h >>> 16);
+      }
+
+   }
+
+}
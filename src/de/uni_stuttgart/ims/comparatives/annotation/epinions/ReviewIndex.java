@@ -0,0 +1,211 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+
+/**
+ * Index of the reviews in the output files of a run:
+ * review id -> hash of the text -> position of the output in both files.
+ * Used for incremental runs (see PreviousOutput), where the output of
+ * unchanged reviews is copied instead of splitting them again.
+ *
+ * File format (UTF-8):
+ * # splitter=name texts=true|false
+ * id \t text length \t text hash (hex) \t offset sentences \t length sentences
+ *    \t offset texts \t length texts \t number of sentences
+ * Offsets and lengths are in bytes. If an id occurs several times,
+ * the last review with this id is kept.
+ */
+public class ReviewIndex {
+
+   private static final String HEADER = "# splitter=";
+   private static final String TEXTS = " texts=";
+
+   /**
+    * Position of one review in the output files.
+    */
+   public static class Entry {
+      public String id;
+      public int textLength;
+      public long textHash;
+      public long sentencesOffset;
+      public int sentencesLength;
+      public long textsOffset;
+      public int textsLength;
+      public int numberSentences;
+   }
+
+   private String splitterName;
+   private boolean hasTexts;
+   private HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+
+   /**
+    * Empty index.
+    * @param splitterName sentence splitter used for the output
+    * @param hasTexts true if the texts file is written
+    */
+   public ReviewIndex (String splitterName, boolean hasTexts) {
+      this.splitterName = splitterName;
+      this.hasTexts = hasTexts;
+   }
+
+
+   /**
+    * Name of the index file for this output file.
+    * @param outputSentences name of the output file for sentences
+    */
+   public static String getFileName (String outputSentences) {
+      return outputSentences + ".index";
+   }
+
+
+   /**
+    * Hash of a review text (64 bit FNV-1a over the characters).
+    * Together with the length of the text, this is used to decide
+    * if a review has changed.
+    */
+   public static long hash (CharSequence text) {
+      long hash = 0xcbf29ce484222325L;
+      for (int i=0; i<text.length(); i++) {
+         hash ^= text.charAt(i);
+         hash *= 0x100000001b3L;
+      }
+      return hash;
+   }
+
+
+   /**
+    * True if the output was made with the same settings,
+    * i.e., the output of a review can be copied.
+    */
+   public boolean isCompatible (String splitterName, boolean hasTexts) {
+      return this.splitterName.equals(splitterName) && this.hasTexts == hasTexts;
+   }
+
+
+   /**
+    * Entry for this review id, null if there is none.
+    */
+   public Entry get (String id) {
+      return entries.get(id);
+   }
+
+
+   /**
+    * Add an entry, replaces an entry with the same id.
+    * Ids that contain tabs or line breaks are not added.
+    */
+   public void add (Entry entry) {
+      if (entry.id.indexOf('\t') >= 0 || entry.id.indexOf('\n') >= 0 || entry.id.indexOf('\r') >= 0)
+         return;
+      entries.put(entry.id, entry);
+   }
+
+
+   /**
+    * Number of reviews in the index.
+    */
+   public int size () {
+      return entries.size();
+   }
+
+
+   /**
+    * Read an index from a file.
+    * @param fileName
+    * @throws IOException if the file cannot be read or has the wrong format
+    */
+   public static ReviewIndex load (String fileName) throws IOException {
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+      try {
+         String line = in.readLine();
+         int texts = (line == null) ? -1 : line.indexOf(TEXTS);
+         if (line == null || !line.startsWith(HEADER) || texts < 0) {
+            throw new IOException("Invalid index file " + fileName + ", header missing");
+         }
+         ReviewIndex index = new ReviewIndex(line.substring(HEADER.length(), texts),
+               Boolean.parseBoolean(line.substring(texts + TEXTS.length())));
+
+         int lineNumber = 1;
+         while ((line = in.readLine()) != null) {
+            lineNumber += 1;
+            String[] parts = line.split("\t");
+            if (parts.length != 8) {
+               throw new IOException("Invalid index file " + fileName + ", line " + lineNumber);
+            }
+            try {
+               Entry entry = new Entry();
+               entry.id = parts[0];
+               entry.textLength = Integer.parseInt(parts[1]);
+               entry.textHash = Long.parseUnsignedLong(parts[2], 16);
+               entry.sentencesOffset = Long.parseLong(parts[3]);
+               entry.sentencesLength = Integer.parseInt(parts[4]);
+               entry.textsOffset = Long.parseLong(parts[5]);
+               entry.textsLength = Integer.parseInt(parts[6]);
+               entry.numberSentences = Integer.parseInt(parts[7]);
+               index.add(entry);
+            } catch (NumberFormatException e) {
+               throw new IOException("Invalid index file " + fileName + ", line " + lineNumber);
+            }
+         }
+         return index;
+      } finally {
+         in.close();
+      }
+   }
+
+
+   /**
+    * Write the index to a file.
+    * It is first written to a temporary file that then replaces the old index.
+    * @param fileName
+    * @throws IOException
+    */
+   public void save (String fileName) throws IOException {
+      File temporary = new File(fileName + ".tmp");
+      BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+      try {
+         out.write(HEADER + splitterName + TEXTS + hasTexts);
+         out.newLine();
+         for (Entry entry : entries.values()) {
+            out.write(entry.id);
+            out.write('\t');
+            out.write(Integer.toString(entry.textLength));
+            out.write('\t');
+            out.write(Long.toHexString(entry.textHash));
+            out.write('\t');
+            out.write(Long.toString(entry.sentencesOffset));
+            out.write('\t');
+            out.write(Integer.toString(entry.sentencesLength));
+            out.write('\t');
+            out.write(Long.toString(entry.textsOffset));
+            out.write('\t');
+            out.write(Integer.toString(entry.textsLength));
+            out.write('\t');
+            out.write(Integer.toString(entry.numberSentences));
+            out.newLine();
+         }
+      } finally {
+         out.close();
+      }
+      Files.move(temporary.toPath(), new File(fileName).toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+   }
+
+}
@@ -0,0 +1,424 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import de.uni_stuttgart.ims.comparatives.nlp.CueMatcher;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
+
+
+/**
+ * Write reviews that have been split into sentences
+ * to the output files.
+ *
+ * Sentences file, one sentence per line:
+ * id-n \t sentence tokenized
+ *
+ * Texts file (optional), reviews separated by an empty line:
+ * id\n
+ * sentence 1\n
+ * ...
+ * sentence n\n
+ * \n
+ *
+ * The output may be split into several files (see ShardedOutput).
+ *
+ * Binary corpus file (optional), see BinaryCorpusWriter.
+ *
+ * Review fields file (optional), see ReviewFieldsWriter.
+ *
+ * Comparative cues (optional, see CueMatcher): sentences with a cue are
+ * candidates. The cues are added as third column to the sentences file
+ * (id-n \t sentence tokenized \t cue|cue|..., empty if there is none),
+ * or the candidates are written to their own file in this format
+ * and the sentences file is not changed.
+ *
+ * In incremental runs (see PreviousOutput), the output of unchanged reviews
+ * is copied from the previous output, and the position of every review
+ * in the output files is recorded in an index.
+ *
+ * Not thread-safe, all reviews must be written from the same thread
+ * in the order in which they should appear in the output.
+ */
+public class ReviewWriter {
+
+   // Output files
+   private BufferedWriter outSentences;
+   private BufferedWriter outText;
+   private BinaryCorpusWriter outBinary;
+   private ReviewFieldsWriter outFields;
+   private ShardedOutput shards;
+
+   // Time of writing and number of sentences (optional)
+   private ExtractionMetrics metrics = null;
+
+   // Comparative cues (optional)
+   private CueMatcher cueMatcher = null;
+   private BufferedWriter outCandidates = null;
+   private ArrayList<String> cuesFound = new ArrayList<String>();
+
+   // Debug/bookkeeping
+   private int numberSentences = 0;
+   private int numberCandidates = 0;
+
+   // Checkpoints (optional)
+   private CheckpointWriter checkpointWriter = null;
+
+   // Incremental runs (optional)
+   private ReviewIndex index = null;
+   private PreviousOutput previousOutput = null;
+   // Bytes written to the output files, only counted with an index
+   private Charset charset = OutputFiles.ENCODING;
+   private long sentencesPosition = 0;
+   private long textsPosition = 0;
+
+
+   /**
+    * Output complete texts of reviews to this file.
+    * @param outputFile (may be null)
+    */
+   public void setOutputTexts(BufferedWriter outputFile) {
+      this.outText = outputFile;
+   }
+
+
+   /**
+    * Output all sentences of reviews to this file.
+    * @param outputFile (may be null)
+    */
+   public void setOutputSentences(BufferedWriter outputFile) {
+      this.outSentences = outputFile;
+   }
+
+
+   /**
+    * Record the time of writing each review and the number of sentences.
+    * @param metrics (may be null)
+    */
+   public void setMetrics(ExtractionMetrics metrics) {
+      this.metrics = metrics;
+   }
+
+
+   /**
+    * Output the other fields of all reviews to this columnar file.
+    * @param outputFile (may be null)
+    */
+   public void setOutputFields(ReviewFieldsWriter outputFile) {
+      this.outFields = outputFile;
+   }
+
+
+   /**
+    * Output sentences and texts to several files.
+    * The files of the shard of each review are used instead of
+    * the files given with setOutputSentences() and setOutputTexts().
+    * @param shards (may be null)
+    */
+   public void setShardedOutput(ShardedOutput shards) {
+      this.shards = shards;
+   }
+
+
+   /**
+    * Output all sentences of reviews to this binary corpus file.
+    * Cannot be used in incremental runs (the sentences of copied reviews are not known).
+    * @param outputFile (may be null)
+    */
+   public void setOutputBinary(BinaryCorpusWriter outputFile) {
+      this.outBinary = outputFile;
+   }
+
+
+   /**
+    * Find comparative cues in each sentence.
+    * Cannot be used in incremental runs (copied reviews are not matched).
+    * @param cueMatcher lexicon of cues (may be null)
+    * @param outputFile file for the candidate sentences,
+    *    if null the cues are added to the sentences file
+    */
+   public void setCueMatcher(CueMatcher cueMatcher, BufferedWriter outputFile) {
+      this.cueMatcher = cueMatcher;
+      this.outCandidates = outputFile;
+   }
+
+
+   /**
+    * Save checkpoints with this writer (see writeCheckpoint()).
+    * @param checkpointWriter (may be null)
+    */
+   public void setCheckpointWriter(CheckpointWriter checkpointWriter) {
+      this.checkpointWriter = checkpointWriter;
+   }
+
+
+   /**
+    * Record the position of all reviews in this index,
+    * copy the output of unchanged reviews from the previous output.
+    * Output files must be empty at the start.
+    * @param index new index (may be null)
+    * @param previousOutput output of the previous run (may be null)
+    */
+   public void setIndex(ReviewIndex index, PreviousOutput previousOutput) {
+      this.index = index;
+      this.previousOutput = previousOutput;
+   }
+
+
+   /**
+    * Number of sentences written so far.
+    */
+   public int getNumberSentences() {
+      return numberSentences;
+   }
+
+
+   /**
+    * Number of sentences with comparative cues written so far.
+    */
+   public int getNumberCandidates() {
+      return numberCandidates;
+   }
+
+
+   /**
+    * Continue counting sentences from a checkpoint.
+    * @param numberSentences number of sentences written before
+    */
+   public void setNumberSentences(int numberSentences) {
+      this.numberSentences = numberSentences;
+   }
+
+
+   /**
+    * Save a checkpoint. All reviews before the checkpoint must have been written.
+    * The output files are flushed first, so their length is known.
+    * @param checkpoint checkpoint without output lengths and number of sentences
+    */
+   public void writeCheckpoint (Checkpoint checkpoint) {
+      if (checkpointWriter == null)
+         return;
+      try {
+         if (outText != null) {
+            outText.flush();
+         }
+         if (outSentences != null) {
+            outSentences.flush();
+         }
+         checkpoint.numberSentences = numberSentences;
+         checkpointWriter.save(checkpoint);
+      } catch (IOException e) {
+         System.out.println("Error when writing checkpoint: " + e.getMessage());
+      }
+   }
+
+
+   /**
+    * Write all sentences of a review that has been split.
+    * The tokens are written directly, no String is created for a sentence.
+    * @param review review with id and sentences
+    * @throws IOException if the output file of the shard of the review cannot be created
+    */
+   public void write (Review review) throws IOException {
+      if (metrics == null) {
+         this.writeReview(review);
+         return;
+      }
+      long start = System.nanoTime();
+      int before = numberSentences;
+      this.writeReview(review);
+      metrics.record(ExtractionMetrics.WRITE, System.nanoTime() - start);
+      metrics.sentences(numberSentences - before);
+   }
+
+
+   private void writeReview (Review review) throws IOException {
+      if (shards != null) {
+         // Without the files of the shard nothing can be written, stop the run
+         try {
+            shards.select(review.id);
+         } catch (IOException e) {
+            throw new IOException("Error when creating output file: " + e.getMessage(), e);
+         }
+         outSentences = shards.getSentences();
+         outText = shards.getTexts();
+      }
+      if (outFields != null) {
+         outFields.write(review);
+      }
+      if (review.previous != null) {
+         this.copy(review);
+         return;
+      }
+      SentenceBoundaries sentences = review.sentences;
+      long sentencesStart = sentencesPosition;
+      long textsStart = textsPosition;
+      try {
+         if (outText != null) {
+            outText.write(review.id);
+            outText.newLine();
+         }
+         for (int s=0; s<sentences.getNumberSentences(); s++) {
+            numberSentences += 1; // all reviews
+            boolean candidate = false;
+            if (cueMatcher != null) {
+               cuesFound.clear();
+               candidate = cueMatcher.match(sentences, s, cuesFound) > 0;
+               if (candidate) {
+                  numberCandidates += 1;
+               }
+            }
+            if (outText != null) {
+               this.writeTokens(outText, sentences, s);
+               outText.newLine();
+            }
+            if (outSentences != null) {
+               this.writeSentence(outSentences, review.id, sentences, s, cueMatcher != null && outCandidates == null);
+            }
+            if (candidate && outCandidates != null) {
+               this.writeSentence(outCandidates, review.id, sentences, s, true);
+            }
+         }
+         if (outText != null) {
+            outText.newLine();
+         }
+         if (outBinary != null) {
+            outBinary.write(review.id, sentences);
+         }
+         if (shards != null) {
+            shards.addSentences(sentences.getNumberSentences());
+         }
+      } catch (IOException e) {
+         System.out.println("Error when writing to output file: " + e.getMessage());
+      }
+
+      if (index != null) {
+         this.countBytes(review);
+         this.addToIndex(review, sentencesStart, textsStart, sentences.getNumberSentences());
+      }
+   }
+
+
+   /**
+    * Copy the output of an unchanged review from the previous output.
+    */
+   private void copy (Review review) {
+      ReviewIndex.Entry previous = review.previous;
+      long sentencesStart = sentencesPosition;
+      long textsStart = textsPosition;
+      try {
+         if (outText != null) {
+            outText.write(previousOutput.readTexts(previous));
+         }
+         if (outSentences != null) {
+            outSentences.write(previousOutput.readSentences(previous));
+         }
+      } catch (IOException e) {
+         System.out.println("Error when writing to output file: " + e.getMessage());
+      }
+      numberSentences += previous.numberSentences;
+      sentencesPosition += previous.sentencesLength;
+      textsPosition += previous.textsLength;
+      this.addToIndex(review, sentencesStart, textsStart, previous.numberSentences);
+   }
+
+
+   private void addToIndex (Review review, long sentencesStart, long textsStart, int numberSentences) {
+      ReviewIndex.Entry entry = new ReviewIndex.Entry();
+      entry.id = review.id;
+      entry.textLength = review.text.length();
+      entry.textHash = review.hash;
+      entry.sentencesOffset = sentencesStart;
+      entry.sentencesLength = (int) (sentencesPosition - sentencesStart);
+      entry.textsOffset = textsStart;
+      entry.textsLength = (int) (textsPosition - textsStart);
+      entry.numberSentences = numberSentences;
+      index.add(entry);
+   }
+
+
+   /**
+    * Add the number of bytes that write() has written for this review
+    * to the positions in the output files.
+    */
+   private void countBytes (Review review) {
+      SentenceBoundaries sentences = review.sentences;
+      int lineSeparator = EpinionsCleaningReader.LINE_SEPARATOR.length();
+      int idLength = byteLength(review.id);
+      if (outText != null) {
+         textsPosition += idLength + lineSeparator;
+      }
+      for (int s=0; s<sentences.getNumberSentences(); s++) {
+         long tokens = 0;
+         for (int i=sentences.getFirstToken(s); i<sentences.getFirstToken(s+1); i++) {
+            tokens += byteLength(sentences.getTokenValue(i)) + 1;
+         }
+         if (outText != null) {
+            textsPosition += tokens + lineSeparator;
+         }
+         if (outSentences != null) {
+            sentencesPosition += idLength + 1 + Integer.toString(s+1).length() + 1 + tokens + lineSeparator;
+         }
+      }
+      if (outText != null) {
+         textsPosition += lineSeparator;
+      }
+   }
+
+
+   /**
+    * Number of bytes of the String in the output encoding.
+    */
+   private int byteLength (String s) {
+      for (int i=0; i<s.length(); i++) {
+         if (s.charAt(i) >= 0x80) {
+            return s.getBytes(charset).length;
+         }
+      }
+      return s.length();
+   }
+
+
+   /**
+    * Write one line of the sentences file.
+    * @param cues add the cues found as third column
+    */
+   private void writeSentence (BufferedWriter out, String id, SentenceBoundaries sentences, int sentence,
+         boolean cues) throws IOException {
+      out.write(id);
+      out.write('-');
+      out.write(Integer.toString(sentence+1));
+      out.write('\t');
+      this.writeTokens(out, sentences, sentence);
+      if (cues) {
+         out.write('\t');
+         for (int i=0; i<cuesFound.size(); i++) {
+            if (i > 0) {
+               out.write('|');
+            }
+            out.write(cuesFound.get(i));
+         }
+      }
+      out.newLine();
+   }
+
+
+   /**
+    * Write the tokens of a sentence, each token followed by a space.
+    */
+   private void writeTokens (BufferedWriter out, SentenceBoundaries sentences, int sentence)
+         throws IOException {
+      for (int i=sentences.getFirstToken(sentence); i<sentences.getFirstToken(sentence+1); i++) {
+         out.write(sentences.getTokenValue(i));
+         out.write(' ');
+      }
+   }
+
+}
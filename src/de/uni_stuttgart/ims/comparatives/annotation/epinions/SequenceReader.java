@@ -0,0 +1,54 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.IOException;
+import java.io.Reader;
+
+
+/**
+ * Read several readers one after the other,
+ * like java.io.SequenceInputStream for characters.
+ * Used to put the start of the XML document in front of the input
+ * when resuming from a checkpoint.
+ */
+public class SequenceReader extends Reader {
+
+   private Reader[] readers;
+   private int current = 0;
+
+
+   /**
+    * @param readers read in this order, all are closed with close()
+    */
+   public SequenceReader (Reader... readers) {
+      this.readers = readers;
+   }
+
+
+   @Override
+   public int read (char[] cbuf, int off, int len) throws IOException {
+      if (len == 0)
+         return 0;
+      while (current < readers.length) {
+         int n = readers[current].read(cbuf, off, len);
+         if (n > 0)
+            return n;
+         if (n == -1)
+            current++;
+      }
+      return -1;
+   }
+
+
+   @Override
+   public void close () throws IOException {
+      for (Reader reader : readers) {
+         reader.close();
+      }
+   }
+
+}
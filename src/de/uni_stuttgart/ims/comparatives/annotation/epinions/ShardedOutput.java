@@ -0,0 +1,191 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Locale;
+
+
+/**
+ * Output split into several files (shards), so the output
+ * can be read by several jobs in parallel.
+ * All output of one review (sentences and text) is in the same shard.
+ *
+ * Shard i of file name.txt is called name.txt.0000i
+ * (with gzip name.txt.0000i.gz).
+ *
+ * Two ways to select the shard of a review:
+ * - by review id: n shards, shard = String.hashCode() of the id modulo n
+ *    (see getShard()), so a review can be found without reading all shards
+ * - by number of sentences: a new shard is started when the current
+ *    shard has at least n sentences, the shards are in the order of the input
+ */
+public class ShardedOutput implements Closeable {
+
+   private OutputFiles files;
+   private String sentencesFile;
+   private String textsFile;
+
+   private int numberShards;
+   private int sentencesPerShard;
+
+   // Open shards (all with the hash, only the current one otherwise)
+   private BufferedWriter[] sentences;
+   private BufferedWriter[] texts;
+   private int shard = 0;
+   private int sentencesInShard = 0;
+
+
+   private ShardedOutput (OutputFiles files, String sentencesFile, String textsFile,
+         int numberShards, int sentencesPerShard) {
+      this.files = files;
+      this.sentencesFile = sentencesFile;
+      this.textsFile = textsFile;
+      this.numberShards = numberShards;
+      this.sentencesPerShard = sentencesPerShard;
+   }
+
+
+   /**
+    * Shards by review id.
+    * All shards are created at once (some may stay empty).
+    * @param files to open the files
+    * @param sentencesFile name of the sentences file
+    * @param textsFile name of the texts file (may be null)
+    * @param numberShards number of shards
+    * @throws IOException if a file cannot be created
+    */
+   public static ShardedOutput byReviewId (OutputFiles files, String sentencesFile, String textsFile,
+         int numberShards) throws IOException {
+      ShardedOutput output = new ShardedOutput(files, sentencesFile, textsFile, numberShards, 0);
+      output.sentences = new BufferedWriter[numberShards];
+      output.texts = new BufferedWriter[numberShards];
+      for (int i=0; i<numberShards; i++) {
+         output.open(i, i);
+      }
+      return output;
+   }
+
+
+   /**
+    * Shards with a number of sentences each.
+    * @param files to open the files
+    * @param sentencesFile name of the sentences file
+    * @param textsFile name of the texts file (may be null)
+    * @param sentencesPerShard start a new shard after this many sentences
+    *    (at the end of a review)
+    * @throws IOException if the first shard cannot be created
+    */
+   public static ShardedOutput bySentences (OutputFiles files, String sentencesFile, String textsFile,
+         int sentencesPerShard) throws IOException {
+      ShardedOutput output = new ShardedOutput(files, sentencesFile, textsFile, 0, sentencesPerShard);
+      output.sentences = new BufferedWriter[1];
+      output.texts = new BufferedWriter[1];
+      output.shard = 0;
+      output.open(0, 0);
+      return output;
+   }
+
+
+   /**
+    * Shard of a review id when sharding by id.
+    */
+   public static int getShard (String id, int numberShards) {
+      return (id.hashCode() & 0x7fffffff) % numberShards;
+   }
+
+
+   /**
+    * Name of a shard file (without .gz, see OutputFiles.getFileName()).
+    */
+   public static String getShardFileName (String fileName, int shard) {
+      if (fileName.endsWith(OutputFiles.GZIP_SUFFIX)) {
+         fileName = fileName.substring(0, fileName.length() - OutputFiles.GZIP_SUFFIX.length());
+      }
+      return fileName + String.format(Locale.ENGLISH, ".%05d", shard);
+   }
+
+
+   /**
+    * Select the shard for the next review.
+    * @param id review id
+    * @throws IOException if a new shard cannot be created
+    */
+   public void select (String id) throws IOException {
+      if (numberShards > 0) {
+         shard = getShard(id, numberShards);
+      } else if (sentencesInShard >= sentencesPerShard) {
+         closeShard(0);
+         shard += 1;
+         sentencesInShard = 0;
+         open(0, shard);
+      }
+   }
+
+
+   /**
+    * Count sentences that have been written to the current shard.
+    */
+   public void addSentences (int number) {
+      sentencesInShard += number;
+   }
+
+
+   /**
+    * Sentences file of the selected shard.
+    */
+   public BufferedWriter getSentences () {
+      return sentences[numberShards > 0 ? shard : 0];
+   }
+
+
+   /**
+    * Texts file of the selected shard (null if no texts are written).
+    */
+   public BufferedWriter getTexts () {
+      return texts[numberShards > 0 ? shard : 0];
+   }
+
+
+   private void open (int slot, int shard) throws IOException {
+      sentences[slot] = files.open(getShardFileName(sentencesFile, shard), false);
+      if (textsFile != null) {
+         texts[slot] = files.open(getShardFileName(textsFile, shard), false);
+      }
+   }
+
+
+   private void closeShard (int slot) throws IOException {
+      if (sentences[slot] != null) {
+         sentences[slot].close();
+         sentences[slot] = null;
+      }
+      if (texts[slot] != null) {
+         texts[slot].close();
+         texts[slot] = null;
+      }
+   }
+
+
+   /**
+    * Close all shards.
+    */
+   public void close () throws IOException {
+      IOException failure = null;
+      for (int i=0; i<sentences.length; i++) {
+         try {
+            closeShard(i);
+         } catch (IOException e) {
+            failure = e;
+         }
+      }
+      if (failure != null)
+         throw failure;
+   }
+
+}
@@ -0,0 +1,69 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.annotation.epinions;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Executors that start a new thread for every task.
+ *
+ * Uses virtual threads if the JVM has them (Java 21 or later,
+ * found with reflection, so the code still compiles for Java 8).
+ * Otherwise a cached pool of daemon threads is used, which also
+ * starts a thread for each task that finds no idle thread.
+ *
+ * There is no bound on the number of threads, so the tasks must limit
+ * CPU-bound work themselves (see ThrottledSentenceSplitter).
+ */
+public class VirtualThreads {
+
+   private static final Method NEW_EXECUTOR = findExecutorMethod();
+
+
+   private static Method findExecutorMethod () {
+      try {
+         return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      } catch (NoSuchMethodException e) {
+         return null;
+      }
+   }
+
+
+   /**
+    * True if the JVM has virtual threads.
+    */
+   public static boolean isAvailable () {
+      return NEW_EXECUTOR != null;
+   }
+
+
+   /**
+    * Executor with one new thread per task.
+    * @param name name of the threads if virtual threads are not available
+    */
+   public static ExecutorService newThreadPerTaskExecutor (String name) {
+      if (NEW_EXECUTOR != null) {
+         try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+         } catch (ReflectiveOperationException e) {
+            // fall back to platform threads
+         }
+      }
+      return Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+   }
+
+
+   /**
+    * Kind of threads used by newThreadPerTaskExecutor(), for messages.
+    */
+   public static String describe () {
+      return isAvailable() ? "virtual threads" : "platform threads (no virtual threads in this JVM)";
+   }
+
+}
@@ -0,0 +1,139 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+
+/**
+ * Run a benchmark task several times and print throughput,
+ * allocation and garbage collection.
+ *
+ * The task is run some times to warm up the JIT, then measured.
+ * For each measured run, the time, the number of bytes allocated
+ * by the current thread (if the JVM supports it) and the number and
+ * time of garbage collections are taken. Printed are the
+ * best and average throughput, the allocation rate and the bytes allocated
+ * per unit (e.g., per review), similar to the GC profiler of JMH.
+ *
+ * Only allocations of the current thread are counted,
+ * allocations by worker threads are not included.
+ */
+public class BenchmarkRunner {
+
+   /**
+    * One run of a benchmark.
+    */
+   public interface Task {
+      /**
+       * Do the work once.
+       * @return number of units processed (e.g., lines or reviews)
+       */
+      long run () throws Exception;
+   }
+
+
+   private int warmupRuns;
+   private int measuredRuns;
+
+
+   /**
+    * @param warmupRuns runs before measuring
+    * @param measuredRuns runs that are measured
+    */
+   public BenchmarkRunner (int warmupRuns, int measuredRuns) {
+      this.warmupRuns = warmupRuns;
+      this.measuredRuns = measuredRuns;
+   }
+
+
+   /**
+    * Warm up, measure and print the result in one line.
+    * @param name name of the benchmark
+    * @param unit what the task counts (e.g., "lines")
+    * @param task
+    * @return best throughput in units per second
+    */
+   public double run (String name, String unit, Task task) throws Exception {
+      for (int i=0; i<warmupRuns; i++) {
+         task.run();
+      }
+
+      long units = 0;
+      long totalTime = 0;
+      long bestTime = Long.MAX_VALUE;
+      long bestUnits = 0;
+      long allocated = 0;
+      boolean allocationSupported = allocatedBytes() >= 0;
+      long gcCount = -gcCount();
+      long gcTime = -gcTime();
+      for (int i=0; i<measuredRuns; i++) {
+         long allocatedBefore = allocatedBytes();
+         long start = System.nanoTime();
+         long runUnits = task.run();
+         long time = System.nanoTime() - start;
+         allocated += allocatedBytes() - allocatedBefore;
+         units += runUnits;
+         totalTime += time;
+         if (time < bestTime) {
+            bestTime = time;
+            bestUnits = runUnits;
+         }
+      }
+      gcCount += gcCount();
+      gcTime += gcTime();
+
+      double best = bestUnits * 1e9 / bestTime;
+      double average = units * 1e9 / totalTime;
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format(Locale.ENGLISH, "%-28s %12.1f %s/s (avg %12.1f)", name, best, unit, average));
+      if (allocationSupported) {
+         sb.append(String.format(Locale.ENGLISH, ", alloc %8.1f MB/s, %10.1f B/%s",
+               allocated / 1048576.0 / (totalTime / 1e9), (double) allocated / units, unit));
+      }
+      sb.append(String.format(Locale.ENGLISH, ", gc %d (%d ms)", gcCount, gcTime));
+      System.out.println(sb);
+      return best;
+   }
+
+
+   /**
+    * Bytes allocated so far by the current thread,
+    * -1 if not supported by the JVM.
+    */
+   static long allocatedBytes () {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+         com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+         if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+            return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+         }
+      }
+      return -1;
+   }
+
+
+   private static long gcCount () {
+      long count = 0;
+      for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+         count += Math.max(0, bean.getCollectionCount());
+      }
+      return count;
+   }
+
+
+   private static long gcTime () {
+      long time = 0;
+      for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+         time += Math.max(0, bean.getCollectionTime());
+      }
+      return time;
+   }
+
+}
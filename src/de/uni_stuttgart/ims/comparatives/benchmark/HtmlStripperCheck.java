@@ -0,0 +1,159 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsReviewReader;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.OutputFiles;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.Review;
+import de.uni_stuttgart.ims.comparatives.nlp.HtmlStripper;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterFactory;
+
+
+/**
+ * Regression check for HtmlStripper: the tokens of every splitter
+ * must be the same as with text.replaceAll("<[^>]+>", " "),
+ * which was used before.
+ *
+ * Checked are synthetic review texts with HTML tags and entities
+ * (also escaped tags like &lt;b&gt;, double escaped entities like &amp;quot;
+ * and &nbsp;), and the reviews of a corpus file if one is given.
+ * For each text, the tokens and their offsets in the original text
+ * (mapped back with the stripper) are compared.
+ */
+public class HtmlStripperCheck {
+
+   // Fragments with entities that are put into the synthetic texts
+   private static final String[] ENTITY_FRAGMENTS = {"&lt;b&gt;great&lt;/b&gt;", "&amp;quot;heavy&amp;quot;",
+         "AT&amp;T", "A&nbsp;B", "&quot;zoom&quot;", "it&#39;s", "it&apos;s", "5 &gt; 3", "&lt;3", "Canon&nbsp;&amp; Sony",
+         "&eacute;", "&amp;", "& more", "&lt;br&gt;", "<b>&lt;</b>"};
+
+   // Differences printed
+   private static final int MAX_EXAMPLES = 5;
+
+
+   /**
+    * Run the check.
+    * Exits with status 1 if the tokens are different for any text.
+    *
+    * @param args [1] (optional) number of synthetic texts (default 2000),
+    *    [2] (optional) cleaned XML file with more texts to check
+    */
+   public static void main (String[] args) throws Exception {
+      int numberTexts = 2000;
+      if (args.length > 0) {
+         numberTexts = Integer.parseInt(args[0]);
+      }
+
+      ArrayList<String> texts = new ArrayList<String>();
+      SyntheticEpinions generator = new SyntheticEpinions(1);
+      Random random = new Random(1);
+      for (int i=0; i<numberTexts; i++) {
+         StringBuilder sb = new StringBuilder(generator.reviewText(1 + i % 5));
+         for (int f=0; f<3; f++) {
+            int position = sb.indexOf(" ", random.nextInt(sb.length()));
+            if (position >= 0) {
+               sb.insert(position + 1, ENTITY_FRAGMENTS[random.nextInt(ENTITY_FRAGMENTS.length)] + " ");
+            }
+         }
+         texts.add(sb.toString());
+      }
+      for (String fragment : ENTITY_FRAGMENTS) {
+         texts.add("I love this " + fragment + " camera.");
+      }
+      if (args.length > 1) {
+         EpinionsReviewReader reader = new EpinionsReviewReader(new InputStreamReader(
+               new FileInputStream(args[1]), OutputFiles.ENCODING));
+         while (reader.hasNext()) {
+            Review review = reader.next();
+            texts.add(review.text);
+         }
+         reader.close();
+      }
+
+      boolean failed = false;
+      for (String splitterName : SentenceSplitterFactory.NAMES) {
+         failed |= !check(splitterName, texts);
+      }
+      if (failed) {
+         System.out.println("Error, tokens of stripped texts are not the same as before.");
+         System.exit(1);
+      }
+   }
+
+
+   /**
+    * Compare the tokens of all texts for one splitter.
+    * @return true if all are the same
+    */
+   private static boolean check (String splitterName, ArrayList<String> texts) throws Exception {
+      SentenceSplitter splitter = SentenceSplitterFactory.create(splitterName);
+      HtmlStripper stripper = new HtmlStripper();
+      SentenceBoundaries result = new SentenceBoundaries();
+      SentenceBoundaries expected = new SentenceBoundaries();
+      int different = 0;
+      long numberTokens = 0;
+      for (String text : texts) {
+         // Before: remove tags with the regular expression, tokens of this text
+         String regexText = text.replaceAll("<[^>]+>", " ");
+         splitter.split(regexText, expected);
+         splitter.split(stripper.strip(text), result);
+         result.mapOffsets(stripper);
+         numberTokens += expected.getNumberTokens();
+
+         String difference = compare(expected, regexText, result, text);
+         if (difference != null) {
+            different += 1;
+            if (different <= MAX_EXAMPLES) {
+               System.out.println(splitterName + ": " + difference + " in: " + text);
+            }
+         }
+      }
+      splitter.close();
+      System.out.println(String.format(Locale.ENGLISH, "%-10s %d texts, %d tokens, %d texts with different tokens",
+            splitterName + ":", texts.size(), numberTokens, different));
+      return different == 0;
+   }
+
+
+   /**
+    * Compare the tokens of the regex text with the tokens of the stripped text,
+    * whose offsets refer to the original text.
+    * @return description of the first difference, null if there is none
+    */
+   private static String compare (SentenceBoundaries expected, String regexText,
+         SentenceBoundaries result, String text) {
+      if (expected.getNumberTokens() != result.getNumberTokens()) {
+         return "number of tokens " + result.getNumberTokens() + " instead of " + expected.getNumberTokens();
+      }
+      for (int t=0; t<expected.getNumberTokens(); t++) {
+         if (!expected.getTokenValue(t).equals(result.getTokenValue(t))) {
+            return "token '" + result.getTokenValue(t) + "' instead of '" + expected.getTokenValue(t) + "'";
+         }
+         // Covered text must be the same, apart from tags inside the token
+         String expectedText = regexText.substring(expected.getTokenBegin(t), expected.getTokenEnd(t));
+         String resultText = text.substring(result.getTokenBegin(t), result.getTokenEnd(t))
+               .replaceAll("<[^>]+>", " ");
+         if (!expectedText.equals(resultText)) {
+            return "token '" + result.getTokenValue(t) + "' covers '" + resultText + "' instead of '" + expectedText + "'";
+         }
+      }
+      for (int s=0; s<expected.getNumberSentences(); s++) {
+         if (s >= result.getNumberSentences() || expected.getFirstToken(s) != result.getFirstToken(s)) {
+            return "sentence " + s + " starts at a different token";
+         }
+      }
+      return null;
+   }
+
+}
@@ -0,0 +1,33 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.io.IOException;
+
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.TextSpan;
+
+
+/**
+ * Sentence splitter that does nothing, every document has no sentences.
+ * Used to measure the XML reading without the time for splitting.
+ */
+public class NoOpSentenceSplitter extends SentenceSplitter {
+
+   private static final TextSpan[] NO_SENTENCES = new TextSpan[0];
+
+
+   @Override
+   public TextSpan[] split (String document) {
+      return NO_SENTENCES;
+   }
+
+
+   @Override
+   public void close () throws IOException {
+   }
+
+}
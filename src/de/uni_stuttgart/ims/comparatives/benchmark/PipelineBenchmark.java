@@ -0,0 +1,491 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsByteCleaner;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaner;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaningReader;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.ExtractSentencesFromXML.EpinionsReviewHandler;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.VirtualThreads;
+import de.uni_stuttgart.ims.comparatives.nlp.HtmlStripper;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterFactory;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterPool;
+import de.uni_stuttgart.ims.comparatives.nlp.ThrottledSentenceSplitter;
+
+
+/**
+ * Benchmarks for the steps of the corpus pipeline on synthetic input
+ * (see SyntheticEpinions), to see if a change helps or hurts.
+ *
+ * - cleaner: lines/s of EpinionsByteCleaner (file cleaner)
+ *    and EpinionsCleaningReader (--raw)
+ * - strip: reviews/s of removing HTML tags with HtmlStripper
+ *    and with the regular expression used before
+ * - handler: reviews/s of reading the cleaned XML with EpinionsReviewHandler,
+ *    with a splitter that does nothing (NoOpSentenceSplitter)
+ * - split: latency of the sentence splitters (Stanford and rules)
+ *    for reviews of different lengths
+ * - endtoend: reviews/s from the original file to the output files
+ *    (--raw, Stanford, output is discarded)
+ * - threads: reviews/s of the cleaned XML with Stanford, split on the
+ *    reader thread, on a pool of --threads workers and on one
+ *    (virtual) thread per review (ExtractSentencesFromXML --virtual)
+ * - files: reviews/s of many small files read with a delay
+ *    (like files on network storage), one file per thread of a pool
+ *    of --threads threads or on one (virtual) thread per file
+ *    with --threads splitting at the same time (BatchExtractor --virtual)
+ *
+ * Each benchmark prints throughput, allocation rate and garbage collections
+ * (see BenchmarkRunner). Input and output are in memory, so disk speed
+ * is not measured. Run with a fixed heap (e.g., -Xms2g -Xmx2g)
+ * to get comparable numbers.
+ */
+public class PipelineBenchmark {
+
+   private static final String[] BENCHMARKS = {"cleaner", "strip", "handler", "split", "endtoend", "threads", "files"};
+
+   // Review lengths in sentences for the split benchmark
+   private static final int[] SPLIT_LENGTHS = {1, 5, 20, 80};
+
+   private int numberReviews = 20000;
+   private int numberThreads = Runtime.getRuntime().availableProcessors();
+   private int numberFiles = 50;
+   private int latencyMillis = 2;
+   private BenchmarkRunner runner = new BenchmarkRunner(5, 10);
+
+   private byte[] raw;
+   private char[] cleaned;
+   private int numberLines;
+
+
+   /**
+    * Run benchmarks.
+    *
+    * Options (before the benchmark names):
+    * --reviews n: number of reviews in the synthetic input (default 20000)
+    * --runs w m: w runs to warm up and m measured runs (default 5 10)
+    * --threads n: threads for the threads and files benchmarks
+    *    (default: number of cores)
+    * --files k: number of files for the files benchmark (default 50)
+    * --latency ms: delay of each read of 8192 characters
+    *    in the files benchmark (default 2)
+    *
+    * @param args names of benchmarks to run (default: all)
+    */
+   public static void main (String[] args) throws Exception {
+      PipelineBenchmark benchmark = new PipelineBenchmark();
+      ArrayList<String> names = new ArrayList<String>();
+      for (int i=0; i<args.length; i++) {
+         if (args[i].equals("--reviews") && i+1 < args.length) {
+            benchmark.numberReviews = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("--runs") && i+2 < args.length) {
+            int warmupRuns = Integer.parseInt(args[++i]);
+            int measuredRuns = Integer.parseInt(args[++i]);
+            benchmark.runner = new BenchmarkRunner(warmupRuns, measuredRuns);
+         } else if (args[i].equals("--threads") && i+1 < args.length) {
+            benchmark.numberThreads = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("--files") && i+1 < args.length) {
+            benchmark.numberFiles = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("--latency") && i+1 < args.length) {
+            benchmark.latencyMillis = Integer.parseInt(args[++i]);
+         } else if (Arrays.asList(BENCHMARKS).contains(args[i])) {
+            names.add(args[i]);
+         } else {
+            System.err.println("Usage: PipelineBenchmark [--reviews <n>] [--runs <warmup> <measured>] "
+                  + "[--threads <n>] [--files <k>] [--latency <ms>] "
+                  + "[cleaner] [strip] [handler] [split] [endtoend] [threads] [files]");
+            System.exit(1);
+         }
+      }
+      if (names.isEmpty()) {
+         names.addAll(Arrays.asList(BENCHMARKS));
+      }
+
+      benchmark.createInput();
+      for (String name : names) {
+         if (name.equals("cleaner")) {
+            benchmark.cleaner();
+         } else if (name.equals("strip")) {
+            benchmark.strip();
+         } else if (name.equals("handler")) {
+            benchmark.handler();
+         } else if (name.equals("split")) {
+            benchmark.split();
+         } else if (name.equals("endtoend")) {
+            benchmark.endToEnd();
+         } else if (name.equals("threads")) {
+            benchmark.threads();
+         } else if (name.equals("files")) {
+            benchmark.files();
+         }
+      }
+   }
+
+
+   private void createInput () throws Exception {
+      raw = new SyntheticEpinions(1).raw(numberReviews);
+      cleaned = SyntheticEpinions.cleaned(raw).toCharArray();
+      for (byte b : raw) {
+         if (b == '\n') {
+            numberLines += 1;
+         }
+      }
+      System.out.println(String.format(Locale.ENGLISH, "Input: %d reviews, %d lines, %.1f MB",
+            numberReviews, numberLines, raw.length / 1048576.0));
+   }
+
+
+
+   /**
+    * Lines per second of the cleaners.
+    */
+   private void cleaner () throws Exception {
+      final WritableByteChannel nullChannel = new WritableByteChannel() {
+         public int write (ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+         }
+         public boolean isOpen () {
+            return true;
+         }
+         public void close () {
+         }
+      };
+      final ByteBuffer input = ByteBuffer.wrap(raw);
+      final ByteBuffer output = ByteBuffer.allocateDirect(1 << 20);
+      runner.run("cleaner (bytes)", "lines", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            input.clear();
+            EpinionsByteCleaner cleaner = new EpinionsByteCleaner(nullChannel, output);
+            cleaner.clean(input);
+            cleaner.finish();
+            return numberLines;
+         }
+      });
+
+      final char[] buffer = new char[65536];
+      runner.run("cleaner (reader)", "lines", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            EpinionsCleaningReader reader = new EpinionsCleaningReader(new InputStreamReader(
+                  new ByteArrayInputStream(raw), EpinionsCleaner.INPUT_ENCODING), true);
+            while (reader.read(buffer) != -1) {
+            }
+            reader.close();
+            return numberLines;
+         }
+      });
+   }
+
+
+   /**
+    * Reviews per second of removing HTML tags.
+    */
+   private void strip () throws Exception {
+      SyntheticEpinions generator = new SyntheticEpinions(1);
+      final String[] texts = new String[numberReviews];
+      for (int i=0; i<texts.length; i++) {
+         texts[i] = generator.reviewText(1 + i % 12);
+      }
+      final HtmlStripper stripper = new HtmlStripper();
+      runner.run("strip (HtmlStripper)", "reviews", new BenchmarkRunner.Task() {
+         public long run () {
+            for (String text : texts) {
+               stripper.strip(text);
+            }
+            return texts.length;
+         }
+      });
+      runner.run("strip (regex)", "reviews", new BenchmarkRunner.Task() {
+         public long run () {
+            for (String text : texts) {
+               text.replaceAll("<[^>]+>", " ");
+            }
+            return texts.length;
+         }
+      });
+   }
+
+
+   /**
+    * Reviews per second of the XML handler without splitting.
+    */
+   private void handler () throws Exception {
+      runner.run("handler (no splitter)", "reviews", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            EpinionsReviewHandler handler = new EpinionsReviewHandler(new NoOpSentenceSplitter());
+            parse(handler, new InputSource(new CharArrayReader(cleaned)));
+            return numberReviews;
+         }
+      });
+   }
+
+
+   /**
+    * Time to split one review, for reviews of different lengths.
+    */
+   private void split () throws Exception {
+      for (String name : SentenceSplitterFactory.NAMES) {
+         split(name);
+      }
+   }
+
+
+   private void split (String splitterName) throws Exception {
+      final SentenceSplitter splitter = SentenceSplitterFactory.create(splitterName);
+      final SentenceBoundaries boundaries = new SentenceBoundaries();
+      for (int length : SPLIT_LENGTHS) {
+         SyntheticEpinions generator = new SyntheticEpinions(length);
+         final String[] texts = new String[Math.max(20, 4000 / length)];
+         for (int i=0; i<texts.length; i++) {
+            texts[i] = generator.reviewText(length).replaceAll("<[^>]+>", " ");
+         }
+
+         double reviewsPerSecond = runner.run("split " + splitterName + " (" + length + " sentences)", "reviews",
+               new BenchmarkRunner.Task() {
+            public long run () throws Exception {
+               for (String text : texts) {
+                  splitter.split(text, boundaries);
+               }
+               return texts.length;
+            }
+         });
+
+         // Latency of single reviews
+         long[] times = new long[texts.length];
+         for (int i=0; i<texts.length; i++) {
+            long start = System.nanoTime();
+            splitter.split(texts[i], boundaries);
+            times[i] = System.nanoTime() - start;
+         }
+         Arrays.sort(times);
+         System.out.println(String.format(Locale.ENGLISH, "%-28s mean %10.1f us, p50 %10.1f us, p99 %10.1f us",
+               "", 1e6 / reviewsPerSecond, times[times.length / 2] / 1000.0,
+               times[times.length * 99 / 100] / 1000.0));
+      }
+      splitter.close();
+   }
+
+
+   /**
+    * Reviews per second from the original file to the output files.
+    */
+   private void endToEnd () throws Exception {
+      final Writer nullWriter = nullWriter();
+      runner.run("end-to-end (--raw)", "reviews", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            EpinionsReviewHandler handler = new EpinionsReviewHandler();
+            handler.setOutputSentences(new BufferedWriter(nullWriter));
+            handler.setOutputTexts(new BufferedWriter(nullWriter));
+            parse(handler, new InputSource(new EpinionsCleaningReader(new InputStreamReader(
+                  new ByteArrayInputStream(raw), EpinionsCleaner.INPUT_ENCODING), true)));
+            return numberReviews;
+         }
+      });
+   }
+
+
+   /**
+    * Reviews per second of the cleaned XML, split on the reader thread,
+    * on a pool of threads and on one (virtual) thread per review.
+    */
+   private void threads () throws Exception {
+      final Writer nullWriter = nullWriter();
+      runner.run("threads (reader thread)", "reviews", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            EpinionsReviewHandler handler = new EpinionsReviewHandler();
+            handler.setOutputSentences(new BufferedWriter(nullWriter));
+            parse(handler, new InputSource(new CharArrayReader(cleaned)));
+            return numberReviews;
+         }
+      });
+      runner.run("threads (pool of " + numberThreads + ")", "reviews", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            EpinionsReviewHandler handler = new EpinionsReviewHandler();
+            handler.setOutputSentences(new BufferedWriter(nullWriter));
+            handler.setNumberThreads(numberThreads);
+            parse(handler, new InputSource(new CharArrayReader(cleaned)));
+            return numberReviews;
+         }
+      });
+      runner.run("threads (per review, " + numberThreads + ")", "reviews", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            EpinionsReviewHandler handler = new EpinionsReviewHandler();
+            handler.setOutputSentences(new BufferedWriter(nullWriter));
+            handler.setNumberThreads(numberThreads);
+            handler.setVirtualThreads(true);
+            parse(handler, new InputSource(new CharArrayReader(cleaned)));
+            return numberReviews;
+         }
+      });
+      System.out.println("Per review: " + VirtualThreads.describe());
+   }
+
+
+   /**
+    * Reviews per second of many small files with slow input,
+    * one file per thread of a pool or per (virtual) thread.
+    */
+   private void files () throws Exception {
+      final int reviewsPerFile = Math.max(1, numberReviews / numberFiles);
+      final char[][] files = new char[numberFiles][];
+      for (int i=0; i<numberFiles; i++) {
+         files[i] = SyntheticEpinions.cleaned(new SyntheticEpinions(i + 1).raw(reviewsPerFile)).toCharArray();
+      }
+      final SentenceSplitterPool splitterPool = new SentenceSplitterPool(SentenceSplitterFactory.STANFORD, null);
+      System.out.println(String.format(Locale.ENGLISH, "Files: %d files of %d reviews, %d ms per read",
+            numberFiles, reviewsPerFile, latencyMillis));
+
+      runner.run("files (pool of " + numberThreads + ")", "reviews", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            readFiles(files, Executors.newFixedThreadPool(numberThreads), splitterPool, null);
+            return (long) reviewsPerFile * files.length;
+         }
+      });
+      final SentenceSplitter throttled = new ThrottledSentenceSplitter(splitterPool, new Semaphore(numberThreads));
+      runner.run("files (per file, " + numberThreads + ")", "reviews", new BenchmarkRunner.Task() {
+         public long run () throws Exception {
+            readFiles(files, VirtualThreads.newThreadPerTaskExecutor("files"), splitterPool, throttled);
+            return (long) reviewsPerFile * files.length;
+         }
+      });
+      System.out.println("Per file: " + VirtualThreads.describe());
+      splitterPool.close();
+   }
+
+
+   /**
+    * Read each file with its own handler on the executor and wait for all.
+    * @param sharedSplitter splitter for all files, if null each file
+    *    takes a splitter from the pool
+    */
+   private void readFiles (char[][] files, ExecutorService executor, final SentenceSplitterPool splitterPool,
+         final SentenceSplitter sharedSplitter) throws Exception {
+      final Writer nullWriter = nullWriter();
+      ArrayList<Future<Object>> results = new ArrayList<Future<Object>>();
+      try {
+         for (final char[] file : files) {
+            results.add(executor.submit(new Callable<Object>() {
+               public Object call () throws Exception {
+                  SentenceSplitter splitter = (sharedSplitter != null) ? sharedSplitter : splitterPool.acquire();
+                  try {
+                     EpinionsReviewHandler handler = new EpinionsReviewHandler(splitter);
+                     handler.setOutputSentences(new BufferedWriter(nullWriter));
+                     handler.setPrintCounts(false);
+                     SAXParserFactory factory = SAXParserFactory.newInstance();
+                     factory.setNamespaceAware(true);
+                     XMLReader xr = factory.newSAXParser().getXMLReader();
+                     xr.setContentHandler(handler);
+                     xr.setErrorHandler(handler);
+                     xr.parse(new InputSource(new SlowReader(new CharArrayReader(file), latencyMillis)));
+                  } finally {
+                     if (splitter != sharedSplitter) {
+                        splitterPool.release(splitter);
+                     }
+                  }
+                  return null;
+               }
+            }));
+         }
+         for (Future<Object> result : results) {
+            result.get();
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+
+   /**
+    * Reader that waits before each read, like a file on network storage.
+    */
+   private static class SlowReader extends FilterReader {
+
+      private static final int READ_SIZE = 8192;
+      private int latencyMillis;
+
+      SlowReader (Reader in, int latencyMillis) {
+         super(in);
+         this.latencyMillis = latencyMillis;
+      }
+
+      @Override
+      public int read (char[] cbuf, int off, int len) throws IOException {
+         try {
+            Thread.sleep(latencyMillis);
+         } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+         }
+         return super.read(cbuf, off, Math.min(len, READ_SIZE));
+      }
+   }
+
+
+   private static Writer nullWriter () {
+      return new Writer() {
+         public void write (char[] cbuf, int off, int len) {
+         }
+         public void flush () {
+         }
+         public void close () {
+         }
+      };
+   }
+
+
+   /**
+    * Read the XML with the handler, without the summary that
+    * the handler prints at the end.
+    */
+   private static void parse (EpinionsReviewHandler handler, InputSource input) throws Exception {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      XMLReader xr = factory.newSAXParser().getXMLReader();
+      xr.setContentHandler(handler);
+      xr.setErrorHandler(handler);
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(new OutputStream() {
+         public void write (int b) {
+         }
+      }));
+      try {
+         xr.parse(input);
+      } finally {
+         System.setOut(out);
+         handler.abort();
+      }
+   }
+
+}
@@ -0,0 +1,110 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.util.Locale;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.ExtractSentencesFromXML.EpinionsReviewHandler;
+
+
+/**
+ * Regression benchmark for collecting the text of a review
+ * in EpinionsReviewHandler.characters().
+ *
+ * Feeds one synthetic very long review to the handler in small chunks,
+ * as the XML reader does, and measures the time per character
+ * for increasing review lengths.
+ * Collecting the text must take linear time, so the time per character
+ * must stay about the same when the review gets longer.
+ *
+ * The review is not split into sentences, only the text is collected.
+ */
+public class ReviewHandlerBenchmark {
+
+   // Time per character may vary this much between the shortest
+   // and the longest review before we call it non-linear.
+   private static final double MAX_SLOWDOWN = 3.0;
+
+
+   /**
+    * Run the benchmark.
+    * Exits with status 1 if the time per character grows with the review length.
+    *
+    * @param args [1] (optional) length of the shortest review in characters (default 100000),
+    *    [2] (optional) size of the chunks in characters (default 64)
+    */
+   public static void main(String[] args) throws SAXException {
+
+      int minLength = 100000;
+      int chunkSize = 64;
+      if (args.length > 0) {
+         minLength = Integer.parseInt(args[0]);
+      }
+      if (args.length > 1) {
+         chunkSize = Integer.parseInt(args[1]);
+      }
+
+      // Chunk of review text, as delivered by the XML reader
+      char[] chunk = new char[chunkSize];
+      String words = "This camera is better than my old one. ";
+      for (int i=0; i<chunkSize; i++) {
+         chunk[i] = words.charAt(i % words.length());
+      }
+
+      EpinionsReviewHandler handler = new EpinionsReviewHandler();
+
+      // Warm up
+      for (int i=0; i<20; i++) {
+         readReview(handler, chunk, minLength * 4);
+      }
+
+      // Measure with doubling lengths
+      double firstNanosPerChar = 0;
+      double lastNanosPerChar = 0;
+      for (int length=minLength; length<=minLength*32; length*=2) {
+         long best = Long.MAX_VALUE;
+         for (int i=0; i<5; i++) {
+            long time = readReview(handler, chunk, length);
+            best = Math.min(best, time);
+         }
+         lastNanosPerChar = (double) best / length;
+         if (firstNanosPerChar == 0) {
+            firstNanosPerChar = lastNanosPerChar;
+         }
+         System.out.println(String.format(Locale.ENGLISH, "%10d characters: %8.2f ms, %6.2f ns/character",
+               length, best / 1000000.0, lastNanosPerChar));
+      }
+
+      double slowdown = lastNanosPerChar / firstNanosPerChar;
+      System.out.println(String.format(Locale.ENGLISH, "Time per character longest/shortest review: %.2f", slowdown));
+      if (slowdown > MAX_SLOWDOWN) {
+         System.out.println("Error, collecting review text does not scale linearly.");
+         System.exit(1);
+      }
+   }
+
+
+   /**
+    * Feed the start of a review and its text to the handler.
+    * @return time in nanoseconds
+    */
+   private static long readReview (EpinionsReviewHandler handler, char[] chunk, int length)
+         throws SAXException {
+      AttributesImpl atts = new AttributesImpl();
+      long start = System.nanoTime();
+      handler.startElement("", "review", "review", atts);
+      handler.startElement("", "text", "text", atts);
+      for (int read=0; read<length; read+=chunk.length) {
+         handler.characters(chunk, 0, Math.min(chunk.length, length - read));
+      }
+      handler.endElement("", "text", "text");
+      return System.nanoTime() - start;
+   }
+
+}
@@ -0,0 +1,189 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaner;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaningReader;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.ExtractSentencesFromXML.EpinionsReviewHandler;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.OutputFiles;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterRules;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterStanford;
+import de.uni_stuttgart.ims.comparatives.nlp.TextSpan;
+
+
+/**
+ * Compare the rule-based sentence splitter with Stanford
+ * on the reviews of a corpus.
+ *
+ * Every review is split by both splitters. Counted are:
+ * - sentence ends: position where Stanford ends a sentence,
+ *    found by the rule-based splitter (precision, recall)
+ * - sentences: same begin, end and tokens
+ * - tokens: same begin, end and token text
+ * and the time needed by each splitter.
+ */
+public class SplitterAgreement extends SentenceSplitter {
+
+   private SentenceSplitter reference = new SentenceSplitterStanford();
+   private SentenceSplitter candidate = new SentenceSplitterRules();
+   private SentenceBoundaries candidateResult = new SentenceBoundaries();
+
+   private int numberDocuments = 0;
+   private long referenceTime = 0;
+   private long candidateTime = 0;
+   private int referenceSentences = 0;
+   private int candidateSentences = 0;
+   private int sameSentenceEnds = 0;
+   private int sameSentences = 0;
+   private int referenceTokens = 0;
+   private int candidateTokens = 0;
+   private int sameTokens = 0;
+
+
+   /**
+    * Compare the splitters on a corpus.
+    *
+    * @param args [--raw] XML file name (cleaned file as written by EpinionsCleaner,
+    *    or the original file with --raw)
+    */
+   public static void main (String[] args) throws Exception {
+      boolean rawInput = false;
+      String fileName = null;
+      for (String arg : args) {
+         if (arg.equals("--raw")) {
+            rawInput = true;
+         } else {
+            fileName = arg;
+         }
+      }
+      if (fileName == null) {
+         System.err.println("Usage: SplitterAgreement [--raw] <input XML file name>");
+         System.exit(1);
+      }
+
+      SplitterAgreement agreement = new SplitterAgreement();
+      EpinionsReviewHandler handler = new EpinionsReviewHandler(agreement);
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      XMLReader xr = factory.newSAXParser().getXMLReader();
+      xr.setContentHandler(handler);
+      xr.setErrorHandler(handler);
+      Reader reader;
+      if (rawInput) {
+         reader = new EpinionsCleaningReader(new InputStreamReader(new FileInputStream(fileName),
+               EpinionsCleaner.INPUT_ENCODING), true);
+      } else {
+         reader = new InputStreamReader(new FileInputStream(fileName), OutputFiles.ENCODING);
+      }
+      xr.parse(new InputSource(reader));
+      reader.close();
+
+      agreement.printReport();
+   }
+
+
+
+   /**
+    * Split with both splitters and compare, return the result of Stanford.
+    */
+   @Override
+   public SentenceBoundaries split (String document, SentenceBoundaries boundaries) {
+      long start = System.nanoTime();
+      boundaries = reference.split(document, boundaries);
+      long middle = System.nanoTime();
+      candidate.split(document, candidateResult);
+      long end = System.nanoTime();
+      referenceTime += middle - start;
+      candidateTime += end - middle;
+      numberDocuments += 1;
+      compare(boundaries, candidateResult);
+      return boundaries;
+   }
+
+
+   @Override
+   public TextSpan[] split (String document) {
+      return split(document, null).toTextSpans();
+   }
+
+
+   @Override
+   public void close () throws IOException {
+      reference.close();
+      candidate.close();
+   }
+
+
+   private void compare (SentenceBoundaries ref, SentenceBoundaries cand) {
+      referenceSentences += ref.getNumberSentences();
+      candidateSentences += cand.getNumberSentences();
+      referenceTokens += ref.getNumberTokens();
+      candidateTokens += cand.getNumberTokens();
+
+      // Sentences (both sorted by position)
+      int c = 0;
+      for (int r=0; r<ref.getNumberSentences(); r++) {
+         while (c < cand.getNumberSentences() && cand.getSentenceEnd(c) < ref.getSentenceEnd(r)) {
+            c++;
+         }
+         if (c < cand.getNumberSentences() && cand.getSentenceEnd(c) == ref.getSentenceEnd(r)) {
+            sameSentenceEnds += 1;
+            if (cand.getSentenceBegin(c) == ref.getSentenceBegin(r)
+                  && cand.getTokenizedSentence(c).equals(ref.getTokenizedSentence(r))) {
+               sameSentences += 1;
+            }
+         }
+      }
+
+      // Tokens (both sorted by position)
+      int t = 0;
+      for (int r=0; r<ref.getNumberTokens(); r++) {
+         while (t < cand.getNumberTokens() && cand.getTokenBegin(t) < ref.getTokenBegin(r)) {
+            t++;
+         }
+         if (t < cand.getNumberTokens() && cand.getTokenBegin(t) == ref.getTokenBegin(r)
+               && cand.getTokenEnd(t) == ref.getTokenEnd(r)
+               && cand.getTokenValue(t).equals(ref.getTokenValue(r))) {
+            sameTokens += 1;
+         }
+      }
+   }
+
+
+   private void printReport () {
+      System.out.println("Reviews: " + numberDocuments);
+      System.out.println(String.format(Locale.ENGLISH, "Sentences: Stanford %d, rules %d", referenceSentences, candidateSentences));
+      printAgreement("Sentence ends", sameSentenceEnds, referenceSentences, candidateSentences);
+      printAgreement("Same sentences", sameSentences, referenceSentences, candidateSentences);
+      System.out.println(String.format(Locale.ENGLISH, "Tokens: Stanford %d, rules %d", referenceTokens, candidateTokens));
+      printAgreement("Same tokens", sameTokens, referenceTokens, candidateTokens);
+      System.out.println(String.format(Locale.ENGLISH, "Time: Stanford %.1f s, rules %.1f s, speedup %.1f",
+            referenceTime / 1e9, candidateTime / 1e9, (double) referenceTime / Math.max(1, candidateTime)));
+   }
+
+
+   private static void printAgreement (String name, int same, int reference, int candidate) {
+      double precision = 100.0 * same / Math.max(1, candidate);
+      double recall = 100.0 * same / Math.max(1, reference);
+      double f1 = (precision + recall == 0) ? 0 : 2 * precision * recall / (precision + recall);
+      System.out.println(String.format(Locale.ENGLISH, "%-16s precision %6.2f %%, recall %6.2f %%, F1 %6.2f %%",
+            name + ":", precision, recall, f1));
+   }
+
+}
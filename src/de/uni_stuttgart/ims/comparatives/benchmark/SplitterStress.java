@@ -0,0 +1,235 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaner;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaningReader;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.ExtractSentencesFromXML.EpinionsReviewHandler;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.OutputFiles;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceBoundaries;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitter;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterFactory;
+import de.uni_stuttgart.ims.comparatives.nlp.SentenceSplitterPool;
+import de.uni_stuttgart.ims.comparatives.nlp.TextSpan;
+
+
+/**
+ * Check the concurrency contract of the sentence splitters:
+ * several threads split the same texts with a SentenceSplitterPool
+ * at the same time, every result must be the same as
+ * when splitting on one thread with one splitter.
+ *
+ * Texts are the reviews of a corpus, or synthetic reviews
+ * (see SyntheticEpinions) if no file is given.
+ * The threads start at different texts and take a splitter
+ * from the pool for every text, so splitters go from thread to thread.
+ *
+ * Prints the number of differences and the throughput with one
+ * and with several threads. Exit status is 1 if there are differences.
+ */
+public class SplitterStress {
+
+
+   /**
+    * @param args [--splitter name] [--threads n] [--rounds n] [--reviews n]
+    *    [--raw] [XML file name]
+    */
+   public static void main (String[] args) throws Exception {
+      String splitterName = SentenceSplitterFactory.STANFORD;
+      int numberThreads = 4;
+      int rounds = 3;
+      int numberReviews = 2000;
+      boolean rawInput = false;
+      String fileName = null;
+      for (int i=0; i<args.length; i++) {
+         if (args[i].equals("--splitter") && i+1 < args.length) {
+            splitterName = args[++i];
+         } else if (args[i].equals("--threads") && i+1 < args.length) {
+            numberThreads = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("--rounds") && i+1 < args.length) {
+            rounds = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("--reviews") && i+1 < args.length) {
+            numberReviews = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("--raw")) {
+            rawInput = true;
+         } else if (!args[i].startsWith("--")) {
+            fileName = args[i];
+         } else {
+            System.err.println("Usage: SplitterStress [--splitter <name>] [--threads <n>] [--rounds <n>] "
+                  + "[--reviews <n>] [--raw] [<input XML file name>]");
+            System.exit(1);
+         }
+      }
+
+      String[] texts;
+      if (fileName != null) {
+         texts = readTexts(fileName, rawInput);
+      } else {
+         SyntheticEpinions generator = new SyntheticEpinions(1);
+         texts = new String[numberReviews];
+         for (int i=0; i<texts.length; i++) {
+            texts[i] = generator.reviewText(1 + i % 12);
+         }
+      }
+      System.out.println("Texts: " + texts.length + ", splitter: " + splitterName);
+
+      // Reference: one thread, one splitter
+      SentenceSplitter splitter = SentenceSplitterFactory.create(splitterName);
+      SentenceBoundaries[] reference = new SentenceBoundaries[texts.length];
+      long start = System.nanoTime();
+      for (int i=0; i<texts.length; i++) {
+         reference[i] = splitter.split(texts[i], null);
+      }
+      long singleTime = System.nanoTime() - start;
+      splitter.close();
+
+      // Several threads, one pool
+      SentenceSplitterPool pool = new SentenceSplitterPool(splitterName, null);
+      AtomicInteger differences = new AtomicInteger();
+      Thread[] threads = new Thread[numberThreads];
+      for (int t=0; t<numberThreads; t++) {
+         threads[t] = new Thread(new Splitting(pool, texts, reference, t * texts.length / numberThreads,
+               rounds, differences), "stress-" + t);
+      }
+      start = System.nanoTime();
+      for (Thread thread : threads) {
+         thread.start();
+      }
+      for (Thread thread : threads) {
+         thread.join();
+      }
+      long parallelTime = System.nanoTime() - start;
+      pool.close();
+
+      long splits = (long) texts.length * rounds * numberThreads;
+      System.out.println(String.format(Locale.ENGLISH, "1 thread: %.0f texts/s", texts.length / (singleTime / 1e9)));
+      System.out.println(String.format(Locale.ENGLISH, "%d threads: %.0f texts/s (%d splits, %d splitters created)",
+            numberThreads, splits / (parallelTime / 1e9), splits, pool.getNumberSplitters()));
+      System.out.println("Differences: " + differences.get());
+      if (differences.get() > 0) {
+         System.exit(1);
+      }
+   }
+
+
+   /**
+    * One thread: split all texts several times, starting at the given text.
+    */
+   private static class Splitting implements Runnable {
+
+      private SentenceSplitterPool pool;
+      private String[] texts;
+      private SentenceBoundaries[] reference;
+      private int first;
+      private int rounds;
+      private AtomicInteger differences;
+
+      Splitting (SentenceSplitterPool pool, String[] texts, SentenceBoundaries[] reference, int first,
+            int rounds, AtomicInteger differences) {
+         this.pool = pool;
+         this.texts = texts;
+         this.reference = reference;
+         this.first = first;
+         this.rounds = rounds;
+         this.differences = differences;
+      }
+
+      public void run () {
+         SentenceBoundaries boundaries = new SentenceBoundaries();
+         for (int r=0; r<rounds; r++) {
+            for (int n=0; n<texts.length; n++) {
+               int i = (first + n) % texts.length;
+               pool.split(texts[i], boundaries);
+               if (!same(boundaries, reference[i])) {
+                  if (differences.incrementAndGet() <= 10) {
+                     System.out.println("Different result for text " + i + ": " + boundaries
+                           + " instead of " + reference[i]);
+                  }
+               }
+            }
+         }
+      }
+   }
+
+
+   private static boolean same (SentenceBoundaries a, SentenceBoundaries b) {
+      if (a.getNumberSentences() != b.getNumberSentences() || a.getNumberTokens() != b.getNumberTokens()) {
+         return false;
+      }
+      for (int s=0; s<=a.getNumberSentences(); s++) {
+         if (a.getFirstToken(s) != b.getFirstToken(s)) {
+            return false;
+         }
+      }
+      for (int t=0; t<a.getNumberTokens(); t++) {
+         if (a.getTokenBegin(t) != b.getTokenBegin(t) || a.getTokenEnd(t) != b.getTokenEnd(t)
+               || !a.getTokenValue(t).equals(b.getTokenValue(t))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   /**
+    * Texts of all reviews of the corpus, as given to the splitter.
+    */
+   private static String[] readTexts (String fileName, boolean rawInput) throws Exception {
+      TextCollector collector = new TextCollector();
+      EpinionsReviewHandler handler = new EpinionsReviewHandler(collector);
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      XMLReader xr = factory.newSAXParser().getXMLReader();
+      xr.setContentHandler(handler);
+      xr.setErrorHandler(handler);
+      Reader reader;
+      if (rawInput) {
+         reader = new EpinionsCleaningReader(new InputStreamReader(new FileInputStream(fileName),
+               EpinionsCleaner.INPUT_ENCODING), true);
+      } else {
+         reader = new InputStreamReader(new FileInputStream(fileName), OutputFiles.ENCODING);
+      }
+      xr.parse(new InputSource(reader));
+      reader.close();
+      return collector.texts.toArray(new String[collector.texts.size()]);
+   }
+
+
+   /**
+    * Given to the handler as its splitter, only collects the texts.
+    */
+   private static class TextCollector extends SentenceSplitter {
+
+      private static final TextSpan[] NO_SENTENCES = new TextSpan[0];
+
+      private List<String> texts = new ArrayList<String>();
+
+      @Override
+      public TextSpan[] split (String document) {
+         texts.add(document);
+         return NO_SENTENCES;
+      }
+
+      @Override
+      public void close () {
+      }
+
+   }
+
+}
@@ -0,0 +1,202 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaner;
+import de.uni_stuttgart.ims.comparatives.annotation.epinions.EpinionsCleaningReader;
+
+
+/**
+ * Generate synthetic input in the format of the original epinions file
+ * for benchmarks.
+ *
+ * The reviews have the same structure as the camera reviews and the same
+ * problems as the original file: Windows-1250 encoding, no root element,
+ * control characters and HTML in the text, some reviews with the closing
+ * </review> tag on the line of the text.
+ * Use cleaned() to get the file as EpinionsCleaner writes it.
+ *
+ * The same seed always gives the same input.
+ */
+public class SyntheticEpinions {
+
+   private static final String[] WORDS = ("the camera is great better than my old one lens battery life "
+         + "I love this picture quality Canon Nikon Sony zoom it's doesn't Mr. Dr. e.g. price $ 300 "
+         + "worse best smaller larger compared to caf\u00e9 \u0160koda \u201cheavy\u201d").split(" ");
+   private static final String[] ENDS = {".", ".", ".", "!", "?", "..."};
+   private static final String[] FEATURES = {"Battery Life", "Portability", "Clarity", "Durability", "Product Rating"};
+
+   private Random random;
+   private int minSentences = 1;
+   private int maxSentences = 12;
+   private int reviewsPerProduct = 5;
+
+
+   /**
+    * @param seed seed for the random choices
+    */
+   public SyntheticEpinions (long seed) {
+      this.random = new Random(seed);
+   }
+
+
+   /**
+    * Number of sentences in each review, chosen at random
+    * between min and max (both inclusive, default 1-12).
+    * @param min
+    * @param max
+    */
+   public void setSentencesPerReview (int min, int max) {
+      this.minSentences = min;
+      this.maxSentences = max;
+   }
+
+
+   /**
+    * Create the text of one review with the given number of sentences,
+    * with HTML tags and entities as in the original file.
+    * @param numberSentences
+    */
+   public String reviewText (int numberSentences) {
+      StringBuilder sb = new StringBuilder();
+      for (int s=0; s<numberSentences; s++) {
+         if (s > 0) {
+            sb.append(random.nextInt(10) == 0 ? "<br>" : " ");
+         }
+         int numberWords = 3 + random.nextInt(23);
+         for (int w=0; w<numberWords; w++) {
+            if (w > 0) {
+               sb.append(' ');
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (word.equals("great") && random.nextBoolean()) {
+               word = "<b>great</b>";
+            } else if (word.equals("it's")) {
+               word = "it\u2019s";
+            }
+            sb.append(word);
+         }
+         sb.append(ENDS[random.nextInt(ENDS.length)]);
+      }
+      return sb.toString();
+   }
+
+
+   /**
+    * Create the original file with the given number of reviews.
+    * @param numberReviews
+    * @return file content in Windows-1250
+    */
+   public byte[] raw (int numberReviews) {
+      StringBuilder sb = new StringBuilder();
+      int id = 1;
+      for (int p=0; id<=numberReviews; p++) {
+         sb.append("<product>\n");
+         sb.append("<id>P").append(p).append("</id>\n");
+         for (int r=0; r<reviewsPerProduct && id<=numberReviews; r++, id++) {
+            appendReview(sb, id);
+         }
+         sb.append("</product>\n");
+      }
+      try {
+         return sb.toString().getBytes(EpinionsCleaner.INPUT_ENCODING);
+      } catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+
+   /**
+    * Clean the original file as EpinionsCleaner does.
+    * @param raw content of the original file
+    * @return valid XML
+    */
+   public static String cleaned (byte[] raw) throws IOException {
+      Reader reader = new EpinionsCleaningReader(new InputStreamReader(
+            new ByteArrayInputStream(raw), EpinionsCleaner.INPUT_ENCODING), true);
+      StringBuilder sb = new StringBuilder(raw.length + raw.length / 8);
+      char[] buffer = new char[65536];
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+         sb.append(buffer, 0, read);
+      }
+      reader.close();
+      return sb.toString();
+   }
+
+
+   private void appendReview (StringBuilder sb, int id) {
+      sb.append("<review>\n");
+      sb.append("<id>").append(id).append("</id>\n");
+      sb.append("<title>&quot;Title ").append(id).append("&quot;</title>\n");
+      sb.append("<date>2006/8/").append(id % 28 + 1).append("</date>\n");
+      sb.append("<feature_ranks>\n");
+      for (String feature : FEATURES) {
+         sb.append("<feature>").append(feature).append("</feature><rank>")
+            .append(1 + random.nextInt(5)).append(".0</rank>\n");
+      }
+      sb.append("</feature_ranks>\n");
+      sb.append("<procons>\n<pro>carl zeiss lens</pro>\n<con>too big &amp; heavy</con>\n</procons>\n");
+
+      String text = reviewText(minSentences + random.nextInt(maxSentences - minSentences + 1));
+      // Control characters that must be deleted
+      if (random.nextInt(5) == 0) {
+         int pos = random.nextInt(text.length());
+         text = text.substring(0, pos) + '\u0007' + text.substring(pos);
+      }
+      if (random.nextInt(7) == 0) {
+         // Misplaced closing tag on the text line
+         sb.append("<text>").append(text).append("</text></review>\n");
+      } else {
+         sb.append("<text>\n").append(text).append("\n</text>\n");
+      }
+      sb.append("</review>\n");
+   }
+
+
+
+   /**
+    * Write a synthetic original file.
+    * Clean it with EpinionsCleaner before giving it to ExtractSentencesFromXML,
+    * or use the option --raw.
+    *
+    * @param args [1] number of reviews, [2] output file name,
+    *    [3] (optional) seed (default 1)
+    */
+   public static void main (String[] args) {
+      if (args.length < 2) {
+         System.err.println("Usage: SyntheticEpinions <number of reviews> <output file name> [<seed>]");
+         System.exit(1);
+      }
+      int numberReviews = Integer.parseInt(args[0]);
+      long seed = 1;
+      if (args.length > 2) {
+         seed = Long.parseLong(args[2]);
+      }
+
+      byte[] raw = new SyntheticEpinions(seed).raw(numberReviews);
+      try {
+         OutputStream out = new FileOutputStream(args[1]);
+         out.write(raw);
+         out.close();
+      } catch (IOException e) {
+         System.out.println("Error when writing output file: " + e.getMessage());
+         System.out.println("Abort.");
+         return;
+      }
+      System.out.println("Wrote " + numberReviews + " reviews (" + raw.length + " bytes) to " + args[1]);
+   }
+
+}
@@ -0,0 +1,182 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Sentence splitter that remembers its results in a SplitCache,
+ * so a text that has been split before (e.g., a review that has been
+ * posted several times) is not split again.
+ *
+ * The key is a hash of the exact text. Offsets refer to the text,
+ * so texts that differ only in whitespace or case are different entries.
+ *
+ * Entries are stored compactly: for each sentence the number of tokens,
+ * for each token the distance from the last token and the length (varints),
+ * and the token text only if it is not the same as in the document
+ * (e.g., -LRB- for a bracket).
+ *
+ * Not thread-safe, use one object per thread (the cache can be shared).
+ */
+public class CachingSentenceSplitter extends SentenceSplitter {
+
+   private SentenceSplitter splitter;
+   private SplitCache cache;
+
+   // Reused for encoding entries
+   private byte[] buffer = new byte[4096];
+   private int length = 0;
+
+
+   /**
+    * @param splitter splitter for texts that are not in the cache
+    * @param cache cache, may be shared with other threads
+    */
+   public CachingSentenceSplitter (SentenceSplitter splitter, SplitCache cache) {
+      this.splitter = splitter;
+      this.cache = cache;
+   }
+
+
+   @Override
+   public TextSpan[] split (String document) {
+      return split(document, null).toTextSpans();
+   }
+
+
+   @Override
+   public SentenceBoundaries split (String document, SentenceBoundaries boundaries) {
+      SplitCache.Key key = SplitCache.key(document);
+      byte[] entry = cache.get(key);
+      if (entry != null) {
+         if (boundaries == null) {
+            boundaries = new SentenceBoundaries();
+         }
+         decode(entry, document, boundaries);
+         return boundaries;
+      }
+      boundaries = splitter.split(document, boundaries);
+      cache.put(key, encode(boundaries, document));
+      return boundaries;
+   }
+
+
+   @Override
+   public void close () throws IOException {
+      splitter.close();
+   }
+
+
+
+   // Encoding
+
+
+   private byte[] encode (SentenceBoundaries boundaries, String document) {
+      length = 0;
+      putVarint(boundaries.getNumberSentences());
+      for (int s=0; s<boundaries.getNumberSentences(); s++) {
+         putVarint(boundaries.getFirstToken(s+1) - boundaries.getFirstToken(s));
+      }
+      int lastEnd = 0;
+      for (int i=0; i<boundaries.getNumberTokens(); i++) {
+         int begin = boundaries.getTokenBegin(i);
+         int end = boundaries.getTokenEnd(i);
+         putVarint(zigzag(begin - lastEnd));
+         putVarint(zigzag(end - begin));
+         lastEnd = end;
+
+         // 0 if the token is the same as in the document,
+         // else length + 1 and the characters
+         String value = boundaries.getTokenValue(i);
+         if (value.length() == end - begin && document.regionMatches(begin, value, 0, value.length())) {
+            putVarint(0);
+         } else {
+            putVarint(value.length() + 1);
+            for (int c=0; c<value.length(); c++) {
+               putVarint(value.charAt(c));
+            }
+         }
+      }
+      return Arrays.copyOf(buffer, length);
+   }
+
+
+   private void putVarint (int value) {
+      if (length + 5 > buffer.length) {
+         buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      while ((value & ~0x7F) != 0) {
+         buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      buffer[length++] = (byte) value;
+   }
+
+
+   private static int zigzag (int value) {
+      return (value << 1) ^ (value >> 31);
+   }
+
+
+
+   // Decoding
+
+
+   // Position in the entry that is decoded
+   private int position;
+
+   private void decode (byte[] entry, String document, SentenceBoundaries boundaries) {
+      boundaries.clear();
+      position = 0;
+      int numberSentences = getVarint(entry);
+      int[] sentenceTokens = new int[numberSentences];
+      for (int s=0; s<numberSentences; s++) {
+         sentenceTokens[s] = getVarint(entry);
+      }
+      int lastEnd = 0;
+      for (int s=0; s<numberSentences; s++) {
+         for (int t=0; t<sentenceTokens[s]; t++) {
+            int begin = lastEnd + unzigzag(getVarint(entry));
+            int end = begin + unzigzag(getVarint(entry));
+            lastEnd = end;
+            int valueLength = getVarint(entry);
+            String value;
+            if (valueLength == 0) {
+               value = document.substring(begin, end);
+            } else {
+               char[] chars = new char[valueLength - 1];
+               for (int c=0; c<chars.length; c++) {
+                  chars[c] = (char) getVarint(entry);
+               }
+               value = new String(chars);
+            }
+            boundaries.addToken(begin, end, value);
+         }
+         boundaries.endSentence();
+      }
+   }
+
+
+   private int getVarint (byte[] entry) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+         b = entry[position++];
+         value |= (b & 0x7F) << shift;
+         shift += 7;
+      } while (b < 0);
+      return value;
+   }
+
+
+   private static int unzigzag (int value) {
+      return (value >>> 1) ^ -(value & 1);
+   }
+
+}
@@ -0,0 +1,379 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Find cues (e.g., for comparisons) in the tokens of a sentence
+ * with an Aho-Corasick automaton over tokens.
+ *
+ * The lexicon has one cue per line:
+ * - a token or a sequence of tokens separated by spaces,
+ *    e.g., "than", "compared to"
+ * - a suffix pattern *suffix, e.g., "*er": a token of letters
+ *    that ends with the suffix and has at least MIN_STEM letters before it
+ * - an exception !token, e.g., "!never": the token does not match
+ *    suffix patterns
+ * Empty lines and lines starting with # are ignored.
+ * Tokens are compared ignoring case.
+ *
+ * Each token is looked up once in a hash table of the tokens of the lexicon
+ * (tokens not in the lexicon reset the automaton), followed by
+ * the transitions of the automaton (amortized constant per token)
+ * and a walk back from the end of the token over a trie of the suffixes.
+ * So the time per token does not depend on the size of the lexicon.
+ *
+ * Thread-safe after construction.
+ */
+public class CueMatcher {
+
+   // Letters before a suffix
+   public static final int MIN_STEM = 3;
+
+   private static final int ROOT = 0;
+
+   // Cues (phrases and suffix patterns) as in the lexicon
+   private ArrayList<String> cues = new ArrayList<String>();
+
+   // Tokens of phrases
+   private HashMap<String, Integer> symbols = new HashMap<String, Integer>();
+
+   // Automaton over symbols:
+   // transitions, failure link, cue that ends in the state (-1 if none),
+   // and the next state on the failure path with a cue (-1 if none)
+   private LongIntMap transitions = new LongIntMap();
+   private int[] fail;
+   private int[] output;
+   private int[] nextOutput;
+
+   // Trie of reversed suffixes over characters, cue that ends in each node
+   private LongIntMap suffixTrie = new LongIntMap();
+   private int[] suffixOutput;
+   private HashSet<String> exceptions = new HashSet<String>();
+
+
+   /**
+    * Read a lexicon in UTF-8.
+    */
+   public static CueMatcher load (String fileName) throws IOException {
+      ArrayList<String> lines = new ArrayList<String>();
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+      try {
+         String line;
+         while ((line = in.readLine()) != null) {
+            lines.add(line);
+         }
+      } finally {
+         in.close();
+      }
+      return new CueMatcher(lines);
+   }
+
+
+   /**
+    * Build the automaton.
+    * @param lexicon lines of the lexicon (see above)
+    */
+   public CueMatcher (List<String> lexicon) {
+      ArrayList<int[]> phrases = new ArrayList<int[]>();
+      ArrayList<Integer> phraseCues = new ArrayList<Integer>();
+      ArrayList<String> suffixes = new ArrayList<String>();
+      ArrayList<Integer> suffixCues = new ArrayList<Integer>();
+      for (String line : lexicon) {
+         line = line.trim();
+         if (line.isEmpty() || line.startsWith("#"))
+            continue;
+         String entry = line.toLowerCase(Locale.ENGLISH);
+         if (entry.startsWith("!")) {
+            exceptions.add(entry.substring(1).trim());
+         } else if (entry.startsWith("*") && entry.length() > 1) {
+            suffixes.add(entry.substring(1));
+            suffixCues.add(cues.size());
+            cues.add(line);
+         } else {
+            String[] tokens = entry.split("\\s+");
+            int[] phrase = new int[tokens.length];
+            for (int i=0; i<tokens.length; i++) {
+               Integer symbol = symbols.get(tokens[i]);
+               if (symbol == null) {
+                  symbol = symbols.size();
+                  symbols.put(tokens[i], symbol);
+               }
+               phrase[i] = symbol;
+            }
+            phrases.add(phrase);
+            phraseCues.add(cues.size());
+            cues.add(line);
+         }
+      }
+      buildAutomaton(phrases, phraseCues);
+      buildSuffixTrie(suffixes, suffixCues);
+   }
+
+
+   /**
+    * Number of cues (phrases and suffix patterns).
+    */
+   public int getNumberCues () {
+      return cues.size();
+   }
+
+
+   /**
+    * Find the cues in a sentence.
+    * @param sentences sentences and tokens
+    * @param sentence number of the sentence
+    * @param found cues found are added, each only once (may be null)
+    * @return number of matches
+    */
+   public int match (SentenceBoundaries sentences, int sentence, List<String> found) {
+      int matches = 0;
+      int state = ROOT;
+      for (int t=sentences.getFirstToken(sentence); t<sentences.getFirstToken(sentence+1); t++) {
+         String token = sentences.getTokenValue(t);
+         String lowerCase = toLowerCase(token);
+
+         // Phrases
+         Integer symbol = symbols.get(lowerCase);
+         if (symbol == null) {
+            state = ROOT;
+         } else {
+            int next = transitions.get(key(state, symbol));
+            while (next < 0 && state != ROOT) {
+               state = fail[state];
+               next = transitions.get(key(state, symbol));
+            }
+            state = (next < 0) ? ROOT : next;
+            for (int s = (output[state] >= 0) ? state : nextOutput[state]; s >= 0; s = nextOutput[s]) {
+               matches++;
+               add(found, output[s]);
+            }
+         }
+
+         // Suffixes
+         int cue = matchSuffix(lowerCase);
+         if (cue >= 0) {
+            matches++;
+            add(found, cue);
+         }
+      }
+      return matches;
+   }
+
+
+   private void add (List<String> found, int cue) {
+      if (found != null && !found.contains(cues.get(cue))) {
+         found.add(cues.get(cue));
+      }
+   }
+
+
+   /**
+    * Longest suffix pattern that matches the token.
+    * @return cue, -1 if there is none
+    */
+   private int matchSuffix (String token) {
+      if (suffixOutput.length == 1 || token.length() <= MIN_STEM || exceptions.contains(token))
+         return -1;
+      for (int i=0; i<token.length(); i++) {
+         if (!Character.isLetter(token.charAt(i)))
+            return -1;
+      }
+      int cue = -1;
+      int node = ROOT;
+      for (int i=token.length()-1; i>=MIN_STEM; i--) {
+         node = suffixTrie.get(key(node, token.charAt(i)));
+         if (node < 0)
+            break;
+         if (suffixOutput[node] >= 0) {
+            cue = suffixOutput[node];
+         }
+      }
+      return cue;
+   }
+
+
+   private static String toLowerCase (String token) {
+      for (int i=0; i<token.length(); i++) {
+         if (Character.isUpperCase(token.charAt(i))) {
+            return token.toLowerCase(Locale.ENGLISH);
+         }
+      }
+      return token;
+   }
+
+
+
+   // Construction
+
+
+   private void buildAutomaton (ArrayList<int[]> phrases, ArrayList<Integer> phraseCues) {
+      // Trie of the phrases, children of each state for the breadth-first search
+      ArrayList<Integer> outputs = new ArrayList<Integer>();
+      ArrayList<ArrayList<int[]>> children = new ArrayList<ArrayList<int[]>>();
+      outputs.add(-1);
+      children.add(new ArrayList<int[]>());
+      for (int p=0; p<phrases.size(); p++) {
+         int state = ROOT;
+         for (int symbol : phrases.get(p)) {
+            int next = transitions.get(key(state, symbol));
+            if (next < 0) {
+               next = outputs.size();
+               outputs.add(-1);
+               children.add(new ArrayList<int[]>());
+               transitions.put(key(state, symbol), next);
+               children.get(state).add(new int[] {symbol, next});
+            }
+            state = next;
+         }
+         if (outputs.get(state) < 0) {
+            outputs.set(state, phraseCues.get(p));
+         }
+      }
+
+      int numberStates = outputs.size();
+      output = new int[numberStates];
+      fail = new int[numberStates];
+      nextOutput = new int[numberStates];
+      for (int s=0; s<numberStates; s++) {
+         output[s] = outputs.get(s);
+      }
+      nextOutput[ROOT] = -1;
+
+      // Failure links in breadth-first order
+      int[] queue = new int[numberStates];
+      int head = 0;
+      int tail = 0;
+      for (int[] child : children.get(ROOT)) {
+         fail[child[1]] = ROOT;
+         nextOutput[child[1]] = -1;
+         queue[tail++] = child[1];
+      }
+      while (head < tail) {
+         int state = queue[head++];
+         for (int[] child : children.get(state)) {
+            int symbol = child[0];
+            int f = fail[state];
+            int next = transitions.get(key(f, symbol));
+            while (next < 0 && f != ROOT) {
+               f = fail[f];
+               next = transitions.get(key(f, symbol));
+            }
+            fail[child[1]] = (next < 0) ? ROOT : next;
+            int failState = fail[child[1]];
+            nextOutput[child[1]] = (output[failState] >= 0) ? failState : nextOutput[failState];
+            queue[tail++] = child[1];
+         }
+      }
+   }
+
+
+   private void buildSuffixTrie (ArrayList<String> suffixes, ArrayList<Integer> suffixCues) {
+      ArrayList<Integer> outputs = new ArrayList<Integer>();
+      outputs.add(-1);
+      for (int i=0; i<suffixes.size(); i++) {
+         String suffix = suffixes.get(i);
+         int node = ROOT;
+         for (int c=suffix.length()-1; c>=0; c--) {
+            int next = suffixTrie.get(key(node, suffix.charAt(c)));
+            if (next < 0) {
+               next = outputs.size();
+               outputs.add(-1);
+               suffixTrie.put(key(node, suffix.charAt(c)), next);
+            }
+            node = next;
+         }
+         if (outputs.get(node) < 0) {
+            outputs.set(node, suffixCues.get(i));
+         }
+      }
+      suffixOutput = new int[outputs.size()];
+      for (int i=0; i<suffixOutput.length; i++) {
+         suffixOutput[i] = outputs.get(i);
+      }
+   }
+
+
+   private static long key (int state, int symbol) {
+      return ((long) state << 32) | (symbol & 0xffffffffL);
+   }
+
+
+
+   /**
+    * Hash table from long to int without boxing (open addressing).
+    * get() returns -1 for keys that are not in the table,
+    * values must not be negative.
+    */
+   private static class LongIntMap {
+
+      private long[] keys = new long[16];
+      private int[] values = new int[16];
+      private int size = 0;
+
+      LongIntMap () {
+         Arrays.fill(values, -1);
+      }
+
+      int get (long key) {
+         int mask = keys.length - 1;
+         int slot = hash(key) & mask;
+         while (values[slot] >= 0) {
+            if (keys[slot] == key)
+               return values[slot];
+            slot = (slot + 1) & mask;
+         }
+         return -1;
+      }
+
+      void put (long key, int value) {
+         if (2 * (size + 1) > keys.length) {
+            grow();
+         }
+         int mask = keys.length - 1;
+         int slot = hash(key) & mask;
+         while (values[slot] >= 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+         }
+         if (values[slot] < 0) {
+            size++;
+         }
+         keys[slot] = key;
+         values[slot] = value;
+      }
+
+      private void grow () {
+         long[] oldKeys = keys;
+         int[] oldValues = values;
+         keys = new long[oldKeys.length * 2];
+         values = new int[oldKeys.length * 2];
+         Arrays.fill(values, -1);
+         size = 0;
+         for (int i=0; i<oldKeys.length; i++) {
+            if (oldValues[i] >= 0) {
+               put(oldKeys[i], oldValues[i]);
+            }
+         }
+      }
+
+      private static int hash (long key) {
+         key *= 0x9e3779b97f4a7c15L;
+         return (int) (key ^ (key >>> 32));
+      }
+   }
+
+}
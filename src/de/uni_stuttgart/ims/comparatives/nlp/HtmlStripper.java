@@ -0,0 +1,134 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+
+/**
+ * Remove HTML tags from a text in a single pass.
+ *
+ * Tags are replaced by a space, exactly as
+ * text.replaceAll("<[^>]+>", " ") does: a tag starts with <, ends with
+ * the next > and contains at least one character. A < without a
+ * following > stays in the text.
+ *
+ * Entities (e.g., &amp; or &lt;b&gt;) are kept as they are,
+ * each sentence splitter handles them itself. Decoding them here
+ * would change the tokens (e.g., &lt;b&gt; would become one SGML token
+ * for Stanford instead of three).
+ *
+ * For every position in the stripped text, the position in the original
+ * text is kept, so offsets (e.g., of sentences and tokens) can be
+ * mapped back to the original text with getOriginalPosition().
+ *
+ * The buffers are reused for all texts. Not thread-safe,
+ * use one object per thread.
+ */
+public class HtmlStripper {
+
+   // Original text
+   private char[] in = new char[4096];
+   private int inLength = 0;
+
+   // Stripped text and the position of each character in the original text,
+   // entry 'length' is the length of the original text
+   private char[] out = new char[4096];
+   private int[] positions = new int[4097];
+   private int length = 0;
+
+
+   /**
+    * Remove tags.
+    * @param text original text
+    * @return stripped text
+    */
+   public String strip (CharSequence text) {
+      load(text);
+      length = 0;
+
+      // Position of the next >, or inLength if there is none
+      int nextTagEnd = -1;
+
+      int i = 0;
+      while (i < inLength) {
+         char c = in[i];
+
+         if (c == '<') {
+            if (nextTagEnd < i) {
+               nextTagEnd = indexOf('>', i+1);
+            }
+            // Tag with at least one character
+            if (nextTagEnd < inLength && nextTagEnd > i+1) {
+               put(' ', i);
+               i = nextTagEnd + 1;
+               continue;
+            }
+         }
+
+         put(c, i);
+         i++;
+      }
+      positions[length] = inLength;
+
+      return new String(out, 0, length);
+   }
+
+
+   /**
+    * Length of the last stripped text.
+    */
+   public int getLength () {
+      return length;
+   }
+
+
+   /**
+    * Map a position in the last stripped text to the original text.
+    * For a start position, the result is the start of the tag
+    * that the character comes from. For an end position (+1 after the
+    * last character), the result is +1 after the end of the tag.
+    * @param position between 0 and getLength() (inclusive)
+    */
+   public int getOriginalPosition (int position) {
+      return positions[position];
+   }
+
+
+
+   private void load (CharSequence text) {
+      inLength = text.length();
+      if (inLength > in.length) {
+         in = new char[Math.max(inLength, in.length * 2)];
+      }
+      if (text instanceof String) {
+         ((String) text).getChars(0, inLength, in, 0);
+      } else {
+         for (int i=0; i<inLength; i++) {
+            in[i] = text.charAt(i);
+         }
+      }
+      // Stripped text is never longer than the original text
+      if (inLength > out.length) {
+         out = new char[in.length];
+         positions = new int[in.length + 1];
+      }
+   }
+
+
+   private void put (char c, int position) {
+      out[length] = c;
+      positions[length] = position;
+      length += 1;
+   }
+
+
+   private int indexOf (char c, int from) {
+      for (int i=from; i<inLength; i++) {
+         if (in[i] == c)
+            return i;
+      }
+      return inLength;
+   }
+
+}
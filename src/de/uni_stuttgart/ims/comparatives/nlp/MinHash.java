@@ -0,0 +1,195 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * MinHash signatures of tokenized texts, to estimate the Jaccard similarity
+ * of their sets of shingles (n-grams of tokens), and the band keys
+ * for locality sensitive hashing (LSH).
+ *
+ * Tokens are compared ignoring case. Each shingle is hashed to 64 bits,
+ * hash function i is h_i(x) = upper 32 bits of (a_i * x + b_i)
+ * with random odd a_i. The signature is the minimum of each hash function
+ * over all shingles of the text.
+ *
+ * The signature of the union of texts is the element-wise minimum
+ * of their signatures (see merge()), e.g., a review from its sentences.
+ *
+ * The signature has numberBands * rowsPerBand values. Two texts
+ * with Jaccard similarity s have the same key in at least one band
+ * with probability 1 - (1 - s^rowsPerBand)^numberBands.
+ *
+ * Thread-safe after construction.
+ */
+public class MinHash {
+
+   private int numberBands;
+   private int rowsPerBand;
+   private int shingleSize;
+   private long[] a;
+   private long[] b;
+
+
+   /**
+    * @param numberBands number of LSH bands
+    * @param rowsPerBand number of hash values per band
+    * @param shingleSize number of tokens per shingle
+    * @param seed seed of the hash functions, signatures can only
+    *    be compared if they have been computed with the same seed
+    */
+   public MinHash (int numberBands, int rowsPerBand, int shingleSize, long seed) {
+      this.numberBands = numberBands;
+      this.rowsPerBand = rowsPerBand;
+      this.shingleSize = shingleSize;
+      Random random = new Random(seed);
+      a = new long[numberBands * rowsPerBand];
+      b = new long[a.length];
+      for (int i=0; i<a.length; i++) {
+         a[i] = random.nextLong() | 1;
+         b[i] = random.nextLong();
+      }
+   }
+
+
+   /**
+    * Number of values in a signature.
+    */
+   public int getSignatureLength () {
+      return a.length;
+   }
+
+
+   public int getNumberBands () {
+      return numberBands;
+   }
+
+
+   public int getRowsPerBand () {
+      return rowsPerBand;
+   }
+
+
+   /**
+    * Signature of a text with nothing in it (no shingles).
+    */
+   public void clear (int[] signature) {
+      Arrays.fill(signature, Integer.MAX_VALUE);
+   }
+
+
+   /**
+    * Compute the signature of a tokenized text.
+    * Texts with fewer tokens than the shingle size have one shingle
+    * of all tokens.
+    * @param text tokens separated by spaces
+    * @param signature array of getSignatureLength() for the result
+    * @param tokenHashes buffer to reuse (may be null, is not grown in place)
+    * @return number of shingles, 0 if the text has no tokens
+    *    (then the signature is the same as after clear())
+    */
+   public int signature (CharSequence text, int[] signature, long[] tokenHashes) {
+      // Hash all tokens
+      int numberTokens = 0;
+      if (tokenHashes == null) {
+         tokenHashes = new long[64];
+      }
+      long hash = 0;
+      boolean inToken = false;
+      for (int i=0; i<=text.length(); i++) {
+         char c = (i < text.length()) ? text.charAt(i) : ' ';
+         if (c == ' ' || c == '\t') {
+            if (inToken) {
+               if (numberTokens == tokenHashes.length) {
+                  tokenHashes = Arrays.copyOf(tokenHashes, numberTokens * 2);
+               }
+               tokenHashes[numberTokens++] = hash;
+               inToken = false;
+            }
+         } else {
+            if (!inToken) {
+               hash = 0xcbf29ce484222325L;
+               inToken = true;
+            }
+            // FNV-1a
+            hash = (hash ^ Character.toLowerCase(c)) * 0x100000001b3L;
+         }
+      }
+
+      clear(signature);
+      if (numberTokens == 0)
+         return 0;
+      int size = Math.min(shingleSize, numberTokens);
+      int numberShingles = numberTokens - size + 1;
+      for (int s=0; s<numberShingles; s++) {
+         long shingle = 0;
+         for (int t=s; t<s+size; t++) {
+            shingle = mix(shingle * 31 + tokenHashes[t]);
+         }
+         for (int i=0; i<a.length; i++) {
+            int value = (int) ((a[i] * shingle + b[i]) >>> 32);
+            if (value < signature[i]) {
+               signature[i] = value;
+            }
+         }
+      }
+      return numberShingles;
+   }
+
+
+   /**
+    * Add the shingles of another text to a signature
+    * (signature of the union).
+    */
+   public static void merge (int[] signature, int[] other) {
+      for (int i=0; i<signature.length; i++) {
+         if (other[i] < signature[i]) {
+            signature[i] = other[i];
+         }
+      }
+   }
+
+
+   /**
+    * Key of a band of a signature, texts with the same key are candidates.
+    * @param band number of the band, starting with 0
+    */
+   public long bandKey (int[] signature, int band) {
+      long key = band;
+      for (int i=band*rowsPerBand; i<(band+1)*rowsPerBand; i++) {
+         key = mix(key * 31 + signature[i]);
+      }
+      return key;
+   }
+
+
+   /**
+    * Estimated Jaccard similarity: fraction of equal values.
+    */
+   public static double similarity (int[] signature1, int[] signature2) {
+      int same = 0;
+      for (int i=0; i<signature1.length; i++) {
+         if (signature1[i] == signature2[i]) {
+            same++;
+         }
+      }
+      return (double) same / signature1.length;
+   }
+
+
+   /**
+    * Finalizer of SplitMix64, spreads the bits of a hash.
+    */
+   private static long mix (long z) {
+      z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+      z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+      return z ^ (z >>> 31);
+   }
+
+}
@@ -0,0 +1,246 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.util.Arrays;
+
+
+/**
+ * Sentence and token boundaries of a document as primitive int offsets.
+ *
+ * Filled by SentenceSplitter.split(String, SentenceBoundaries).
+ * The arrays grow as needed and are kept when the object is cleared,
+ * so one object can be reused for many documents without allocating
+ * anything per sentence.
+ *
+ * Offsets are character positions in the document that was split,
+ * end positions are +1 after the last character (as in TextSpan).
+ * Token i belongs to sentence s if
+ * getFirstToken(s) <= i < getFirstToken(s+1).
+ *
+ * The tokenized text of a sentence (tokens separated by spaces)
+ * is only built when asked for.
+ */
+public class SentenceBoundaries {
+
+   private int numberSentences = 0;
+   private int[] sentenceBegin;
+   private int[] sentenceEnd;
+   // First token of each sentence, entry numberSentences is numberTokens
+   private int[] firstToken;
+
+   private int numberTokens = 0;
+   private int[] tokenBegin;
+   private int[] tokenEnd;
+   // Token as given by the tokenizer (may be normalized, e.g. n't)
+   private String[] tokenValue;
+
+
+   public SentenceBoundaries () {
+      this(16, 256);
+   }
+
+   /**
+    * @param sentenceCapacity initial number of sentences
+    * @param tokenCapacity initial number of tokens
+    */
+   public SentenceBoundaries (int sentenceCapacity, int tokenCapacity) {
+      sentenceBegin = new int[Math.max(1, sentenceCapacity)];
+      sentenceEnd = new int[sentenceBegin.length];
+      firstToken = new int[sentenceBegin.length + 1];
+      tokenBegin = new int[Math.max(1, tokenCapacity)];
+      tokenEnd = new int[tokenBegin.length];
+      tokenValue = new String[tokenBegin.length];
+   }
+
+
+   // Filling
+
+
+   /**
+    * Remove all sentences and tokens, keep the arrays.
+    */
+   public void clear () {
+      // Drop references to the token Strings of the last document
+      Arrays.fill(tokenValue, 0, numberTokens, null);
+      numberSentences = 0;
+      numberTokens = 0;
+      firstToken[0] = 0;
+   }
+
+
+   /**
+    * Add a token to the current sentence.
+    * @param begin start of the token in the document
+    * @param end end of the token in the document
+    * @param value token text as given by the tokenizer
+    */
+   public void addToken (int begin, int end, String value) {
+      if (numberTokens == tokenBegin.length) {
+         int capacity = tokenBegin.length * 2;
+         tokenBegin = Arrays.copyOf(tokenBegin, capacity);
+         tokenEnd = Arrays.copyOf(tokenEnd, capacity);
+         tokenValue = Arrays.copyOf(tokenValue, capacity);
+      }
+      tokenBegin[numberTokens] = begin;
+      tokenEnd[numberTokens] = end;
+      tokenValue[numberTokens] = value;
+      numberTokens += 1;
+   }
+
+
+   /**
+    * End the current sentence.
+    * The sentence consists of all tokens added since the last sentence,
+    * it starts at the first of them and ends at the last.
+    * Does nothing if no tokens have been added.
+    */
+   public void endSentence () {
+      int first = firstToken[numberSentences];
+      if (first == numberTokens)
+         return;
+      if (numberSentences == sentenceBegin.length) {
+         int capacity = sentenceBegin.length * 2;
+         sentenceBegin = Arrays.copyOf(sentenceBegin, capacity);
+         sentenceEnd = Arrays.copyOf(sentenceEnd, capacity);
+         firstToken = Arrays.copyOf(firstToken, capacity + 1);
+      }
+      sentenceBegin[numberSentences] = tokenBegin[first];
+      sentenceEnd[numberSentences] = tokenEnd[numberTokens-1];
+      numberSentences += 1;
+      firstToken[numberSentences] = numberTokens;
+   }
+
+
+   // Sentences
+
+
+   public int getNumberSentences () {
+      return numberSentences;
+   }
+
+   public int getSentenceBegin (int sentence) {
+      return sentenceBegin[sentence];
+   }
+
+   public int getSentenceEnd (int sentence) {
+      return sentenceEnd[sentence];
+   }
+
+   /**
+    * Index of the first token of the sentence.
+    * @param sentence between 0 and getNumberSentences() (inclusive,
+    *    for getNumberSentences() the result is getNumberTokens())
+    */
+   public int getFirstToken (int sentence) {
+      return firstToken[sentence];
+   }
+
+
+   // Tokens
+
+
+   public int getNumberTokens () {
+      return numberTokens;
+   }
+
+   public int getTokenBegin (int token) {
+      return tokenBegin[token];
+   }
+
+   public int getTokenEnd (int token) {
+      return tokenEnd[token];
+   }
+
+   public String getTokenValue (int token) {
+      return tokenValue[token];
+   }
+
+
+   /**
+    * Map all offsets from the stripped text to the original text.
+    * @param stripper stripper that produced the text that was split
+    */
+   public void mapOffsets (HtmlStripper stripper) {
+      for (int s=0; s<numberSentences; s++) {
+         sentenceBegin[s] = stripper.getOriginalPosition(sentenceBegin[s]);
+         sentenceEnd[s] = stripper.getOriginalPosition(sentenceEnd[s]);
+      }
+      for (int i=0; i<numberTokens; i++) {
+         tokenBegin[i] = stripper.getOriginalPosition(tokenBegin[i]);
+         tokenEnd[i] = stripper.getOriginalPosition(tokenEnd[i]);
+      }
+   }
+
+
+   // Tokenized text
+
+
+   /**
+    * Get the tokenized text of a sentence, each token followed by a space.
+    * @param sentence
+    */
+   public String getTokenizedSentence (int sentence) {
+      int first = firstToken[sentence];
+      int last = firstToken[sentence+1];
+      int length = 0;
+      for (int i=first; i<last; i++) {
+         length += tokenValue[i].length() + 1;
+      }
+      StringBuilder sb = new StringBuilder(length);
+      appendTokenizedSentence(sentence, sb);
+      return sb.toString();
+   }
+
+
+   /**
+    * Append the tokenized text of a sentence, each token followed by a space.
+    * @param sentence
+    * @param sb
+    */
+   public void appendTokenizedSentence (int sentence, StringBuilder sb) {
+      for (int i=firstToken[sentence]; i<firstToken[sentence+1]; i++) {
+         sb.append(tokenValue[i]).append(' ');
+      }
+   }
+
+
+   /**
+    * Convert to spans with start/end positions and the tokenized text
+    * of each sentence.
+    */
+   public TextSpan[] toTextSpans () {
+      TextSpan[] spans = new TextSpan[numberSentences];
+      for (int s=0; s<numberSentences; s++) {
+         spans[s] = new TextSpan(sentenceBegin[s], sentenceEnd[s], getTokenizedSentence(s));
+      }
+      return spans;
+   }
+
+
+   /**
+    * Copy of the sentences and tokens with arrays just large enough.
+    * Used to keep the result when this object is reused.
+    */
+   public SentenceBoundaries copy () {
+      SentenceBoundaries copy = new SentenceBoundaries(numberSentences, numberTokens);
+      System.arraycopy(sentenceBegin, 0, copy.sentenceBegin, 0, numberSentences);
+      System.arraycopy(sentenceEnd, 0, copy.sentenceEnd, 0, numberSentences);
+      System.arraycopy(firstToken, 0, copy.firstToken, 0, numberSentences + 1);
+      System.arraycopy(tokenBegin, 0, copy.tokenBegin, 0, numberTokens);
+      System.arraycopy(tokenEnd, 0, copy.tokenEnd, 0, numberTokens);
+      System.arraycopy(tokenValue, 0, copy.tokenValue, 0, numberTokens);
+      copy.numberSentences = numberSentences;
+      copy.numberTokens = numberTokens;
+      return copy;
+   }
+
+
+   public String toString () {
+      return numberSentences + " sentences, " + numberTokens + " tokens";
+   }
+
+}
@@ -11,6 +11,15 @@ import java.io.Closeable;
 
 /**
  * Wrapper around sentence splitters.
+ *
+ * Concurrency: an object may only be used by one thread at a time,
+ * unless the class says otherwise (implementations reuse buffers
+ * between calls). Splitting with several threads:
+ * - one object per thread (e.g., in a ThreadLocal), or
+ * - a SentenceSplitterPool, which creates the objects as needed
+ *    and shares what is expensive to initialize.
+ * The result of a call does not depend on earlier calls or on other
+ * objects, so every object of the same class gives the same output.
  */
 public abstract class SentenceSplitter implements Closeable {
    
@@ -22,4 +31,70 @@ public abstract class SentenceSplitter implements Closeable {
    public abstract TextSpan[] split (String document);
 
    
+   /**
+    * Split the string into sentences and tokens.
+    * Only the boundaries are stored as int offsets,
+    * the tokenized text of a sentence is built only if asked for.
+    *
+    * This implementation calls split(String) and finds the tokens
+    * of the tokenized text of each sentence in the document.
+    * A token that is not found as it is (e.g., brackets replaced by
+    * the tokenizer) covers the next characters up to whitespace
+    * or the next token.
+    * Subclasses that have the token offsets should override it.
+    * @param document
+    * @param boundaries object to fill, will be cleared first (reuse it
+    *    for many documents to avoid allocation), if null a new one is created
+    * @return boundaries
+    */
+   public SentenceBoundaries split (String document, SentenceBoundaries boundaries) {
+      if (boundaries == null) {
+         boundaries = new SentenceBoundaries();
+      } else {
+         boundaries.clear();
+      }
+      for (TextSpan span : this.split(document)) {
+         String tokenized = (span.coveredText != null) ? span.coveredText : span.getCoveredText(document);
+         String[] tokens = tokenized.trim().split("\\s+");
+         int position = span.begin;
+         for (int t=0; t<tokens.length; t++) {
+            if (tokens[t].length() == 0)
+               continue;
+            while (position < span.end && Character.isWhitespace(document.charAt(position))) {
+               position += 1;
+            }
+            int begin = find(document, tokens[t], position, span.end);
+            int end = begin + tokens[t].length();
+            if (begin < 0) {
+               // Up to whitespace or the next token
+               int limit = (t+1 < tokens.length) ? find(document, tokens[t+1], position, span.end) : -1;
+               if (limit < 0) {
+                  limit = span.end;
+               }
+               begin = position;
+               end = position;
+               while (end < limit && !Character.isWhitespace(document.charAt(end))) {
+                  end += 1;
+               }
+            }
+            boundaries.addToken(begin, end, tokens[t]);
+            position = end;
+         }
+         boundaries.endSentence();
+      }
+      return boundaries;
+   }
+
+
+   /**
+    * Position of the token in the document between from and to, -1 if it is not there.
+    */
+   private static int find (String document, String token, int from, int to) {
+      int begin = document.indexOf(token, from);
+      if (begin < 0 || begin + token.length() > to)
+         return -1;
+      return begin;
+   }
+
+   
 }
@@ -0,0 +1,37 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+
+/**
+ * Create sentence splitters by name
+ * (e.g., from a command line option).
+ */
+public class SentenceSplitterFactory {
+
+   /** Stanford PTB tokenizer (SentenceSplitterStanford), the default */
+   public static final String STANFORD = "stanford";
+   /** Fast rule-based splitter (SentenceSplitterRules) */
+   public static final String RULES = "rules";
+
+   public static final String[] NAMES = {STANFORD, RULES};
+
+
+   /**
+    * Create a new sentence splitter.
+    * @param name one of NAMES
+    * @return new splitter
+    * @throws IllegalArgumentException if there is no splitter with this name
+    */
+   public static SentenceSplitter create (String name) {
+      if (name.equals(STANFORD)) {
+         return new SentenceSplitterStanford();
+      } else if (name.equals(RULES)) {
+         return new SentenceSplitterRules();
+      }
+      throw new IllegalArgumentException("Unknown sentence splitter: " + name);
+   }
+
+}
@@ -0,0 +1,128 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.process.TokenizerFactory;
+
+
+/**
+ * Pool of sentence splitters of one kind for several threads.
+ *
+ * A thread takes a splitter with acquire() and gives it back with
+ * release(), or calls split() which does both. While a thread has
+ * a splitter, no other thread uses it. A new splitter is created
+ * only if all splitters are in use, so there are never more splitters
+ * than threads that split at the same time.
+ * What is expensive to initialize is done once and shared by all
+ * splitters (the Stanford tokenizer factory, the cache).
+ *
+ * Thread-safe, acquire() and release() do not lock.
+ */
+public class SentenceSplitterPool implements Closeable {
+
+   private String name;
+   private SplitCache splitCache;
+   private TokenizerFactory<CoreLabel> stanfordTokenizerFactory = null;
+
+   private ConcurrentLinkedQueue<SentenceSplitter> available = new ConcurrentLinkedQueue<SentenceSplitter>();
+   private ConcurrentLinkedQueue<SentenceSplitter> created = new ConcurrentLinkedQueue<SentenceSplitter>();
+
+
+   /**
+    * @param name sentence splitter to use (see SentenceSplitterFactory)
+    * @param splitCache cache shared by all splitters (may be null)
+    * @throws IllegalArgumentException if there is no splitter with this name
+    */
+   public SentenceSplitterPool (String name, SplitCache splitCache) {
+      this.name = name;
+      this.splitCache = splitCache;
+      if (name.equals(SentenceSplitterFactory.STANFORD)) {
+         stanfordTokenizerFactory = SentenceSplitterStanford.createTokenizerFactory();
+      }
+      // Fail early for unknown names
+      available.add(newSplitter());
+   }
+
+
+   private SentenceSplitter newSplitter () {
+      SentenceSplitter splitter;
+      if (stanfordTokenizerFactory != null) {
+         splitter = new SentenceSplitterStanford(stanfordTokenizerFactory);
+      } else {
+         splitter = SentenceSplitterFactory.create(name);
+      }
+      if (splitCache != null) {
+         splitter = new CachingSentenceSplitter(splitter, splitCache);
+      }
+      created.add(splitter);
+      return splitter;
+   }
+
+
+   /**
+    * Take a splitter that no other thread uses,
+    * give it back with release() when done.
+    */
+   public SentenceSplitter acquire () {
+      SentenceSplitter splitter = available.poll();
+      if (splitter == null) {
+         splitter = newSplitter();
+      }
+      return splitter;
+   }
+
+
+   /**
+    * Give back a splitter taken with acquire().
+    */
+   public void release (SentenceSplitter splitter) {
+      available.add(splitter);
+   }
+
+
+   /**
+    * Split the string into sentences and tokens with a splitter of the pool.
+    * @see SentenceSplitter#split(String, SentenceBoundaries)
+    */
+   public SentenceBoundaries split (String document, SentenceBoundaries boundaries) {
+      SentenceSplitter splitter = acquire();
+      try {
+         return splitter.split(document, boundaries);
+      } finally {
+         release(splitter);
+      }
+   }
+
+
+   /**
+    * Number of splitters that have been created.
+    */
+   public int getNumberSplitters () {
+      return created.size();
+   }
+
+
+   /**
+    * Close all splitters (the cache is not closed).
+    */
+   public void close () throws IOException {
+      IOException failure = null;
+      for (SentenceSplitter splitter : created) {
+         try {
+            splitter.close();
+         } catch (IOException e) {
+            failure = e;
+         }
+      }
+      if (failure != null)
+         throw failure;
+   }
+
+}
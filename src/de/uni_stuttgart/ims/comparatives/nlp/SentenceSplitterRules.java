@@ -0,0 +1,534 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+
+/**
+ * Fast rule-based sentence splitter and tokenizer without dependencies.
+ *
+ * Splits in a single pass over the characters of the document.
+ * Follows the Stanford PTB tokenizer with the options used in
+ * SentenceSplitterStanford for the common cases:
+ * - punctuation is split off words, runs of ! and ? stay together
+ * - a sentence ends after a single . ! or ?, closing quotes and
+ *    brackets that follow still belong to the sentence
+ * - abbreviations from a table, initials and acronyms (U.S.) keep their period,
+ *    some of them (etc.) can end a sentence, then an extra . is added
+ * - contractions are split (do n't, it 's, I 'm, ca n't, gon na)
+ * - quotes become `` '' ` ' , ... and the ellipsis character become ...
+ * - the entities &amp; &lt; &gt; &quot; &apos; are replaced
+ * - numbers with . , : stay together (1,299.99 10:30), units after
+ *    decimal numbers are split (1.5 mm)
+ *
+ * It does not give exactly the same tokens and sentences as Stanford
+ * (see SplitterAgreement for a comparison), use it when the
+ * exact tokenization is not needed, e.g., for pre-filtering.
+ *
+ * Not thread-safe, use one object per thread.
+ */
+public class SentenceSplitterRules extends SentenceSplitter {
+
+   // Abbreviations that never end a sentence
+   private static final HashSet<String> TITLES = set(
+         "Mr", "Mrs", "Ms", "Dr", "Prof", "St", "Mt", "Gen", "Gov", "Sen", "Rep", "Rev",
+         "Sgt", "Capt", "Col", "Lt", "Maj", "Hon", "Messrs", "vs", "cf", "ca", "approx", "Fig", "fig");
+
+   // Abbreviations that may end a sentence, before an uppercase letter
+   // or the end of the document an extra . is added
+   private static final HashSet<String> SENTENCE_ABBREVIATIONS = set(
+         "etc", "Inc", "Co", "Corp", "Ltd", "Jr", "Sr", "Bros", "al", "seq",
+         "Jan", "Feb", "Mar", "Apr", "Jun", "Jul", "Aug", "Sep", "Sept", "Oct", "Nov", "Dec",
+         "Mon", "Tue", "Tues", "Wed", "Thu", "Thurs", "Fri", "Sat", "Sun");
+
+   // Abbreviations before numbers (No. 3)
+   private static final HashSet<String> NUMBER_ABBREVIATIONS = set(
+         "No", "no", "Nos", "Nr", "nr", "Vol", "vol", "pp", "Art", "Ch", "ch");
+
+   // Words after which an acronym with periods (U.S.) ends the sentence
+   private static final HashSet<String> SENTENCE_STARTS = set(
+         "The", "It", "He", "She", "We", "They", "This", "That", "These", "Those",
+         "There", "But", "And", "So", "If", "In", "A", "An", "You", "My", "Our", "However",
+         "Mr", "Mrs", "Ms");
+
+   // Contractions that are split off at the end of a word
+   // (apostrophe written as ')
+   private static final String[] CONTRACTIONS = {"n't", "'s", "'m", "'d", "'re", "'ve", "'ll"};
+
+   // Words that are split in two as in the PTB
+   private static final String[] SPLIT_WORDS = {"cannot", "gonna", "gotta", "wanna", "lemme", "gimme"};
+
+   // Entities in the HTML text and their value
+   private static final String[] ENTITIES = {"&amp;", "&lt;", "&gt;", "&quot;", "&apos;", "&#39;"};
+   private static final String[] ENTITY_VALUES = {"&", "<", ">", "\"", "'", "'"};
+
+   private static final String OPEN_DOUBLE = "``";
+   private static final String CLOSE_DOUBLE = "''";
+   private static final String OPEN_SINGLE = "`";
+   private static final String CLOSE_SINGLE = "'";
+   private static final String PERIOD = ".";
+   private static final String ELLIPSIS = "...";
+
+   // Token Strings of recent tokens, so frequent tokens are not allocated again
+   private static final int CACHE_SIZE = 4096;
+   private String[] tokenCache = new String[CACHE_SIZE];
+
+   // State while splitting a document,
+   // characters are copied to an array that is reused
+   private String document;
+   private char[] text = new char[4096];
+   private int length;
+   private SentenceBoundaries boundaries;
+   private boolean sentenceEnded;
+
+
+   /**
+    * Split the string into sentences.
+    * @return List of spans with the start/end positions of each sentence.
+    */
+   public TextSpan[] split (String document) {
+      return split(document, null).toTextSpans();
+   }
+
+
+   /**
+    * Split the string into sentences and tokens.
+    * @return boundaries of sentences and tokens.
+    */
+   public SentenceBoundaries split (String document, SentenceBoundaries boundaries) {
+      if (boundaries == null) {
+         boundaries = new SentenceBoundaries();
+      } else {
+         boundaries.clear();
+      }
+      this.document = document;
+      this.length = document.length();
+      if (length > text.length) {
+         text = new char[Math.max(length, text.length * 2)];
+      }
+      document.getChars(0, length, text, 0);
+      this.boundaries = boundaries;
+      this.sentenceEnded = false;
+
+      int i = 0;
+      while (i < length) {
+         char c = text[i];
+         if (isSpace(c)) {
+            i++;
+         } else if (isWordCharacter(c)
+               || ((c == '-' || c == '+') && i+1 < length && isDigit(text[i+1]))
+               || (c == '\'' && i+1 < length && isDigit(text[i+1]))) {
+            i = word(i);
+         } else {
+            i = punctuation(i, c);
+         }
+      }
+      boundaries.endSentence();
+
+      this.document = null;
+      this.boundaries = null;
+      return boundaries;
+   }
+
+
+   /**
+    * Nothing to close.
+    */
+   @Override
+   public void close() throws IOException {
+   }
+
+
+
+   /**
+    * Read a word that starts at the given position.
+    * @return position after the word
+    */
+   private int word (int begin) {
+      int end = begin + 1;
+      boolean hasPeriod = false;
+      boolean hasApostrophe = false;
+      while (end < length) {
+         char c = text[end];
+         if (isWordCharacter(c)) {
+            end++;
+         } else if (end+1 < length && isWordCharacter(text[end+1])
+               && isInnerCharacter(c, text[end-1], text[end+1])) {
+            hasPeriod |= (c == '.');
+            hasApostrophe |= (c == '\'' || c == '\u2019');
+            end++;
+         } else {
+            break;
+         }
+      }
+
+      // URL: keep everything until the next space, but not punctuation at the end
+      if (document.startsWith("://", end)) {
+         while (end < length && !isSpace(text[end])) {
+            end++;
+         }
+         while (".,;:!?)\"'".indexOf(text[end-1]) >= 0) {
+            end--;
+         }
+         addToken(begin, end, null);
+         return end;
+      }
+
+      // Period at the end: abbreviation or end of sentence
+      // (if more periods follow, the abbreviation keeps the first one)
+      if (end < length && text[end] == '.') {
+         String word = document.substring(begin, end);
+         int next = skipSpace(end+1);
+         boolean acronym = hasPeriod && Character.isLetter(text[end-1]);
+         if (acronym || TITLES.contains(word) || SENTENCE_ABBREVIATIONS.contains(word)
+               || (end - begin == 1 && Character.isLetter(word.charAt(0)))
+               || (NUMBER_ABBREVIATIONS.contains(word) && next < length && isDigit(text[next]))) {
+            addToken(begin, end+1, null);
+            // Abbreviation at the end of the sentence, add the period of the sentence
+            boolean endsSentence;
+            if (end+1 < length && text[end+1] == '.') {
+               endsSentence = false;
+            } else if (acronym) {
+               endsSentence = (next == length) || SENTENCE_STARTS.contains(nextWord(next));
+            } else {
+               endsSentence = SENTENCE_ABBREVIATIONS.contains(word)
+                     && (next == length || Character.isUpperCase(text[next]));
+            }
+            if (endsSentence) {
+               addToken(end+1, end+1, PERIOD);
+               sentenceEnded = true;
+            }
+            return end+1;
+         }
+      }
+
+      addWord(begin, end, hasApostrophe);
+      return end;
+   }
+
+
+   /**
+    * Add a word, split contractions and units after numbers.
+    */
+   private void addWord (int begin, int end, boolean hasApostrophe) {
+
+      // Words that are split in two (all have 5 or 6 letters)
+      if (end - begin == 5 || end - begin == 6) {
+         for (String splitWord : SPLIT_WORDS) {
+            if (end - begin == splitWord.length() && (text[begin] | 0x20) == splitWord.charAt(0)
+                  && document.regionMatches(true, begin, splitWord, 0, splitWord.length())) {
+               addToken(begin, begin+3, null);
+               addToken(begin+3, end, null);
+               return;
+            }
+         }
+      }
+
+      // Contractions
+      if (hasApostrophe) {
+         for (String contraction : CONTRACTIONS) {
+            int start = end - contraction.length();
+            if (start > begin && endsWithContraction(start, contraction)) {
+               addToken(begin, start, null);
+               addToken(start, end, normalizeApostrophe(start, end));
+               return;
+            }
+         }
+      }
+
+      // Decimal number followed by a unit (1.5mm)
+      if (isDigit(text[begin])) {
+         int unit = begin;
+         boolean decimal = false;
+         while (unit < end && !Character.isLetter(text[unit])) {
+            decimal |= (text[unit] == '.');
+            unit++;
+         }
+         if (decimal && unit < end && isDigit(text[unit-1]) && allLetters(unit, end)) {
+            addToken(begin, unit, null);
+            addToken(unit, end, null);
+            return;
+         }
+      }
+
+      addToken(begin, end, null);
+   }
+
+
+   /**
+    * Read punctuation that starts at the given position.
+    * @return position after the punctuation
+    */
+   private int punctuation (int begin, char c) {
+      int end = begin + 1;
+      switch (c) {
+
+      case '.':
+         end = run(begin, '.');
+         if (end - begin <= 2) {
+            // .. are two periods
+            for (int i=begin; i<end; i++) {
+               addToken(i, i+1, PERIOD);
+            }
+            sentenceEnded = true;
+         } else {
+            addToken(begin, end, ELLIPSIS);
+         }
+         return end;
+
+      case '\u2026':
+         addToken(begin, end, ELLIPSIS);
+         return end;
+
+      case '!':
+      case '?':
+         while (end < length && (text[end] == '!' || text[end] == '?')) {
+            end++;
+         }
+         addToken(begin, end, null);
+         if (end - begin == 1) {
+            sentenceEnded = true;
+         }
+         return end;
+
+      case '-':
+         end = run(begin, '-');
+         addToken(begin, end, null);
+         return end;
+
+      case '"':
+         addToken(begin, end, isOpening(begin) ? OPEN_DOUBLE : CLOSE_DOUBLE);
+         return end;
+
+      case '\u201C':
+      case '\u201E':
+         addToken(begin, end, OPEN_DOUBLE);
+         return end;
+
+      case '\u201D':
+         addToken(begin, end, CLOSE_DOUBLE);
+         return end;
+
+      case '\u2018':
+         addToken(begin, end, OPEN_SINGLE);
+         return end;
+
+      case '\'':
+      case '\u2019':
+         addToken(begin, end, (c == '\'' && isOpening(begin)) ? OPEN_SINGLE : CLOSE_SINGLE);
+         return end;
+
+      case '&':
+         for (int e=0; e<ENTITIES.length; e++) {
+            if (document.startsWith(ENTITIES[e], begin)) {
+               end = begin + ENTITIES[e].length();
+               String value = ENTITY_VALUES[e];
+               if (value.equals("\"")) {
+                  value = isOpening(begin) ? OPEN_DOUBLE : CLOSE_DOUBLE;
+               }
+               addToken(begin, end, value);
+               return end;
+            }
+         }
+         addToken(begin, end, null);
+         return end;
+
+      default:
+         // All other characters are tokens on their own
+         if (Character.isHighSurrogate(c) && end < length) {
+            end++;
+         }
+         addToken(begin, end, null);
+         return end;
+      }
+   }
+
+
+
+   /**
+    * Add a token. The sentence is ended first if the last token
+    * ended a sentence and this one is not a closing quote or bracket
+    * or another . ! ?
+    * @param value normalized token, null for the text of the document
+    */
+   private void addToken (int begin, int end, String value) {
+      if (value == null) {
+         value = cachedString(begin, end);
+      }
+      if (sentenceEnded) {
+         if (!isClosing(value)) {
+            boundaries.endSentence();
+            sentenceEnded = false;
+         }
+      }
+      boundaries.addToken(begin, end, value);
+   }
+
+
+   /**
+    * Get the text from begin to end as a String,
+    * reuse the String of an earlier token if it had the same text.
+    */
+   private String cachedString (int begin, int end) {
+      int hash = 0;
+      for (int i=begin; i<end; i++) {
+         hash = 31 * hash + text[i];
+      }
+      int slot = (hash ^ (hash >>> 12)) & (CACHE_SIZE - 1);
+      String cached = tokenCache[slot];
+      if (cached != null && cached.length() == end - begin && sameText(cached, begin)) {
+         return cached;
+      }
+      String value = new String(text, begin, end - begin);
+      tokenCache[slot] = value;
+      return value;
+   }
+
+
+   private boolean sameText (String token, int begin) {
+      for (int i=0; i<token.length(); i++) {
+         if (token.charAt(i) != text[begin+i])
+            return false;
+      }
+      return true;
+   }
+
+
+   private static boolean isClosing (String token) {
+      if (token == CLOSE_DOUBLE || token == CLOSE_SINGLE || token == PERIOD)
+         return true;
+      if (token.length() != 1)
+         return false;
+      char c = token.charAt(0);
+      return c == ')' || c == ']' || c == '}' || c == '!' || c == '?';
+   }
+
+
+   /**
+    * Characters that can be inside a word if there are letters or digits
+    * on both sides (3.5 U.S. 1,000 10:30 mid-range a/b a@b.com o'clock).
+    */
+   private static boolean isInnerCharacter (char c, char before, char after) {
+      switch (c) {
+      case '.':
+      case '-':
+      case '/':
+      case '@':
+      case '_':
+      case '\'':
+      case '\u2019':
+         return true;
+      case ',':
+      case ':':
+         return isDigit(before) && isDigit(after);
+      default:
+         return false;
+      }
+   }
+
+
+   /**
+    * Check if the word ends with the contraction (case-insensitive,
+    * apostrophe may also be written as the right single quotation mark).
+    */
+   private boolean endsWithContraction (int start, String contraction) {
+      for (int i=0; i<contraction.length(); i++) {
+         char c = text[start+i];
+         char expected = contraction.charAt(i);
+         if (expected == '\'') {
+            if (c != '\'' && c != '\u2019')
+               return false;
+         } else if (Character.toLowerCase(c) != expected) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   private String normalizeApostrophe (int begin, int end) {
+      String value = cachedString(begin, end);
+      if (value.indexOf('\u2019') >= 0) {
+         value = value.replace('\u2019', '\'');
+      }
+      return value;
+   }
+
+
+   /**
+    * A quote is opening at the start of the document or after a space
+    * or an opening bracket.
+    */
+   private boolean isOpening (int position) {
+      if (position == 0)
+         return true;
+      char before = text[position-1];
+      return isSpace(before) || before == '(' || before == '[' || before == '{'
+            || before == '\u201C' || before == '"';
+   }
+
+
+   private int run (int begin, char c) {
+      int end = begin + 1;
+      while (end < length && text[end] == c) {
+         end++;
+      }
+      return end;
+   }
+
+
+   private int skipSpace (int position) {
+      while (position < length && isSpace(text[position])) {
+         position++;
+      }
+      return position;
+   }
+
+
+   private String nextWord (int begin) {
+      int end = begin;
+      while (end < length && Character.isLetter(text[end])) {
+         end++;
+      }
+      return document.substring(begin, end);
+   }
+
+
+   private boolean allLetters (int begin, int end) {
+      for (int i=begin; i<end; i++) {
+         if (!Character.isLetter(text[i]))
+            return false;
+      }
+      return true;
+   }
+
+
+   private static boolean isDigit (char c) {
+      return c >= '0' && c <= '9';
+   }
+
+
+   private static boolean isWordCharacter (char c) {
+      if (c < 128)
+         return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+      return Character.isLetterOrDigit(c);
+   }
+
+
+   private static boolean isSpace (char c) {
+      if (c <= ' ')
+         return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1C && c <= 0x1F);
+      return c == '\u00A0' || (c > 0x7F && Character.isWhitespace(c));
+   }
+
+
+   private static HashSet<String> set (String... words) {
+      return new HashSet<String>(Arrays.asList(words));
+   }
+
+}
@@ -8,7 +8,6 @@ package de.uni_stuttgart.ims.comparatives.nlp;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.util.ArrayList;
 import java.util.List;
 
 import edu.stanford.nlp.ling.CoreLabel;
@@ -20,6 +19,10 @@ import edu.stanford.nlp.process.TokenizerFactory;
 
 /**
  * Wrapper around Stanford sentence splitter.
+ *
+ * Can be used by several threads at once: a tokenizer is created
+ * for every call, the tokenizer factory is not changed after
+ * construction and can be shared by several objects.
  */
 public class SentenceSplitterStanford extends SentenceSplitter {
 
@@ -31,7 +34,25 @@ public class SentenceSplitterStanford extends SentenceSplitter {
     * Initialize sentence splitter.
     */
    public SentenceSplitterStanford () {
-      ptbTokenizerFactory = PTBTokenizer.PTBTokenizerFactory.newCoreLabelTokenizerFactory(options);
+      this(createTokenizerFactory());
+   }
+     
+
+   /**
+    * Initialize sentence splitter with a tokenizer factory
+    * that is shared with other splitters.
+    * @param ptbTokenizerFactory see createTokenizerFactory()
+    */
+   public SentenceSplitterStanford (TokenizerFactory<CoreLabel> ptbTokenizerFactory) {
+      this.ptbTokenizerFactory = ptbTokenizerFactory;
+   }
+     
+
+   /**
+    * Tokenizer factory with the options of this splitter.
+    */
+   public static TokenizerFactory<CoreLabel> createTokenizerFactory () {
+      return PTBTokenizer.PTBTokenizerFactory.newCoreLabelTokenizerFactory(options);
    }
      
 
@@ -40,24 +61,34 @@ public class SentenceSplitterStanford extends SentenceSplitter {
     * @return List of spans with the start/end positions of each sentence. 
     */
    public TextSpan[] split (String document) {
+      return split(document, null).toTextSpans();
+   }
+   
+   
+   /**
+    * Split the string into sentences and tokens with Stanford.
+    * @return boundaries of sentences and tokens. 
+    */
+   public SentenceBoundaries split (String document, SentenceBoundaries boundaries) {
+      if (boundaries == null) {
+         boundaries = new SentenceBoundaries();
+      } else {
+         boundaries.clear();
+      }
+      
       StringReader reader=new StringReader(document);
       DocumentPreprocessor dp = new DocumentPreprocessor(reader);
       dp.setTokenizerFactory(ptbTokenizerFactory);
       
-      ArrayList<TextSpan> sentenceSpansList = new ArrayList<TextSpan>();
       for(List<HasWord> sent:dp){
-         CoreLabel firstword = (CoreLabel) sent.get(0);
-         CoreLabel lastword = (CoreLabel) sent.get(sent.size()-1);
-         String coveredText = "";
          for (int i=0; i<sent.size(); i++) {
             CoreLabel word = (CoreLabel) sent.get(i);
-            coveredText += word.value() + " "; 
+            boundaries.addToken(word.beginPosition(), word.endPosition(), word.value());
          }
-         sentenceSpansList.add(new TextSpan(firstword.beginPosition(),lastword.endPosition(), coveredText));
+         boundaries.endSentence();
       }
       
-      return sentenceSpansList.toArray(new TextSpan[0]) ;
-      
+      return boundaries;
    }
    
    
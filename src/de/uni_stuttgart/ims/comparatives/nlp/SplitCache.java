@@ -0,0 +1,336 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Cache for the results of a sentence splitter (see CachingSentenceSplitter),
+ * keyed by a 128 bit hash and the length of the text.
+ *
+ * Two tiers:
+ * - memory: least recently used entries are removed when the size is reached
+ * - disk (optional): all entries are appended to a file, so they can be
+ *    used again in later runs. Only the position of each entry is kept
+ *    in memory, the entry is read when needed.
+ *
+ * The entries are byte arrays, their content is up to the caller.
+ *
+ * File format (big endian):
+ * int magic, int version, UTF name of the splitter,
+ * then for each entry: long hash1, long hash2, int text length,
+ * int entry length, entry.
+ * An incomplete entry at the end (e.g., after a crash) is removed when the file is opened.
+ *
+ * Thread-safe, one cache can be shared by the splitters of all threads.
+ */
+public class SplitCache implements Closeable {
+
+   private static final int MAGIC = 0x53504c54;
+   private static final int VERSION = 1;
+   private static final int RECORD_HEADER = 8 + 8 + 4 + 4;
+   // Estimated memory per entry in addition to the entry itself
+   private static final int ENTRY_OVERHEAD = 96;
+
+
+   /**
+    * Key of a text: two independent 64 bit hashes and the length.
+    */
+   public static final class Key {
+      final long hash1;
+      final long hash2;
+      final int length;
+
+      Key (long hash1, long hash2, int length) {
+         this.hash1 = hash1;
+         this.hash2 = hash2;
+         this.length = length;
+      }
+
+      public int hashCode () {
+         return (int) (hash1 ^ (hash1 >>> 32));
+      }
+
+      public boolean equals (Object o) {
+         if (!(o instanceof Key))
+            return false;
+         Key other = (Key) o;
+         return hash1 == other.hash1 && hash2 == other.hash2 && length == other.length;
+      }
+   }
+
+
+   // Memory tier, in access order
+   private long maxBytes;
+   private long bytes = 0;
+   private LinkedHashMap<Key, byte[]> memory = new LinkedHashMap<Key, byte[]>(1024, 0.75f, true);
+
+   // Disk tier
+   private FileChannel file = null;
+   private HashMap<Key, Long> diskOffsets = new HashMap<Key, Long>();
+   // Length of the file including entries that are still in the write buffer
+   private long diskLength = 0;
+   private ByteBuffer writeBuffer = ByteBuffer.allocate(65536);
+   private ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+
+   // Statistics
+   private long memoryHits = 0;
+   private long diskHits = 0;
+   private long misses = 0;
+   private long evictions = 0;
+
+
+   /**
+    * Cache in memory only.
+    * @param maxBytes size of the memory tier (approximately)
+    */
+   public SplitCache (long maxBytes) {
+      this.maxBytes = maxBytes;
+   }
+
+
+   /**
+    * Key of a text.
+    */
+   public static Key key (String text) {
+      // FNV-1a and a multiplicative hash
+      long hash1 = 0xcbf29ce484222325L;
+      long hash2 = 0;
+      for (int i=0; i<text.length(); i++) {
+         char c = text.charAt(i);
+         hash1 = (hash1 ^ c) * 0x100000001b3L;
+         hash2 = (hash2 + c) * 0x9e3779b97f4a7c15L;
+      }
+      hash2 ^= hash2 >>> 29;
+      return new Key(hash1, hash2, text.length());
+   }
+
+
+   /**
+    * Use a file as disk tier. Entries that are already in the file
+    * can be used, new entries are added to it.
+    * @param fileName file (created if it does not exist)
+    * @param splitterName name of the splitter, the file can only be used with the same splitter
+    * @throws IOException if the file cannot be read or is for another splitter
+    */
+   public synchronized void openFile (String fileName, String splitterName) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(fileName, "rw");
+      boolean ok = false;
+      try {
+         if (raf.length() == 0) {
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeUTF(splitterName);
+            diskLength = raf.getFilePointer();
+         } else {
+            diskLength = readIndex(fileName, splitterName);
+            // Remove incomplete entry at the end
+            raf.setLength(diskLength);
+         }
+         file = raf.getChannel();
+         ok = true;
+      } finally {
+         if (!ok) {
+            raf.close();
+         }
+      }
+   }
+
+
+   /**
+    * Read the positions of all entries in the file.
+    * @return length of the complete entries
+    */
+   private long readIndex (String fileName, String splitterName) throws IOException {
+      long fileLength = new File(fileName).length();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 65536));
+      try {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a split cache file: " + fileName);
+         }
+         String name = in.readUTF();
+         if (!name.equals(splitterName)) {
+            throw new IOException("Split cache file " + fileName + " has been written by splitter " + name);
+         }
+         long position = 4 + 4 + 2 + name.getBytes("UTF-8").length;
+         while (position + RECORD_HEADER <= fileLength) {
+            Key key = new Key(in.readLong(), in.readLong(), in.readInt());
+            int length = in.readInt();
+            if (length < 0 || position + RECORD_HEADER + length > fileLength)
+               break;
+            diskOffsets.put(key, position);
+            position += RECORD_HEADER + length;
+            skipFully(in, length);
+         }
+         return position;
+      } finally {
+         in.close();
+      }
+   }
+
+
+   private static void skipFully (DataInputStream in, int n) throws IOException {
+      while (n > 0) {
+         int skipped = in.skipBytes(n);
+         if (skipped <= 0)
+            throw new EOFException();
+         n -= skipped;
+      }
+   }
+
+
+   /**
+    * Get the entry for this key, from memory or from disk.
+    * @return entry, null if not in the cache
+    */
+   public synchronized byte[] get (Key key) {
+      byte[] entry = memory.get(key);
+      if (entry != null) {
+         memoryHits += 1;
+         return entry;
+      }
+      Long offset = diskOffsets.get(key);
+      if (offset != null) {
+         try {
+            entry = readEntry(offset);
+            diskHits += 1;
+            putInMemory(key, entry);
+            return entry;
+         } catch (IOException e) {
+            System.out.println("Error when reading from split cache: " + e.getMessage());
+         }
+      }
+      misses += 1;
+      return null;
+   }
+
+
+   /**
+    * Add an entry to the cache (and to the file).
+    * The entry must not be changed afterwards.
+    */
+   public synchronized void put (Key key, byte[] entry) {
+      putInMemory(key, entry);
+      if (file != null && !diskOffsets.containsKey(key)) {
+         try {
+            appendEntry(key, entry);
+         } catch (IOException e) {
+            System.out.println("Error when writing to split cache: " + e.getMessage());
+         }
+      }
+   }
+
+
+   private void putInMemory (Key key, byte[] entry) {
+      byte[] old = memory.put(key, entry);
+      if (old != null) {
+         bytes -= old.length + ENTRY_OVERHEAD;
+      }
+      bytes += entry.length + ENTRY_OVERHEAD;
+      Iterator<Map.Entry<Key, byte[]>> eldest = memory.entrySet().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+         bytes -= eldest.next().getValue().length + ENTRY_OVERHEAD;
+         eldest.remove();
+         evictions += 1;
+      }
+   }
+
+
+   private void appendEntry (Key key, byte[] entry) throws IOException {
+      if (writeBuffer.remaining() < RECORD_HEADER + entry.length) {
+         flush();
+         if (writeBuffer.capacity() < RECORD_HEADER + entry.length) {
+            writeBuffer = ByteBuffer.allocate(RECORD_HEADER + entry.length);
+         }
+      }
+      writeBuffer.putLong(key.hash1).putLong(key.hash2).putInt(key.length);
+      writeBuffer.putInt(entry.length).put(entry);
+      diskOffsets.put(key, diskLength);
+      diskLength += RECORD_HEADER + entry.length;
+   }
+
+
+   private byte[] readEntry (long offset) throws IOException {
+      // Entry may still be in the write buffer
+      if (offset >= diskLength - writeBuffer.position()) {
+         flush();
+      }
+      readBuffer.clear();
+      readBuffer.limit(RECORD_HEADER);
+      readFully(readBuffer, offset);
+      int length = readBuffer.getInt(RECORD_HEADER - 4);
+      byte[] entry = new byte[length];
+      readFully(ByteBuffer.wrap(entry), offset + RECORD_HEADER);
+      return entry;
+   }
+
+
+   private void readFully (ByteBuffer buffer, long offset) throws IOException {
+      long position = offset;
+      while (buffer.hasRemaining()) {
+         int n = file.read(buffer, position);
+         if (n < 0)
+            throw new EOFException("Split cache file is shorter than expected");
+         position += n;
+      }
+   }
+
+
+   /**
+    * Write all new entries to the file.
+    */
+   public synchronized void flush () throws IOException {
+      if (file == null)
+         return;
+      writeBuffer.flip();
+      long position = diskLength - writeBuffer.remaining();
+      while (writeBuffer.hasRemaining()) {
+         position += file.write(writeBuffer, position);
+      }
+      writeBuffer.clear();
+   }
+
+
+   /**
+    * Write all new entries and close the file.
+    */
+   public synchronized void close () throws IOException {
+      if (file != null) {
+         flush();
+         file.close();
+         file = null;
+      }
+   }
+
+
+   /**
+    * Hits, misses and evictions so far.
+    */
+   public synchronized String toString () {
+      long lookups = memoryHits + diskHits + misses;
+      return String.format(Locale.ENGLISH, "%d lookups, %d hits (%d memory, %d disk, %.1f %%), %d misses, "
+            + "%d evictions, %d entries in memory (%.1f MB), %d entries on disk",
+            lookups, memoryHits + diskHits, memoryHits, diskHits,
+            100.0 * (memoryHits + diskHits) / Math.max(1, lookups), misses,
+            evictions, memory.size(), bytes / 1048576.0, diskOffsets.size());
+   }
+
+}
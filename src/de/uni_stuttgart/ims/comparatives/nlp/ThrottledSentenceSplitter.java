@@ -0,0 +1,71 @@
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.comparatives.nlp;
+
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Sentence splitter for many threads (e.g., one thread per review
+ * or per file) that limits how many of them split at the same time.
+ *
+ * Each call takes a permit of the semaphore, then a splitter of the pool,
+ * and gives both back afterwards. Splitting is CPU-bound, so the number
+ * of permits should be about the number of cores. Threads that wait
+ * for a permit do not hold a splitter, so the pool creates at most
+ * as many splitters as there are permits.
+ *
+ * Thread-safe, one object can be shared by all threads.
+ * close() does not close the pool.
+ */
+public class ThrottledSentenceSplitter extends SentenceSplitter {
+
+   private SentenceSplitterPool pool;
+   private Semaphore permits;
+
+
+   /**
+    * @param pool splitters to use
+    * @param permits threads that may split at the same time
+    *    (may be shared with other objects)
+    */
+   public ThrottledSentenceSplitter (SentenceSplitterPool pool, Semaphore permits) {
+      this.pool = pool;
+      this.permits = permits;
+   }
+
+
+   @Override
+   public TextSpan[] split (String document) {
+      permits.acquireUninterruptibly();
+      try {
+         SentenceSplitter splitter = pool.acquire();
+         try {
+            return splitter.split(document);
+         } finally {
+            pool.release(splitter);
+         }
+      } finally {
+         permits.release();
+      }
+   }
+
+
+   @Override
+   public SentenceBoundaries split (String document, SentenceBoundaries boundaries) {
+      permits.acquireUninterruptibly();
+      try {
+         return pool.split(document, boundaries);
+      } finally {
+         permits.release();
+      }
+   }
+
+
+   @Override
+   public void close () {
+   }
+
+}